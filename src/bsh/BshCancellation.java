@@ -0,0 +1,57 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+/**
+ * Tells a running parse to stop. The parser checks the cancellation between top-level statements and while it walks
+ * the nodes of a statement - a cancelled parse returns the statements that have been gathered so far, in a
+ * {@code BshScriptInfo} that is not {@link BshScriptInfo#isComplete() complete}.
+ *
+ * @author Thomas Werner
+ */
+public abstract class BshCancellation {
+
+    /**
+     * A cancellation that is never cancelled.
+     */
+    public static final BshCancellation NONE = new BshCancellation() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return {@code true} if the parse should stop
+     */
+    public abstract boolean isCancelled();
+
+    /**
+     * @param timeoutMillis the time the parse may take, starting now
+     * @return a cancellation that is cancelled when this one is cancelled or when the given time has passed
+     */
+    public BshCancellation withDeadline(long timeoutMillis) {
+        final BshCancellation parent = this;
+        final long deadline = System.nanoTime() +timeoutMillis *1000000L;
+        return new BshCancellation() {
+            @Override
+            public boolean isCancelled() {
+                return (System.nanoTime() -deadline >= 0) || parent.isCancelled();
+            }
+        };
+    }
+
+}
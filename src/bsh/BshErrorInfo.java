@@ -0,0 +1,72 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A syntax error of a script.
+ * 
+ * @author Thomas Werner
+ */
+public class BshErrorInfo {
+    
+    private final int lineNumber;
+    private final int column;
+    private final String message;
+    private final List<String> expected;
+
+    public BshErrorInfo(int lineNumber, int column, String message, List<String> expected) {
+        this.lineNumber = lineNumber;
+        this.column = column;
+        this.message = message;
+        this.expected = expected;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the tokens the parser has expected at the position of the error
+     */
+    public List<String> getExpected() {
+        return Collections.unmodifiableList(expected);
+    }
+    
+    /**
+     * @param lineOffset the number of lines the copy is moved by
+     * @return a copy of this error info
+     */
+    BshErrorInfo copy(int lineOffset) {
+        return new BshErrorInfo(lineNumber +lineOffset, column, message, expected);
+    }
+
+    @Override
+    public String toString() {
+        return lineNumber +":" +column +": " +message;
+    }
+    
+}
@@ -15,8 +15,7 @@
  */
 package bsh;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -25,39 +24,41 @@ import java.util.Set;
  */
 public class BshImportInfo implements BshInfo {
 
-    private Set<BshModifierInfo> modifiers;
-    private String name;
-    private int lineNumber;
+    private final int modifiers;
+    private final String name;
+    private final int lineNumber;
     
-    public BshImportInfo() {
-        modifiers = new HashSet<BshModifierInfo>();
+    public BshImportInfo(String name, int lineNumber, Collection<BshModifierInfo> modifiers) {
+        this(BshInterner.intern(name), lineNumber, BshModifierInfo.toMask(modifiers));
+    }
+    
+    private BshImportInfo(String name, int lineNumber, int modifiers) {
+        this.name = name;
+        this.lineNumber = lineNumber;
+        this.modifiers = modifiers;
     }
     
     @Override
     public int getLineNumber() {
         return lineNumber;
     }
-    
-    public void setLineNumber(int lineNumber) {
-        this.lineNumber = lineNumber;
-    }
 
     @Override
     public Set<BshModifierInfo> getModifiers() {
-        return Collections.unmodifiableSet(modifiers);
-    }
-
-    public void addModifier(BshModifierInfo modifier) {
-        modifiers.add(modifier);
+        return BshModifierInfo.fromMask(modifiers);
     }
     
     @Override
     public String getName() {
         return name;
     }
-
-    public void setName(String name) {
-        this.name = name;
+    
+    /**
+     * @param lineOffset the number of lines the copy is moved by
+     * @return a moved copy of this import info - or this import info if the offset is 0
+     */
+    BshImportInfo copy(int lineOffset) {
+        return (0 == lineOffset) ? this : new BshImportInfo(name, lineNumber +lineOffset, modifiers);
     }
     
     @Override
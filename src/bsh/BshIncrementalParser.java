@@ -0,0 +1,353 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses successive versions of a script incrementally. The information that has been gathered for each top-level
+ * statement is cached together with the source span of the statement. When the next version of the script is parsed,
+ * only the top-level statements that overlap the modified region are parsed again. The results are spliced into the
+ * cached statements.
+ *
+ * <p>If the modified region can not be parsed on its own without errors, the complete script is parsed again.</p>
+ *
+ * <p>In outline mode the bodies of top-level methods and classes are skipped, like
+ * {@link BshParserConnector#parseOutline(String)} does.</p>
+ *
+ * @author Thomas Werner
+ */
+public class BshIncrementalParser {
+
+    private static final int TAB_SIZE = 8;
+
+    private final BshParserConnector connector = new BshParserConnector();
+    private final boolean outline;
+
+    private String cachedText;
+    private List<CachedStatement> cachedStatements;
+    private boolean cancelled;
+
+    public BshIncrementalParser() {
+        this(false);
+    }
+
+    /**
+     * @param outline {@code true} if the bodies of top-level methods and classes are gathered on demand
+     */
+    public BshIncrementalParser(boolean outline) {
+        this.outline = outline;
+    }
+
+    /**
+     * Gathers information on the structure of a script. The result equals the one of
+     * {@link BshParserConnector#parse(String)} - or the one of {@link BshParserConnector#parseOutline(String)} in
+     * outline mode.
+     *
+     * @param inputString the script
+     * @return a {@code BshScriptInfo} object containing the data that has been gathered
+     */
+    public synchronized BshScriptInfo parse(String inputString) {
+        cancelled = false;
+        final List<CachedStatement> statements = ((null != cachedText) && parseIncrementally(inputString))
+                                                ? cachedStatements : parseCompletely(inputString);
+
+        final List<BshScriptInfo> statementInfos = new ArrayList<BshScriptInfo>(statements.size());
+        for(CachedStatement statement: statements)
+            statementInfos.add(statement.info.copy(statement.lineOffset));
+
+        final BshScriptInfo result = connector.withBounds(connector.assemble(statementInfos), inputString);
+
+        if(!isReusable())
+            reset();
+        return cancelled ? result.asIncomplete() : result;
+    }
+
+    /**
+     * Gathers information on the structure of a script, like {@link #parse(String)}. A cancelled parse returns the
+     * statements that have been parsed so far and keeps the cached statements of the previous parse.
+     *
+     * @param inputString the script
+     * @param cancellation tells the parser to stop
+     * @return a {@code BshScriptInfo} object containing the data that has been gathered
+     */
+    public synchronized BshScriptInfo parse(String inputString, BshCancellation cancellation) {
+        connector.setCancellation(cancellation);
+        try {
+            return parse(inputString);
+        } finally {
+            connector.setCancellation(BshCancellation.NONE);
+        }
+    }
+
+    /**
+     * Drops the cached statements. The next call of {@link #parse(String)} will parse the complete script.
+     */
+    public synchronized void reset() {
+        cachedText = null;
+        cachedStatements = null;
+    }
+
+    private boolean isReusable() {
+        return null != cachedText;
+    }
+
+    /**
+     * Parses the given script and replaces the cached statements - unless the parse has been cancelled.
+     *
+     * @param inputString the script
+     * @return the statements of the script
+     */
+    private List<CachedStatement> parseCompletely(String inputString) {
+        final BshParserConnector.ParsedStatements parsed = parseStatements(inputString);
+        final int[] lineStarts = getLineStarts(inputString);
+
+        final List<CachedStatement> statements = new ArrayList<CachedStatement>(parsed.statements.size());
+        String text = parsed.complete ? inputString : null;
+
+        int lastEnd = 0;
+        for(BshParserConnector.Statement statement: parsed.statements) {
+            final int end = getEndOffset(inputString, lineStarts, statement.endLine, statement.endColumn);
+            if(end < 0)
+                text = null;
+            lastEnd = Math.max(lastEnd, end);
+            statements.add(new CachedStatement(statement.info, 0, lastEnd, statement.erroneous));
+        }
+
+        cancelled = parsed.cancelled;
+        if(!cancelled) {
+            cachedStatements = statements;
+            cachedText = text;
+        }
+        return statements;
+    }
+
+    /**
+     * Parses only the modified top-level statements of the given script and splices them into the cached statements.
+     *
+     * @param inputString the script
+     * @return {@code true} if the script could be parsed incrementally
+     */
+    private boolean parseIncrementally(String inputString) {
+        final int oldLength = cachedText.length();
+        final int newLength = inputString.length();
+        final int maxCommon = Math.min(oldLength, newLength);
+
+        int prefix = 0;
+        while((prefix < maxCommon) && (cachedText.charAt(prefix) == inputString.charAt(prefix)))
+            prefix++;
+        if((prefix == oldLength) && (prefix == newLength))
+            return true;
+
+        int suffix = 0;
+        while((suffix < maxCommon -prefix) &&
+              (cachedText.charAt(oldLength -1 -suffix) == inputString.charAt(newLength -1 -suffix)))
+            suffix++;
+
+        final int delta = newLength -oldLength;
+        final int changeEnd = oldLength -suffix;
+
+        // Statement i covers [end(i-1), end(i)). Statements that touch the modified region are parsed again, as well
+        // as erroneous neighbours and neighbours that are not separated by a statement boundary.
+        int first = 0;
+        while((first < cachedStatements.size()) && (cachedStatements.get(first).endOffset < prefix))
+            first++;
+        while((first > 0) && (cachedStatements.get(first -1).erroneous ||
+                              !isBoundary(cachedText, getEndOffset(first -1))))
+            first--;
+
+        int last = first;
+        while((last < cachedStatements.size()) && (cachedStatements.get(last).endOffset < changeEnd))
+            last++;
+        while(last < cachedStatements.size()) {
+            final boolean nextErroneous = (last +1 < cachedStatements.size()) &&
+                                          cachedStatements.get(last +1).erroneous;
+            if(!nextErroneous && isBoundary(inputString, getEndOffset(last) +delta))
+                break;
+            last++;
+        }
+
+        final int regionBegin = (first == 0) ? 0 : getEndOffset(first -1);
+        final int regionEnd = (last >= cachedStatements.size()) ? newLength : getEndOffset(last) +delta;
+
+        final int[] lineStarts = getLineStarts(inputString);
+        final int regionLine = getLineIndex(lineStarts, regionBegin);
+        final String region = buildRegionText(inputString, lineStarts[regionLine], regionBegin, regionEnd);
+        final BshParserConnector.ParsedStatements parsed = parseStatements(region);
+        if(!parsed.complete)
+            return false;
+
+        final List<CachedStatement> regionStatements = new ArrayList<CachedStatement>(parsed.statements.size());
+        int lastEnd = regionBegin;
+        for(BshParserConnector.Statement statement: parsed.statements) {
+            if(statement.erroneous)
+                return false;
+
+            final int end = getEndOffset(inputString, lineStarts, statement.endLine +regionLine, statement.endColumn);
+            if((end < 0) || (end > regionEnd))
+                return false;
+            lastEnd = Math.max(lastEnd, end);
+            regionStatements.add(new CachedStatement(statement.info, regionLine, lastEnd, false));
+        }
+
+        final int lineDelta = countLines(inputString, regionBegin, regionEnd) -
+                              countLines(cachedText, regionBegin, regionEnd -delta);
+        final List<CachedStatement> result = new ArrayList<CachedStatement>(cachedStatements.size() +
+                                                                             regionStatements.size());
+        result.addAll(cachedStatements.subList(0, first));
+        result.addAll(regionStatements);
+        for(CachedStatement statement: cachedStatements.subList(Math.min(last +1, cachedStatements.size()),
+                                                                 cachedStatements.size()))
+            result.add(new CachedStatement(statement.info, statement.lineOffset +lineDelta,
+                                           statement.endOffset +delta, statement.erroneous));
+
+        cachedStatements = result;
+        cachedText = inputString;
+        return true;
+    }
+
+    private BshParserConnector.ParsedStatements parseStatements(String inputString) {
+        final Parser parser = outline ? connector.createOutlineParser(inputString)
+                                      : new Parser(new StringReader(inputString));
+        return connector.parseStatements(parser);
+    }
+
+    private int getEndOffset(int statementIndex) {
+        return cachedStatements.get(statementIndex).endOffset;
+    }
+
+    /**
+     * A statement may only be parsed on its own if the text before its begin ends a token for sure.
+     *
+     * @param text the script
+     * @param offset the begin of a statement
+     * @return {@code true} if the given offset is a statement boundary
+     */
+    private boolean isBoundary(String text, int offset) {
+        if((offset <= 0) || (offset >= text.length()))
+            return true;
+
+        final char c = text.charAt(offset -1);
+        return (';' == c) || ('}' == c) || Character.isWhitespace(c);
+    }
+
+    /**
+     * The region is parsed using the line and column numbers of the complete script. Therefor the part of the first
+     * line in front of the region is blanked out (tabs are kept, as they influence the column numbers).
+     */
+    static String buildRegionText(String text, int lineStart, int regionBegin, int regionEnd) {
+        final StringBuilder result = new StringBuilder(regionEnd -lineStart);
+        for(int i=lineStart; i<regionBegin; i++)
+            result.append('\t' == text.charAt(i) ? '\t' : ' ');
+        result.append(text, regionBegin, regionEnd);
+        return result.toString();
+    }
+
+    //----------------------------------------------------------------------------------------------------------------//
+    // Line handling (line breaks are handled like the JavaCharStream of the bsh.Parser does)                         //
+    //----------------------------------------------------------------------------------------------------------------//
+
+    static int[] getLineStarts(String text) {
+        int[] result = new int[64];
+        int count = 1;
+        for(int i=0; i<text.length(); i++) {
+            final char c = text.charAt(i);
+            if(('\n' == c) || (('\r' == c) && ((i +1 == text.length()) || ('\n' != text.charAt(i +1))))) {
+                if(count == result.length) {
+                    final int[] grown = new int[result.length *2];
+                    System.arraycopy(result, 0, grown, 0, count);
+                    result = grown;
+                }
+                result[count++] = i +1;
+            }
+        }
+        final int[] trimmed = new int[count];
+        System.arraycopy(result, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    /**
+     * @return the zero-based index of the line that contains the given offset
+     */
+    private int getLineIndex(int[] lineStarts, int offset) {
+        int low = 0;
+        int high = lineStarts.length -1;
+        while(low < high) {
+            final int mid = (low +high +1) >>> 1;
+            if(lineStarts[mid] <= offset)
+                low = mid;
+            else
+                high = mid -1;
+        }
+        return low;
+    }
+
+    private int countLines(String text, int begin, int end) {
+        int result = 0;
+        for(int i=begin; i<end; i++) {
+            final char c = text.charAt(i);
+            if(('\n' == c) || (('\r' == c) && ((i +1 == text.length()) || ('\n' != text.charAt(i +1)))))
+                result++;
+        }
+        return result;
+    }
+
+    /**
+     * @param line the (one-based) line of the last character of a token
+     * @param column the (one-based, tab expanded) column of the last character of a token
+     * @return the offset behind the token - or -1 if the position is not part of the text
+     */
+    static int getEndOffset(String text, int[] lineStarts, int line, int column) {
+        if(line < 1)
+            return 0;
+        if(line > lineStarts.length)
+            return -1;
+
+        int col = 0;
+        final int lineEnd = (line == lineStarts.length) ? text.length() : lineStarts[line];
+        for(int i=lineStarts[line -1]; i<lineEnd; i++) {
+            col++;
+            if('\t' == text.charAt(i))
+                col += TAB_SIZE -1 -((col -1) % TAB_SIZE);
+            if(col >= column)
+                return i +1;
+        }
+        return -1;
+    }
+
+    /**
+     * A top-level statement of the last parsed script. The info of the statement is never modified - the line numbers
+     * are adjusted when the info gets copied into a result.
+     */
+    private static final class CachedStatement {
+
+        final BshScriptInfo info;
+        final int lineOffset;
+        final int endOffset;
+        final boolean erroneous;
+
+        CachedStatement(BshScriptInfo info, int lineOffset, int endOffset, boolean erroneous) {
+            this.info = info;
+            this.lineOffset = lineOffset;
+            this.endOffset = endOffset;
+            this.erroneous = erroneous;
+        }
+
+    }
+
+}
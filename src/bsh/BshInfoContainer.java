@@ -15,78 +15,202 @@
  */
 package bsh;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
- *
+ * Immutable base of the infos that contain methods and variables. The children are kept in arrays - the infos are 
+ * built by a {@link Builder}. The children of a container with a {@link DeferredBody} are gathered when they are 
+ * requested for the first time.
+ * 
  * @author Thomas Werner
  */
 public abstract class BshInfoContainer {
     
-    protected final List<BshMethodInfo> methods = new LinkedList<BshMethodInfo>();
-    protected final List<BshVariableInfo> variables = new LinkedList<BshVariableInfo>();
+    static final BshMethodInfo[] NO_METHODS = new BshMethodInfo[0];
+    static final BshVariableInfo[] NO_VARIABLES = new BshVariableInfo[0];
     
-    protected int beginLine;
-    protected int beginColum;
-    protected int endLine;
-    protected int endColum;    
+    private BshMethodInfo[] methods;
+    private BshVariableInfo[] variables;
+    private volatile DeferredBody deferredBody;
     
-    public List<BshMethodInfo> getMethods() {
-        return methods;
+    final int beginLine;
+    final int beginColum;
+    final int endLine;
+    final int endColum;
+    
+    BshInfoContainer(Builder builder) {
+        this(toArray(builder.methods, NO_METHODS), toArray(builder.variables, NO_VARIABLES), builder.deferredBody, 
+             builder.beginLine, builder.beginColum, builder.endLine, builder.endColum);
     }
-
-    public void addMethods(Collection<BshMethodInfo> methodInfos) {
-        methods.addAll(methodInfos);
+    
+    BshInfoContainer(BshMethodInfo[] methods, BshVariableInfo[] variables, DeferredBody deferredBody, int beginLine, 
+                     int beginColum, int endLine, int endColum) {
+        this.methods = methods;
+        this.variables = variables;
+        this.deferredBody = deferredBody;
+        this.beginLine = beginLine;
+        this.beginColum = beginColum;
+        this.endLine = endLine;
+        this.endColum = endColum;
     }
-
-    public List<BshVariableInfo> getVariables() {
-        return variables;
+    
+    public List<BshMethodInfo> getMethods() {
+        return toList(methods());
     }
 
-    public void addVariables(Collection<BshVariableInfo> variableInfos) {
-        variables.addAll(variableInfos);
+    public List<BshVariableInfo> getVariables() {
+        return toList(variables());
     }
     
     public List<BshMethodInfo> getClasses() {
         final List<BshMethodInfo> result = new LinkedList<BshMethodInfo>();
-        for(BshMethodInfo method: methods)
+        for(BshMethodInfo method: methods())
             if(method.isClass())
                 result.add(method);
         return result;
     }
 
-    public int getBeginColum() {
-        return beginColum;
+    /**
+     * @return {@code false} if the children are gathered by the next request - which parses the body then
+     */
+    public boolean isLoaded() {
+        return null == deferredBody;
     }
 
-    public void setBeginColum(int beginColum) {
-        this.beginColum = beginColum;
+    public int getBeginColum() {
+        return beginColum;
     }
 
     public int getBeginLine() {
         return beginLine;
     }
 
-    public void setBeginLine(int beginLine) {
-        this.beginLine = beginLine;
-    }
-
     public int getEndColum() {
         return endColum;
     }
 
-    public void setEndColum(int endColum) {
-        this.endColum = endColum;
-    }
-
     public int getEndLine() {
         return endLine;
     }
-
-    public void setEndLine(int endLine) {
-        this.endLine = endLine;
+    
+    BshMethodInfo[] methods() {
+        loadDeferredBody();
+        return methods;
+    }
+    
+    BshVariableInfo[] variables() {
+        loadDeferredBody();
+        return variables;
+    }
+    
+    /**
+     * @return the body that has not been gathered yet - or {@code null}
+     */
+    DeferredBody getDeferredBody() {
+        return deferredBody;
+    }
+    
+    private void loadDeferredBody() {
+        if(null == deferredBody)
+            return;
+        
+        synchronized(this) {
+            if(null == deferredBody)
+                return;
+            final BshInfoContainer body = deferredBody.load();
+            methods = body.methods();
+            variables = body.variables();
+            deferredBody = null;
+        }
+    }
+    
+    /**
+     * @param methods some methods
+     * @param lineOffset the number of lines the copies are moved by
+     * @return the moved copies of the given methods
+     */
+    static BshMethodInfo[] copy(BshMethodInfo[] methods, int lineOffset) {
+        final BshMethodInfo[] result = methods.clone();
+        for(int i=0; i<result.length; i++)
+            result[i] = methods[i].copy(lineOffset);
+        return result;
+    }
+    
+    /**
+     * @param variables some variables
+     * @param lineOffset the number of lines the copies are moved by
+     * @return the moved copies of the given variables
+     */
+    static BshVariableInfo[] copy(BshVariableInfo[] variables, int lineOffset) {
+        final BshVariableInfo[] result = variables.clone();
+        for(int i=0; i<result.length; i++)
+            result[i] = variables[i].copy(lineOffset);
+        return result;
+    }
+    
+    /**
+     * @param list the elements
+     * @param empty the shared empty array of the element type
+     * @return an array containing the elements of the given list - or the shared empty array
+     */
+    static <T> T[] toArray(List<T> list, T[] empty) {
+        return list.isEmpty() ? empty : list.toArray(empty);
+    }
+    
+    /**
+     * @param array an array that is never modified
+     * @return an unmodifiable view of the given array
+     */
+    static <T> List<T> toList(T[] array) {
+        if(0 == array.length)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(array));
+    }
+    
+    /**
+     * Collects the data of a container while a script is parsed.
+     */
+    public abstract static class Builder {
+        
+        final List<BshMethodInfo> methods = new ArrayList<BshMethodInfo>();
+        final List<BshVariableInfo> variables = new ArrayList<BshVariableInfo>();
+        
+        int beginLine;
+        int beginColum;
+        int endLine;
+        int endColum;
+        
+        DeferredBody deferredBody;
+        
+        public void addMethods(Collection<BshMethodInfo> methodInfos) {
+            methods.addAll(methodInfos);
+        }
+        
+        public void addVariables(Collection<BshVariableInfo> variableInfos) {
+            variables.addAll(variableInfos);
+        }
+        
+        public void setBeginColum(int beginColum) {
+            this.beginColum = beginColum;
+        }
+        
+        public void setBeginLine(int beginLine) {
+            this.beginLine = beginLine;
+        }
+        
+        public void setEndColum(int endColum) {
+            this.endColum = endColum;
+        }
+        
+        public void setEndLine(int endLine) {
+            this.endLine = endLine;
+        }
+        
     }
     
 }
@@ -0,0 +1,67 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Shares equal strings (like the names of types and variables) between the infos of all scripts. Unlike 
+ * {@link String#intern()} the strings are released as soon as they are no longer used by any info.
+ * 
+ * <p>Scripts are parsed in several threads at once (editor, navigator, indexing). The strings are spread over a number
+ * of maps by their hash code, each guarded by its own lock, so concurrent parses rarely wait for each other.</p>
+ * 
+ * @author Thomas Werner
+ */
+final class BshInterner {
+    
+    private static final int STRIPES = 16;                                                          // a power of two
+    private static final Map<String, WeakReference<String>>[] stripes = createStripes();
+    
+    private BshInterner() { }
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, WeakReference<String>>[] createStripes() {
+        final Map<String, WeakReference<String>>[] result = new Map[STRIPES];
+        for(int i=0; i<result.length; i++)
+            result[i] = new WeakHashMap<String, WeakReference<String>>();
+        return result;
+    }
+    
+    /**
+     * @param value a string - may be {@code null}
+     * @return the shared instance of the given string
+     */
+    static String intern(String value) {
+        if(null == value)
+            return null;
+        
+        final int hash = value.hashCode();
+        final Map<String, WeakReference<String>> strings = stripes[(hash ^ (hash >>> 16)) & (STRIPES -1)];
+        synchronized(strings) {
+            final WeakReference<String> reference = strings.get(value);
+            final String result = (null == reference) ? null : reference.get();
+            if(null != result)
+                return result;
+            
+            strings.put(value, new WeakReference<String>(value));
+            return value;
+        }
+    }
+    
+}
@@ -35,22 +35,51 @@ public class BshMethodInfo extends BshInfoContainer implements BshInfo {
         
     }
     
-    private Set<BshModifierInfo> modifiers;
-    private String name;
-    private List<BshParameterInfo> parameters;
-    private String returnType;    
-    private int lineNumber;    
-    private boolean clazz;
-    private boolean constructor;
-    private String superClass;
-    private List<String> interfaces;
-    private boolean interfaze;
+    private static final BshParameterInfo[] NO_PARAMETERS = new BshParameterInfo[0];
+    private static final String[] NO_INTERFACES = new String[0];
     
-    public BshMethodInfo() {
-        modifiers = new HashSet<BshModifierInfo>();
-        parameters = new LinkedList<BshParameterInfo>();
-        interfaces = new LinkedList<String>();
-        superClass = "Object";
+    private final int modifiers;
+    private final String name;
+    private final BshParameterInfo[] parameters;
+    private final String returnType;    
+    private final int lineNumber;    
+    private final boolean clazz;
+    private final boolean constructor;
+    private final String superClass;
+    private final String[] interfaces;
+    private final boolean interfaze;
+    
+    private BshMethodInfo(Builder builder) {
+        super(builder);
+        modifiers = builder.modifiers;
+        name = builder.name;
+        parameters = toArray(builder.parameters, NO_PARAMETERS);
+        returnType = builder.returnType;
+        lineNumber = builder.lineNumber;
+        clazz = builder.clazz;
+        constructor = builder.constructor;
+        superClass = builder.superClass;
+        interfaze = builder.interfaze;
+        
+        final List<String> implemented = new ArrayList<String>(builder.interfaces);
+        implemented.removeAll(Collections.singleton(superClass));
+        interfaces = toArray(implemented, NO_INTERFACES);
+    }
+    
+    private BshMethodInfo(BshMethodInfo source, BshMethodInfo[] methods, BshVariableInfo[] variables, 
+                          DeferredBody deferredBody, int lineOffset) {
+        super(methods, variables, deferredBody, source.beginLine +lineOffset, source.beginColum, 
+              source.endLine +lineOffset, source.endColum);
+        modifiers = source.modifiers;
+        name = source.name;
+        parameters = source.parameters;
+        returnType = source.returnType;
+        lineNumber = source.lineNumber +lineOffset;
+        clazz = source.clazz;
+        constructor = source.constructor;
+        superClass = source.superClass;
+        interfaces = source.interfaces;
+        interfaze = source.interfaze;
     }
 
     @Override
@@ -58,17 +87,9 @@ public class BshMethodInfo extends BshInfoContainer implements BshInfo {
         return lineNumber;
     }
 
-    public void setLineNumber(int lineNumber) {
-        this.lineNumber = lineNumber;
-    }
-
     @Override
     public Set<BshModifierInfo> getModifiers() {
-        return modifiers;
-    }
-
-    public void addModifiers(Collection<BshModifierInfo> modifiers) {
-        this.modifiers.addAll(modifiers);
+        return BshModifierInfo.fromMask(modifiers);
     }
 
     @Override
@@ -76,73 +97,72 @@ public class BshMethodInfo extends BshInfoContainer implements BshInfo {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public List<BshParameterInfo> getParameters() {
-        return parameters;
-    }
-
-    public void addParameters(Collection<BshParameterInfo> parameters) {
-        this.parameters.addAll(parameters);
+        return toList(parameters);
     }
 
     public String getReturnType() {
         return returnType;
     }
 
-    public void setReturnType(String returnType) {
-        this.returnType = returnType;
-    }
-
     public boolean isClass() {
         return clazz;
     }
 
-    public void setClass(boolean clazz) {
-        this.clazz = clazz;
-    }
-
     public boolean isConstructor() {
         return constructor;
     }
-
-    public void setConstructor(boolean constructor) {
-        this.constructor = constructor;
-    }    
     
     public String getSuperClass() {
         return superClass; 
     }
     
-    public void setSuperClass(String superClass) {
-        this.superClass = superClass;
+    /**
+     * @return the implemented interfaces - without the superclass
+     */
+    public List<String> getInterfaces() {
+        return toList(interfaces);
     }
     
-    public List<String> getInterfaces() {
-        final List<String> result = new ArrayList<String>(interfaces);
-        final Iterator<String> iterator = result.iterator();
-        while(iterator.hasNext())
-            if(iterator.next().equals(superClass))
-                iterator.remove();
-        return result;
+    public boolean isInterface() {
+        return interfaze;
     }
 
-    public void addInterfaces(Collection<String> interfaces) {
-        this.interfaces.addAll(interfaces);
+    /**
+     * @param lineOffset the number of lines the copy is moved by
+     * @return a moved copy of this method info - or this method info if the offset is 0
+     */
+    BshMethodInfo copy(int lineOffset) {
+        if(0 == lineOffset)
+            return this;
+        
+        final DeferredBody body = getDeferredBody();
+        if(null != body)
+            return new BshMethodInfo(this, NO_METHODS, NO_VARIABLES, body.withLineOffset(lineOffset), lineOffset);
+        return new BshMethodInfo(this, copy(methods(), lineOffset), copy(variables(), lineOffset), null, lineOffset);
     }
     
-    public boolean isInterface() {
-        return interfaze;
+    /**
+     * @param methodInfos the inner methods of the copy
+     * @param variableInfos the variables of the copy
+     * @return a copy of this method info with the given children
+     */
+    BshMethodInfo withChildren(List<BshMethodInfo> methodInfos, List<BshVariableInfo> variableInfos) {
+        return new BshMethodInfo(this, toArray(methodInfos, NO_METHODS), toArray(variableInfos, NO_VARIABLES), null, 
+                                 0);
     }
     
-    public void setInterface(boolean isInterface) {
-        interfaze = isInterface;
+    /**
+     * @param body the deferred body of the copy
+     * @return a copy of this method info whose children are gathered from the given body
+     */
+    BshMethodInfo withDeferredBody(DeferredBody body) {
+        return new BshMethodInfo(this, NO_METHODS, NO_VARIABLES, body, 0);
     }
 
     @Override
     public String getIconPath() {
+        final Set<BshModifierInfo> modifiers = getModifiers();
         final boolean isStatic = modifiers.contains(BshModifierInfo.Static);
         
         if(isInterface())
@@ -226,4 +246,71 @@ public class BshMethodInfo extends BshInfoContainer implements BshInfo {
         return builder.toString();
     }
     
+    /**
+     * Collects the data of a method or scripted class while it is parsed.
+     */
+    public static class Builder extends BshInfoContainer.Builder {
+        
+        private int modifiers;
+        private String name;
+        private final List<BshParameterInfo> parameters = new ArrayList<BshParameterInfo>();
+        private String returnType;
+        private int lineNumber;
+        private boolean clazz;
+        private boolean constructor;
+        private String superClass = "Object";
+        private final List<String> interfaces = new ArrayList<String>();
+        private boolean interfaze;
+        
+        public void setLineNumber(int lineNumber) {
+            this.lineNumber = lineNumber;
+        }
+        
+        public void addModifiers(Collection<BshModifierInfo> modifiers) {
+            this.modifiers |= BshModifierInfo.toMask(modifiers);
+        }
+        
+        public void setName(String name) {
+            this.name = BshInterner.intern(name);
+        }
+        
+        public void addParameters(Collection<BshParameterInfo> parameters) {
+            this.parameters.addAll(parameters);
+        }
+        
+        public void setReturnType(String returnType) {
+            this.returnType = BshInterner.intern(returnType);
+        }
+        
+        public void setClass(boolean clazz) {
+            this.clazz = clazz;
+        }
+        
+        public void setConstructor(boolean constructor) {
+            this.constructor = constructor;
+        }
+        
+        public void setSuperClass(String superClass) {
+            this.superClass = BshInterner.intern(superClass);
+        }
+        
+        public void addInterfaces(Collection<String> interfaces) {
+            for(String interfaze: interfaces)
+                this.interfaces.add(BshInterner.intern(interfaze));
+        }
+        
+        public void setInterface(boolean isInterface) {
+            interfaze = isInterface;
+        }
+        
+        void setDeferredBody(DeferredBody deferredBody) {
+            this.deferredBody = deferredBody;
+        }
+        
+        public BshMethodInfo build() {
+            return new BshMethodInfo(this);
+        }
+        
+    }
+    
 }
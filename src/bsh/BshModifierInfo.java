@@ -15,6 +15,11 @@
  */
 package bsh;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Enumeration of the modifiers of the BeanShell language.
  * 
@@ -24,6 +29,41 @@ public enum BshModifierInfo {
 
     Private, Public, Protected, Abstract, Static, Synchronized, Final, Super, Package;
     
+    /**
+     * The unmodifiable sets of modifiers, indexed by their bitmask. The sets are created on demand - a set that is
+     * created twice by concurrent threads does no harm.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Set<BshModifierInfo>[] SETS = new Set[1 << values().length];
+    
+    /**
+     * @param modifiers a collection of modifiers
+     * @return the bitmask of the given modifiers
+     */
+    static int toMask(Collection<BshModifierInfo> modifiers) {
+        int result = 0;
+        for(BshModifierInfo modifier: modifiers)
+            result |= 1 << modifier.ordinal();
+        return result;
+    }
+    
+    /**
+     * @param mask the bitmask of some modifiers
+     * @return a shared, unmodifiable set of the modifiers of the given bitmask
+     */
+    static Set<BshModifierInfo> fromMask(int mask) {
+        Set<BshModifierInfo> result = SETS[mask];
+        if(null == result) {
+            final Set<BshModifierInfo> modifiers = EnumSet.noneOf(BshModifierInfo.class);
+            for(BshModifierInfo modifier: values())
+                if(0 != (mask & (1 << modifier.ordinal())))
+                    modifiers.add(modifier);
+            result = Collections.unmodifiableSet(modifiers);
+            SETS[mask] = result;
+        }
+        return result;
+    }
+    
     @Override
     public String toString() {
         return name().toLowerCase();
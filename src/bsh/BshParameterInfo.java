@@ -21,28 +21,20 @@ package bsh;
  */
 public class BshParameterInfo {
     
-    private String name;
-    private String type;
+    private final String name;
+    private final String type;
 
     public BshParameterInfo(String name, String type) {
-        this.name = name;
-        this.type = type;
+        this.name = BshInterner.intern(name);
+        this.type = BshInterner.intern(type);
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public String getType() {
         return type;
     }
-
-    public void setType(String type) {
-        this.type = type;
-    }
     
 }
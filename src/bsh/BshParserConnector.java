@@ -15,9 +15,19 @@
  */
 package bsh;
 
+import de.bfg9000.beanshell.instrumentation.Probe;
+import java.io.FilterReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * This class uses the bsh.Parser to gather information on the structure of a script. The bsh.Parser works on a 
@@ -29,6 +39,16 @@ public class BshParserConnector {
     
     public static final String LOOSE_TYPE = "<loose type>";
     
+    private static final Logger logger = Logger.getLogger(BshParserConnector.class.getName());
+    
+    private static final List<BshImportInfo> DEFAULT_IMPORTS = getDefaultImports();
+    
+    private static final Cancelled CANCELLED = new Cancelled();
+    
+    private long visitedNodes;
+    private OutlineTokenManager outline;
+    private BshCancellation cancellation = BshCancellation.NONE;
+    
     /**
      * Gathers information on the structure of a script.
      * 
@@ -36,23 +56,92 @@ public class BshParserConnector {
      * @return a {@code BshScriptInfo} object containing the data that has been gathered
      */
     public BshScriptInfo parse(String inputString) {
-        final BshScriptInfo result = parse(new Parser(new StringReader(inputString)));
-        final String lines[] = inputString.split("\\r?\\n");
-        result.setBeginColum(lines.length == 0 ? 0 : 1);
-        result.setBeginLine(lines.length == 0 ? 0 : 1);
-        result.setEndLine(lines.length == 0 ? 0 : lines.length);
-        result.setEndColum(lines.length == 0 ? 0 : lines[lines.length -1].length());
+        return withBounds(parse(new Parser(new StringReader(inputString))), inputString);
+    }
+    
+    /**
+     * Gathers information on the structure of a script. The parse stops when the given cancellation is cancelled - 
+     * the result contains the top-level statements that have been parsed so far and is not 
+     * {@link BshScriptInfo#isComplete() complete}.
+     * 
+     * @param inputString the script
+     * @param cancellation tells the parser to stop
+     * @return a {@code BshScriptInfo} object containing the data that has been gathered
+     */
+    public BshScriptInfo parse(String inputString, BshCancellation cancellation) {
+        setCancellation(cancellation);
+        try {
+            return parse(inputString);
+        } finally {
+            setCancellation(BshCancellation.NONE);
+        }
+    }
+    
+    /**
+     * @param cancellation the cancellation that is checked by the following parses
+     */
+    void setCancellation(BshCancellation cancellation) {
+        this.cancellation = cancellation;
+    }
+    
+    /**
+     * Gathers the outline of a script. The bodies of top-level methods and classes are skipped - their inner methods 
+     * and variables are gathered when they are requested for the first time. This makes the outline available much 
+     * faster for scripts with large method bodies. Syntax errors within the skipped bodies are not reported. Bodies
+     * that contain imports are not skipped.
+     * 
+     * @param inputString the script
+     * @return a {@code BshScriptInfo} object containing the data that has been gathered
+     */
+    public BshScriptInfo parseOutline(String inputString) {
+        return withBounds(parse(createOutlineParser(inputString)), inputString);
+    }
+    
+    /**
+     * @param inputString the script
+     * @return a parser that skips the bodies of the top-level methods and classes of the given script
+     */
+    Parser createOutlineParser(String inputString) {
+        final JavaCharStream stream = new JavaCharStream(new StringReader(inputString), 1, 1);
+        final Parser result = new Parser(new OutlineTokenManager(stream, inputString));
+        result.jj_input_stream = stream;
         return result;
     }
     
     /**
-     * Gathers information on the structure of a script.
+     * Gathers information on the structure of a script. The script is read using the default charset.
      * 
      * @param inputStream the script
      * @return a {@code BshScriptInfo} object containing the data that has been gathered
      */
     public BshScriptInfo parse(InputStream inputStream) {
-        return parse(new Parser(inputStream));
+        return parse(new InputStreamReader(inputStream));
+    }
+    
+    /**
+     * Gathers information on the structure of a script. The script is read as a stream - it is never held in memory as
+     * a whole. The reader is not closed.
+     * 
+     * @param reader the script
+     * @return a {@code BshScriptInfo} object containing the data that has been gathered
+     */
+    public BshScriptInfo parse(Reader reader) {
+        final LineCountingReader lineCountingReader = new LineCountingReader(reader);
+        final BshScriptInfo result = parse(new Parser(lineCountingReader));
+        lineCountingReader.skipRemaining();
+        return lineCountingReader.getLineCounter().withBounds(result);
+    }
+    
+    /**
+     * Gathers information on the structure of a script. The script is read as a stream - it is never held in memory as
+     * a whole. The channel is not closed.
+     * 
+     * @param channel the script
+     * @param charset the charset of the script
+     * @return a {@code BshScriptInfo} object containing the data that has been gathered
+     */
+    public BshScriptInfo parse(ReadableByteChannel channel, Charset charset) {
+        return parse(Channels.newReader(channel, charset.newDecoder(), -1));
     }
     
     /**
@@ -62,42 +151,355 @@ public class BshParserConnector {
      * @return a {@code BshScriptInfo} object containing the data that has been gathered
      */
     private BshScriptInfo parse(Parser parser) {
-        final BshScriptInfo result = new BshScriptInfo();
-        result.addImports(getDefaultImports());
+        final long start = Probe.start();
+        final ParsedStatements parsed = parseStatements(parser);
+        final List<BshScriptInfo> statementInfos = new LinkedList<BshScriptInfo>();
+        for(Statement statement: parsed.statements)
+            statementInfos.add(statement.info);
+        final BshScriptInfo result = assemble(statementInfos);
+        Probe.PARSE.record(start, statementInfos.size());
+        return parsed.cancelled ? result.asIncomplete() : result;
+    }
+    
+    /**
+     * Parses the top-level statements of a script one by one. The information that has been gathered for a statement
+     * is kept separately, together with the position of the last token of the statement.
+     * 
+     * <p>After a syntax error the parser is resynchronized: the tokens up to the next {@code ;} or {@code }} on the 
+     * brace level of the statement are skipped. The error is recorded in the info of the statement.</p>
+     * 
+     * <p>The cancellation is checked in front of each statement and while the nodes of a statement are visited. A 
+     * statement that is cancelled halfway is dropped.</p>
+     * 
+     * @param parser the parser to be used
+     * @return the statements of the script
+     */
+    ParsedStatements parseStatements(Parser parser) {
+        final ParsedStatements result = new ParsedStatements();
         parser.setRetainComments(true);
-        
-        boolean error = false;
-        int line = -1;
-        int col = -1;
+        outline = (parser.token_source instanceof OutlineTokenManager) ? (OutlineTokenManager) parser.token_source 
+                                                                       : null;
         
         while(true) {
+            if(cancellation.isCancelled()) {
+                result.cancel();
+                break;
+            }
+            
+            final BshScriptInfo.Builder info = new BshScriptInfo.Builder();
+            final Token start = parser.token;
+            final BshErrorInfo error;
             try {
                 if(parser.Line())
                     break;
                 
                 final SimpleNode node = parser.popNode();
-                result.addImports(getScriptImports(node));
-                if(isMethod(node)) {
-                    result.addMethods(Collections.singleton(buildMethodInfo(node)));
-                } else if(isVariable(node)) {
-                    result.addVariables(Collections.singleton(buildVariableInfo(node)));
-                } else if(isClass(node))
-                    result.addMethods(Collections.singleton(buildClassInfo(node)));
-                
-                error = false;
-            } catch(Throwable t) {
-                if(error && ((line == parser.jj_input_stream.line) && (col == parser.jj_input_stream.column)))
+                try {
+                    visitStatement(node, info);
+                    result.statements.add(new Statement(info.build(), parser.token, false));
+                } catch(Cancelled ex) {
+                    result.cancel();
                     break;
-                error = true;
-            } finally {
-                line = parser.jj_input_stream.line;
-                col = parser.jj_input_stream.column;
+                } catch(RuntimeException ex) {
+                    logger.log(Level.FINE, "Can not gather the structure of the statement ending at line " +
+                               parser.token.endLine, ex);
+                    result.statements.add(new Statement(new BshScriptInfo(), parser.token, true));
+                }
+                continue;
+            } catch(ParseException ex) {
+                error = buildErrorInfo(ex);
+            } catch(TokenMgrError err) {
+                error = new BshErrorInfo(parser.jj_input_stream.getEndLine(), parser.jj_input_stream.getEndColumn(), 
+                                         err.getMessage(), Collections.<String>emptyList());
+            } catch(Error err) {
+                // The parser throws its LookaheadSuccess on some declarations that combine modifiers with generic 
+                // types - these are syntax errors to BeanShell 2.0b5
+                error = buildErrorInfo(parser.token);
+            }
+            
+            final boolean eof = !recover(parser, start);
+            info.errors.add(error);
+            result.statements.add(new Statement(info.build(), parser.token, true));
+            if(eof) {
+                result.complete = ParserConstants.EOF == parser.token.kind;
+                break;
             }
         }
-        removeDuplicateVariables(result.getVariables().iterator());
-        removeLooselyTypedOuterVariables(result, getVariableNames(new ArrayList<BshVariableInfo>()));        
         return result;
-    }    
+    }
+    
+    /**
+     * Skips the tokens up to the next {@code ;} or {@code }} on the brace level of the statement that contains the 
+     * syntax error. The tokens are skipped without the grammar - lexical errors are skipped as well.
+     * 
+     * @param parser the parser that stopped at a syntax error
+     * @param start the last token in front of the erroneous statement
+     * @return {@code false} if the end of the script has been reached (or if the script can not be read any further)
+     */
+    private boolean recover(Parser parser, Token start) {
+        parser.jjtree.reset();
+        
+        int depth = 0;
+        for(Token token=start.next; (null != token) && (token != parser.token.next); token=token.next)
+            depth += getDepthChange(token);
+        
+        int errorLine = -1;
+        int errorColumn = -1;
+        while(true) {
+            final Token token;
+            try {
+                token = parser.getNextToken();
+            } catch(TokenMgrError err) {                                       // the erroneous character is consumed
+                final JavaCharStream stream = parser.jj_input_stream;
+                if((errorLine == stream.getEndLine()) && (errorColumn == stream.getEndColumn()))
+                    return false;
+                errorLine = stream.getEndLine();
+                errorColumn = stream.getEndColumn();
+                continue;
+            }
+            
+            if(ParserConstants.EOF == token.kind)
+                return false;
+            
+            depth += getDepthChange(token);
+            if((ParserConstants.RBRACE == token.kind) && (depth <= 0))
+                return true;
+            if((ParserConstants.SEMICOLON == token.kind) && (depth <= 0))
+                return true;
+        }
+    }
+    
+    private int getDepthChange(Token token) {
+        switch(token.kind) {
+            case ParserConstants.LBRACE:
+                return 1;
+            case ParserConstants.RBRACE:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+    
+    /**
+     * @param ex the exception of the parser
+     * @return a {@code BshErrorInfo} that describes the syntax error
+     */
+    /**
+     * @param current the last token that has been consumed in front of the syntax error
+     * @return an error at the token after the given one
+     */
+    private static BshErrorInfo buildErrorInfo(Token current) {
+        final Token token = (null != current.next) ? current.next : current;
+        final String message = (ParserConstants.EOF == token.kind) ? "Unexpected end of script" 
+                                                                    : "Unexpected \"" +token.image +"\"";
+        return new BshErrorInfo(token.beginLine, token.beginColumn, message, Collections.<String>emptyList());
+    }
+    
+    private BshErrorInfo buildErrorInfo(ParseException ex) {
+        final Token token = ((null != ex.currentToken) && (null != ex.currentToken.next)) ? ex.currentToken.next 
+                                                                                          : ex.currentToken;
+        final List<String> expected = new ArrayList<String>();
+        if((null != ex.expectedTokenSequences) && (null != ex.tokenImage))
+            for(int[] sequence: ex.expectedTokenSequences) {
+                final StringBuilder builder = new StringBuilder();
+                for(int kind: sequence)
+                    builder.append(builder.length() > 0 ? " " : "").append(ex.tokenImage[kind]);
+                if(!expected.contains(builder.toString()))
+                    expected.add(builder.toString());
+            }
+        
+        if(null == token)
+            return new BshErrorInfo(0, 0, ex.getMessage(), expected);
+        
+        final String message = (ParserConstants.EOF == token.kind) ? "Unexpected end of script" 
+                                                                    : "Unexpected \"" +token.image +"\"";
+        return new BshErrorInfo(token.beginLine, token.beginColumn, message, expected);
+    }
+    
+    /**
+     * Combines the information that has been gathered for the top-level statements of a script.
+     * 
+     * @param statementInfos the infos of the top-level statements in the order of their appearance
+     * @return a {@code BshScriptInfo} object containing the data of all statements
+     */
+    BshScriptInfo assemble(Collection<BshScriptInfo> statementInfos) {
+        final BshScriptInfo.Builder result = new BshScriptInfo.Builder();
+        result.addImports(DEFAULT_IMPORTS);
+        for(BshScriptInfo info: statementInfos) {
+            result.addImports(info.getImports());
+            result.addErrors(info.getErrors());
+            result.addMethods(info.getMethods());
+            result.addVariables(info.getVariables());
+        }
+        removeDuplicateVariables(result.variables.iterator());
+        removeLooselyTypedOuterVariables(result.methods, getVariableNames(result.variables));
+        return result.build();
+    }
+    
+    /**
+     * @param scriptInfo the info of the complete script
+     * @param inputString the script
+     * @return a copy of the given script info with the begin and end position of the script
+     */
+    BshScriptInfo withBounds(BshScriptInfo scriptInfo, String inputString) {
+        final LineCounter lineCounter = new LineCounter();
+        for(int i=0; i<inputString.length(); i++)
+            lineCounter.count(inputString.charAt(i));
+        return lineCounter.withBounds(scriptInfo);
+    }
+    
+    /**
+     * Counts the lines and the length of the last line of a script. Lines are separated by "\n" or "\r\n", trailing
+     * empty lines are ignored.
+     */
+    static final class LineCounter {
+        
+        private int line;
+        private int column;
+        private boolean carriageReturn;
+        private int lastLine = -1;
+        private int lastColumn;
+        
+        void count(char c) {
+            if('\n' == c) {
+                carriageReturn = false;
+                line++;
+                column = 0;
+                return;
+            }
+            
+            if(carriageReturn)
+                column++;
+            carriageReturn = '\r' == c;
+            if(!carriageReturn)
+                column++;
+            if(column > 0) {
+                lastLine = line;
+                lastColumn = column;
+            }
+        }
+        
+        BshScriptInfo withBounds(BshScriptInfo scriptInfo) {
+            int endLine = lastLine +1;
+            int endColumn = lastColumn;
+            if(carriageReturn) {
+                endLine = line +1;
+                endColumn = column +1;
+            } else if((-1 == lastLine) && (0 == line)) {
+                endLine = 1;                                                            // the empty script
+            }
+            
+            final int begin = (endLine == 0) ? 0 : 1;
+            return scriptInfo.withBounds(begin, begin, endLine, endColumn);
+        }
+        
+    }
+    
+    /**
+     * Passes the characters that are read to a {@code LineCounter}.
+     */
+    static final class LineCountingReader extends FilterReader {
+        
+        private final LineCounter lineCounter = new LineCounter();
+        
+        LineCountingReader(Reader reader) {
+            super(reader);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+            if(-1 != result)
+                lineCounter.count((char) result);
+            return result;
+        }
+        
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            final int result = super.read(cbuf, off, len);
+            for(int i=0; i<result; i++)
+                lineCounter.count(cbuf[off +i]);
+            return result;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            final char[] buffer = new char[(int) Math.min(n, 4096)];
+            long result = 0;
+            while(result < n) {
+                final int read = read(buffer, 0, (int) Math.min(n -result, buffer.length));
+                if(-1 == read)
+                    break;
+                result += read;
+            }
+            return result;
+        }
+        
+        /**
+         * Reads the rest of the script that has not been consumed by the parser (after a fatal syntax error). The 
+         * bounds are left as they are if the script can not be read any further.
+         */
+        void skipRemaining() {
+            try {
+                while(skip(Long.MAX_VALUE) > 0) { }
+            } catch(IOException ex) { }
+        }
+        
+        LineCounter getLineCounter() {
+            return lineCounter;
+        }
+        
+    }
+    
+    /**
+     * The information that has been gathered for a single top-level statement of a script.
+     */
+    static final class Statement {
+        
+        final BshScriptInfo info;
+        final int endLine;
+        final int endColumn;
+        final boolean erroneous;
+
+        Statement(BshScriptInfo info, Token lastToken, boolean erroneous) {
+            this.info = info;
+            this.endLine = null == lastToken ? 0 : lastToken.endLine;
+            this.endColumn = null == lastToken ? 0 : lastToken.endColumn;
+            this.erroneous = erroneous;
+        }
+        
+    }
+    
+    /**
+     * The top-level statements of a script. The list is not complete if the parser has given up on the script.
+     */
+    static final class ParsedStatements {
+        
+        final List<Statement> statements = new ArrayList<Statement>();
+        boolean complete = true;
+        boolean cancelled;
+        
+        void cancel() {
+            complete = false;
+            cancelled = true;
+        }
+        
+    }
+    
+    /**
+     * Thrown while the nodes of a statement are visited, if the parse has been cancelled. There is only a single 
+     * instance without stack trace.
+     */
+    private static final class Cancelled extends RuntimeException {
+        
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+        
+    }
     
     //----------------------------------------------------------------------------------------------------------------//
     // Import handling                                                                                                //
@@ -111,46 +513,33 @@ public class BshParserConnector {
         return node instanceof BSHImportDeclaration;
     }
            
-    private List<BshImportInfo> getDefaultImports() {
-        final List<BshImportInfo> result = new LinkedList<BshImportInfo>();
+    /**
+     * @return the imports of every script - the infos are shared by all scripts
+     */
+    private static List<BshImportInfo> getDefaultImports() {
+        final List<BshImportInfo> result = new ArrayList<BshImportInfo>();
         final String[] defaults = { "javax.swing.event", "javax.swing", "java.awt.event", "java.awt", "java.net", 
                                     "java.util", "java.io", "java.lang" };
-        for(String defImport: defaults) {
-            final BshImportInfo importInfo = new BshImportInfo();
-            importInfo.addModifier(BshModifierInfo.Package);
-            importInfo.setLineNumber(-1);
-            importInfo.setName(defImport);
-            result.add(importInfo);
-        }
-        return result;
+        for(String defImport: defaults)
+            result.add(new BshImportInfo(defImport, -1, EnumSet.of(BshModifierInfo.Package)));
+        return Collections.unmodifiableList(result);
     }
     
     /**
-     * @param node node that might declare an import
+     * @param node node that declares an import
      * @return a {@code BshImportInfo} for a import declaration node
      */
-    private List<BshImportInfo> getScriptImports(SimpleNode node) {
-        final List<BshImportInfo> result = new LinkedList<BshImportInfo>();
-        final NodeHandler importHandler = new NodeHandler() {
-            @Override
-            public void handleNode(SimpleNode node) {
-                if(isImport(node)) {
-                    BSHImportDeclaration importNode = (BSHImportDeclaration) node;
-                    final BshImportInfo importInfo = new BshImportInfo();
-                    if(importNode.staticImport)
-                        importInfo.addModifier(BshModifierInfo.Static);
-                    if(importNode.superImport)
-                        importInfo.addModifier(BshModifierInfo.Super);
-                    if(importNode.importPackage)
-                        importInfo.addModifier(BshModifierInfo.Package);
-                    importInfo.setLineNumber(importNode.getLineNumber());
-                    importInfo.setName(((BSHAmbiguousName)importNode.children[0]).text);
-                    result.add(importInfo);
-                }
-            }
-        };
-        traverseNodeTree(node, importHandler);  
-        return result;
+    private BshImportInfo buildImportInfo(SimpleNode node) {
+        final BSHImportDeclaration importNode = (BSHImportDeclaration) node;
+        final Set<BshModifierInfo> modifiers = EnumSet.noneOf(BshModifierInfo.class);
+        if(importNode.staticImport)
+            modifiers.add(BshModifierInfo.Static);
+        if(importNode.superImport)
+            modifiers.add(BshModifierInfo.Super);
+        if(importNode.importPackage)
+            modifiers.add(BshModifierInfo.Package);
+        return new BshImportInfo(((BSHAmbiguousName)importNode.children[0]).text, importNode.getLineNumber(), 
+                                 modifiers);
     }
     
     //----------------------------------------------------------------------------------------------------------------//
@@ -166,11 +555,13 @@ public class BshParserConnector {
     }
     
     /**
+     * The inner methods and the variables of the class are added while the body of the class is visited.
+     * 
      * @param node node that declares a class
-     * @return a {@code BshMethodInfo} for a class declaration node
+     * @return a {@code BshMethodInfo.Builder} for a class declaration node
      */
-    private BshMethodInfo buildClassInfo(SimpleNode node) {
-        final BshMethodInfo result = new BshMethodInfo();
+    private BshMethodInfo.Builder buildClassInfo(SimpleNode node) {
+        final BshMethodInfo.Builder result = new BshMethodInfo.Builder();
         final BSHClassDeclaration clss = (BSHClassDeclaration) node;
         
         result.setBeginColum(clss.firstToken.beginColumn);
@@ -185,29 +576,20 @@ public class BshParserConnector {
         result.setClass(true);       
         result.addInterfaces(getClassInterfaces(clss));
         result.addModifiers(getClassModifiers(clss));
-        result.addMethods(getClassInnerMethods(clss));
-        result.addVariables(getFields(clss));        
-                
-        identifyConstructors(result, result.getName());
         return result;
     }
     
     /**
-     * @param node a node that declares a class
-     * @return a {@code List} of {@code BshMethodInfo} objects describing the inner methods of the given node
+     * Completes a class info after the body of the class has been visited.
+     * 
+     * @param scope the scope of the class
+     * @return the info of the class
      */
-    private List<BshMethodInfo> getClassInnerMethods(BSHClassDeclaration node) {
-        final List<BshMethodInfo> result = new LinkedList<BshMethodInfo>();
-        for(int i=0; i<node.jjtGetNumChildren(); i++) 
-            if(node.getChild(i) instanceof BSHBlock) {
-                final SimpleNode block = node.getChild(i);
-                for(int j=0; j<block.jjtGetNumChildren(); j++) {
-                    final SimpleNode child = block.getChild(j);
-                    if(isMethod(child))
-                        result.add(buildMethodInfo(child));
-                }
-            }
-        return result;
+    private BshMethodInfo finishClassInfo(Scope scope) {
+        final BshMethodInfo.Builder classInfo = (BshMethodInfo.Builder) scope.container;
+        removeDuplicateVariables(classInfo.variables.iterator());
+        classInfo.setDeferredBody(scope.deferredBody);
+        return classInfo.build();
     }
     
     /**
@@ -215,16 +597,7 @@ public class BshParserConnector {
      * @return the modifiers of the given class node
      */
     private Set<BshModifierInfo> getClassModifiers(BSHClassDeclaration node) {
-        final Set<BshModifierInfo> result = new HashSet<BshModifierInfo>();
-        final String modifiersAndType = node.getText().substring(0, node.getText().indexOf(getClassName(node)));
-        final StringTokenizer tokenizer = new StringTokenizer(modifiersAndType, " ");
-        while(tokenizer.hasMoreTokens()) {
-            final String token = tokenizer.nextToken().trim();
-            for(BshModifierInfo modifier: BshModifierInfo.values())
-                if(modifier.toString().equals(token))
-                    result.add(modifier);
-        }
-        return result;
+        return getModifiers(node.modifiers);
     }
     
     /**
@@ -236,14 +609,13 @@ public class BshParserConnector {
     }
     
     /**
-     * Sets the constructor flag on all contained methods that qualify as constructors
-     * 
-     * @param container the container that may contain constructors
-     * @param className the classname of the container
+     * @param method the declaration of a method
+     * @param returnType the return type of the method
+     * @param scope the scope that contains the method declaration
+     * @return {@code true} if the given method is a constructor of the class of the given scope
      */
-    private void identifyConstructors(BshInfoContainer container, String className) {
-        for(BshMethodInfo method: container.methods)
-            method.setConstructor(method.getName().equals(className) && "void".equals(method.getReturnType()));
+    private boolean isConstructor(BSHMethodDeclaration method, String returnType, Scope scope) {
+        return getMethodName(method).equals(scope.className) && "void".equals(returnType);
     }
     
     /**
@@ -251,35 +623,26 @@ public class BshParserConnector {
      * @return the defined superclass - or "Object"
      */
     private String getSuperClass(BSHClassDeclaration node) {
-        final String declaration = node.getText();
-        if(!declaration.contains(" extends "))
+        if(!node.extend || (0 == node.jjtGetNumChildren()) || !(node.getChild(0) instanceof BSHAmbiguousName))
             return "Object";
         
-        final StringTokenizer tokenizer = new StringTokenizer(declaration);
-        while(tokenizer.hasMoreTokens()) {
-            if("extends".equals(tokenizer.nextToken()) && tokenizer.hasMoreTokens()) {
-                String result = tokenizer.nextToken();
-                if(result.endsWith("{"))
-                    result = result.substring(0, result.length() -1);
-                return result;
-            }
-        }
-            
-        return "Object";
+        return ((BSHAmbiguousName) node.getChild(0)).text;
     }
      
     /**
+     * The children of a class declaration are the superclass (if any), the interfaces and the body of the class.
+     * 
      * @param clss the class to be inspected
      * @return the interfaces that are implemented by the given class
      */
     private List<String> getClassInterfaces(BSHClassDeclaration clss) {
-        final List<String> result = new LinkedList<String>();
-        if(0 < clss.numInterfaces) 
-            for(int j=0; j<clss.jjtGetNumChildren(); j++) {
-                final SimpleNode child = clss.getChild(j);
-                if(child instanceof BSHAmbiguousName)
-                    result.add(child.getText().trim());
-            }
+        final List<String> result = new ArrayList<String>(clss.numInterfaces);
+        final int first = clss.extend ? 1 : 0;
+        for(int j=first; (j<first +clss.numInterfaces) && (j<clss.jjtGetNumChildren()); j++) {
+            final SimpleNode child = clss.getChild(j);
+            if(child instanceof BSHAmbiguousName)
+                result.add(((BSHAmbiguousName) child).text);
+        }
         
         return result;
     }
@@ -303,27 +666,15 @@ public class BshParserConnector {
      * @return a {@code BshVariableInfo} for a variable declaration node
      */
     private BshVariableInfo buildVariableInfo(SimpleNode node) {
-        if(node instanceof BSHTypedVariableDeclaration) {
-            final BshVariableInfo varInfo = new BshVariableInfo();
-            for(BshModifierInfo modifier: BshModifierInfo.values()) {
-                final BSHTypedVariableDeclaration varDecl = (BSHTypedVariableDeclaration) node;
-                if((null != varDecl.modifiers) && varDecl.modifiers.hasModifier(modifier.toString()))
-                    varInfo.addModifier(modifier);
-            }
-            varInfo.setLineNumber(node.getLineNumber());
-            varInfo.setType(((BSHType) node.getChild(0)).getText().trim());
-            varInfo.setName(((BSHVariableDeclarator) node.getChild(1)).name.trim());
-            return varInfo;
-        }
+        if(node instanceof BSHTypedVariableDeclaration)
+            return new BshVariableInfo(((BSHVariableDeclarator) node.getChild(1)).name.trim(), 
+                                       getTypeName(node.getChild(0)), node.getLineNumber(), 
+                                       getModifiers(((BSHTypedVariableDeclaration) node).modifiers));
                     
         if((node instanceof BSHAssignment) && (node.children.length > 0) && 
-           (node.getChild(0).children.length > 0) && (node.getChild(0).getChild(0) instanceof BSHAmbiguousName)) {
-            final BshVariableInfo varInfo = new BshVariableInfo();
-            varInfo.setLineNumber(node.getLineNumber());
-            varInfo.setType(LOOSE_TYPE);
-            varInfo.setName(((BSHAmbiguousName) node.getChild(0).getChild(0)).getText().trim());
-            return varInfo;
-        }
+           (node.getChild(0).children.length > 0) && (node.getChild(0).getChild(0) instanceof BSHAmbiguousName))
+            return new BshVariableInfo(((BSHAmbiguousName) node.getChild(0).getChild(0)).text, LOOSE_TYPE, 
+                                       node.getLineNumber(), Collections.<BshModifierInfo>emptySet());
         
         throw new AssertionError("Not a variable declaration: " +node);
     }
@@ -347,28 +698,82 @@ public class BshParserConnector {
     
     /**
      * The ParserConnector identifies each access to a loosely typed variable as a possible variable declaration. 
-     * Therefor this method removes variables from the given container that are loosely typed redeclarations of 
+     * Therefor this method removes variables from the given methods that are loosely typed redeclarations of 
      * variables of the outer scope. This combination means, that no new variable is declared - instead the existing 
      * variable from the outer scope will be used.
      * 
      * @see (test) bsh/scripts/cascadedDeclaration.bsh
      * 
-     * @param container the container to (possibly) remove variable declarations from
+     * @param methods the methods to (possibly) remove variable declarations from - changed methods are replaced
      * @param outerScope the variables that have been declared in the outer scope
      */
-    private void removeLooselyTypedOuterVariables(BshInfoContainer container, Collection<String> outerScope) {
-        final Iterator<BshVariableInfo> iterator = container.variables.iterator();
+    private void removeLooselyTypedOuterVariables(List<BshMethodInfo> methods, Collection<String> outerScope) {
+        final ListIterator<BshMethodInfo> iterator = methods.listIterator();
+        while(iterator.hasNext())
+            iterator.set(removeLooselyTypedOuterVariables(iterator.next(), outerScope));
+    }
+    
+    /**
+     * @param method the method to (possibly) remove variable declarations from
+     * @param outerScope the variables that have been declared in the outer scope
+     * @return a copy of the given method without the redeclarations - or the given method if there are none
+     */
+    private BshMethodInfo removeLooselyTypedOuterVariables(BshMethodInfo method, Collection<String> outerScope) {
+        final DeferredBody body = method.getDeferredBody();
+        if(null != body)
+            return method.withDeferredBody(body.withOuterScope(outerScope));
+        
+        final List<BshVariableInfo> variables = new ArrayList<BshVariableInfo>(method.getVariables());
+        final Iterator<BshVariableInfo> iterator = variables.iterator();
         while(iterator.hasNext()) {
             final BshVariableInfo varInfo = iterator.next();
             if(LOOSE_TYPE.equals(varInfo.getType()) && outerScope.contains(varInfo.getName()))
                 iterator.remove();
         }
         
-        final Set<String> thisScope = new HashSet<String>(outerScope);
-        thisScope.addAll(getVariableNames(container.variables));
+        final Collection<String> thisScope = variables.isEmpty() ? outerScope
+                                             : new NestedScope(getVariableNames(variables), outerScope);
+        
+        final List<BshMethodInfo> methods = new ArrayList<BshMethodInfo>(method.getMethods());
+        removeLooselyTypedOuterVariables(methods, thisScope);
+        
+        if((variables.size() == method.getVariables().size()) && methods.equals(method.getMethods()))
+            return method;
+        return method.withChildren(methods, variables);
+    }
+    
+    /**
+     * The variable names of a scope together with the names of its outer scopes. The names of the outer scopes are not
+     * copied, so the scope of each method costs only its own variables. Only {@code contains} is fast - the iterator 
+     * returns the names of all scopes, names that are declared in more than one scope are returned more than once.
+     */
+    static final class NestedScope extends AbstractCollection<String> {
+        
+        private final Set<String> names;
+        private final Collection<String> outerScope;
+
+        NestedScope(Set<String> names, Collection<String> outerScope) {
+            this.names = names;
+            this.outerScope = outerScope;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return names.contains(o) || outerScope.contains(o);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final List<String> result = new ArrayList<String>(names);
+            result.addAll(outerScope);
+            return result.iterator();
+        }
+
+        @Override
+        public int size() {
+            return names.size() +outerScope.size();
+        }
         
-        for(BshInfoContainer innerContainer: container.getMethods())
-            removeLooselyTypedOuterVariables(innerContainer, thisScope);
     }
     
     //----------------------------------------------------------------------------------------------------------------//
@@ -384,11 +789,14 @@ public class BshParserConnector {
     }
     
     /**
+     * The inner methods, the variables and the return type of the method are set while the body of the method is 
+     * visited and by {@link #finishMethodInfo}.
+     * 
      * @param node node that declares a method
-     * @return a {@code BshMethodInfo} for a method declaration node
+     * @return a {@code BshMethodInfo.Builder} for a method declaration node
      */
-    private BshMethodInfo buildMethodInfo(SimpleNode node) {
-        final BshMethodInfo result = new BshMethodInfo();
+    private BshMethodInfo.Builder buildMethodInfo(SimpleNode node) {
+        final BshMethodInfo.Builder result = new BshMethodInfo.Builder();
         final BSHMethodDeclaration method = (BSHMethodDeclaration) node;
         
         result.setBeginColum(method.firstToken.beginColumn);
@@ -397,63 +805,42 @@ public class BshParserConnector {
         result.setEndLine(method.lastToken.endLine);
         result.setLineNumber(node.getLineNumber());
         result.setName(getMethodName(method));
-        result.setReturnType(getMethodReturnType(method));
-        result.setClass(isScriptedClass(node));
         result.addModifiers(getMethodModifiers(method));
         result.addParameters(getMethodFormalParameters(method));
-        result.addMethods(getMethodInnerMethods(method));
-        result.addVariables(getFields(method));
         
         return result;
     }
     
     /**
-     * @param node a node that declares a method
-     * @return a {@code List} of {@code BshMethodInfo} objects describing the inner methods of the given node
+     * Completes a method info after the body of the method has been visited.
+     * 
+     * @param scope the scope of the method
+     * @param outerScope the scope that contains the method declaration
+     * @return the info of the method
      */
-    private List<BshMethodInfo> getMethodInnerMethods(BSHMethodDeclaration node) {
-        final List<BshMethodInfo> result = new LinkedList<BshMethodInfo>();
-        for(int i=0; i<node.jjtGetNumChildren(); i++) 
-            if(node.getChild(i) instanceof BSHBlock) {
-                final SimpleNode block = node.getChild(i);
-                for(int j=0; j<block.jjtGetNumChildren(); j++) {
-                    final SimpleNode child = block.getChild(j);
-                    if(isMethod(child))
-                        result.add(buildMethodInfo(child));
-                }
-            }
-        return result;
+    private BshMethodInfo finishMethodInfo(Scope scope, Scope outerScope) {
+        final BshMethodInfo.Builder methodInfo = (BshMethodInfo.Builder) scope.container;
+        final BSHMethodDeclaration method = (BSHMethodDeclaration) scope.node;
+        final String declaredType = getMethodReturnType(method);
+        final String returnType = (null != declaredType) ? declaredType : (scope.returnsValue ? LOOSE_TYPE : "void");
+        methodInfo.setReturnType(returnType);
+        methodInfo.setClass(scope.returnsThis);
+        methodInfo.setConstructor(isConstructor(method, returnType, outerScope));
+        methodInfo.setDeferredBody(scope.deferredBody);
+        removeDuplicateVariables(methodInfo.variables.iterator());
+        return methodInfo.build();
     }
     
     /**
      * @param node a node that declares a method
-     * @return the return type of the given method node
+     * @return the declared return type of the given method node - or {@code null} if no type has been declared
      */
     private String getMethodReturnType(BSHMethodDeclaration node) {
-        final String modifiersAndType = node.getText().substring(0, node.getText().indexOf(getMethodName(node)));
-        final StringTokenizer tokenizer = new StringTokenizer(modifiersAndType, " ");
-        while(tokenizer.hasMoreTokens()) {
-            final String token = tokenizer.nextToken().trim();
-            
-            boolean contained = false;
-            for(BshModifierInfo modifier: BshModifierInfo.values())
-                if(modifier.toString().equals(token))
-                    contained = true;
-            if(!contained)
-                return token;
-        }
-        
-        for(int i=0; i<node.jjtGetNumChildren(); i++) 
-            if(node.getChild(i) instanceof BSHBlock) {
-                final SimpleNode block = node.getChild(i);
-                for(int j=0; j<block.jjtGetNumChildren(); j++) {
-                    final SimpleNode child = block.getChild(j);
-                    if(child instanceof BSHReturnStatement) 
-                        return LOOSE_TYPE;
-                }
-            }
+        if((0 == node.jjtGetNumChildren()) || !(node.getChild(0) instanceof BSHReturnType))
+            return null;
         
-        return "void";
+        final BSHReturnType returnType = (BSHReturnType) node.getChild(0);
+        return returnType.isVoid ? "void" : getTypeName(returnType.getTypeNode());
     }
     
     /**
@@ -461,16 +848,7 @@ public class BshParserConnector {
      * @return the modifiers of the given method node
      */
     private Set<BshModifierInfo> getMethodModifiers(BSHMethodDeclaration node) {
-        final Set<BshModifierInfo> result = new HashSet<BshModifierInfo>();
-        final String modifiersAndType = node.getText().substring(0, node.getText().indexOf(getMethodName(node)));
-        final StringTokenizer tokenizer = new StringTokenizer(modifiersAndType, " ");
-        while(tokenizer.hasMoreTokens()) {
-            final String token = tokenizer.nextToken().trim();
-            for(BshModifierInfo modifier: BshModifierInfo.values())
-                if(modifier.toString().equals(token))
-                    result.add(modifier);
-        }
-        return result;
+        return getModifiers(node.modifiers);
     }
     
     /**
@@ -486,47 +864,165 @@ public class BshParserConnector {
      * @return the {@code List} of formal parameters of the given method node
      */
     private List<BshParameterInfo> getMethodFormalParameters(BSHMethodDeclaration node) {        
-        final List<BshParameterInfo> result = new LinkedList<BshParameterInfo>();
-        final String text = node.getText().substring(node.getText().indexOf("(") +1, node.getText().indexOf(")"));
-        final StringTokenizer tokenizer = new StringTokenizer(text, ",");
-
-        while(tokenizer.hasMoreTokens()) {
-            final String token = tokenizer.nextToken().trim();
-            if(token.isEmpty())
-                continue;
-            
-            final int index = token.indexOf(" ");
-            if(-1 == index) {
-                result.add(new BshParameterInfo(token, LOOSE_TYPE));
-            } else {
-                result.add(new BshParameterInfo(token.substring(index +1), token.substring(0, index)));
+        for(int i=0; i<node.jjtGetNumChildren(); i++) 
+            if(node.getChild(i) instanceof BSHFormalParameters) {
+                final SimpleNode parameters = node.getChild(i);
+                final List<BshParameterInfo> result = new ArrayList<BshParameterInfo>(parameters.jjtGetNumChildren());
+                for(int j=0; j<parameters.jjtGetNumChildren(); j++) {
+                    final BSHFormalParameter parameter = (BSHFormalParameter) parameters.getChild(j);
+                    final boolean typed = (parameter.jjtGetNumChildren() > 0) && 
+                                          (parameter.getChild(0) instanceof BSHType);
+                    result.add(new BshParameterInfo(parameter.name, 
+                                                    typed ? getTypeName(parameter.getChild(0)) : LOOSE_TYPE));
+                }
+                return result;
             }
-        }
         
-        return result;
+        return Collections.emptyList();
     }
  
     /**
-     * @param node the node to be checked
-     * @return {@code true} if the given node describes a class (a method declaration that returns a self reference)
+     * @param node a return statement
+     * @return {@code true} if the given statement returns a self reference (which makes the method a scripted class)
+     */
+    private boolean isSelfReference(SimpleNode node) {
+        return (node.jjtGetNumChildren() > 0) && "this".equals(node.getChild(0).getText().trim());
+    }
+    
+    //----------------------------------------------------------------------------------------------------------------//
+    // Node traversal                                                                                                 //
+    //----------------------------------------------------------------------------------------------------------------//
+    
+    /**
+     * Gathers the imports, methods, classes and variables of a top-level statement. The node tree of the statement is
+     * walked only once.
+     * 
+     * @param node the node of a top-level statement
+     * @param scriptInfo the builder the gathered data is added to
+     */
+    private void visitStatement(SimpleNode node, BshScriptInfo.Builder scriptInfo) {
+        final List<BshImportInfo> imports = new LinkedList<BshImportInfo>();
+        visit(node, new Scope(scriptInfo, node), imports);
+        scriptInfo.addImports(imports);
+    }
+    
+    /**
+     * @param node the node to be visited
+     * @param scope the scope that directly contains the given node - or {@code null} if the node is nested deeper
+     * @param imports the list the found imports are added to
      */
-    private boolean isScriptedClass(SimpleNode node) {
-        if(!(node instanceof BSHMethodDeclaration))
-            return false;
+    private void visit(SimpleNode node, Scope scope, List<BshImportInfo> imports) {
+        if((0 == (++visitedNodes & 0xFF)) && cancellation.isCancelled())
+            throw CANCELLED;
+        if(isImport(node)) {
+            imports.add(buildImportInfo(node));
+        } else if(null != scope) {
+            if(isMethod(node)) {
+                final Scope methodScope = new Scope(buildMethodInfo(node), node);
+                visitDeclaration(node, methodScope, imports);
+                scope.container.methods.add(finishMethodInfo(methodScope, scope));
+                return;
+            }
+            if(isClass(node)) {
+                final Scope classScope = new Scope(buildClassInfo(node), node);
+                visitDeclaration(node, classScope, imports);
+                scope.container.methods.add(finishClassInfo(classScope));
+                return;
+            }
+            if(isVariable(node))
+                scope.container.variables.add(buildVariableInfo(node));
+        }
         
-        for(int i=0; i<node.jjtGetNumChildren(); i++) 
-            if(node.getChild(i) instanceof BSHBlock) {
-                final SimpleNode block = node.getChild(i);
-                for(int j=0; j<block.jjtGetNumChildren(); j++) {
-                    final SimpleNode child = block.getChild(j);
-                    if((child instanceof BSHReturnStatement) && 
-                       (block.jjtGetNumChildren() > 0) && 
-                       ("this".equals(child.getChild(0).getText().trim()))) 
-                        return true;
+        for(int i=0; i<node.jjtGetNumChildren(); i++)
+            visit(node.getChild(i), null, imports);
+    }
+    
+    /**
+     * Visits the children of a method or class declaration. The statements of the body belong to the given scope.
+     */
+    private void visitDeclaration(SimpleNode node, Scope scope, List<BshImportInfo> imports) {
+        for(int i=0; i<node.jjtGetNumChildren(); i++) {
+            final SimpleNode child = node.getChild(i);
+            if(!(child instanceof BSHBlock)) {
+                visit(child, null, imports);
+                continue;
+            }
+            
+            visitedNodes++;
+            final OutlineTokenManager.SkippedBody skipped = getSkippedBody(child);
+            if(null != skipped) {
+                scope.returnsValue |= skipped.returnsValue;
+                scope.returnsThis |= skipped.returnsThis;
+                scope.deferredBody = new DeferredBody(outline.getSource(), child.firstToken, skipped.close, 
+                                                      scope.className);
+            }
+            
+            for(int j=0; j<child.jjtGetNumChildren(); j++) {
+                final SimpleNode statement = child.getChild(j);
+                if(statement instanceof BSHReturnStatement) {
+                    scope.returnsValue = true;
+                    scope.returnsThis |= isSelfReference(statement);
                 }
+                visit(statement, scope, imports);
             }
+        }
+    }
+    
+    /**
+     * @param block the body of a method or class
+     * @return the tokens of the given body that have been skipped by an outline parse - or {@code null}
+     */
+    private OutlineTokenManager.SkippedBody getSkippedBody(SimpleNode block) {
+        return (null == outline) ? null : outline.getSkippedBody(block.firstToken);
+    }
+    
+    /**
+     * Gathers the inner methods and the variables of a body that has been skipped by an outline parse.
+     * 
+     * @param block the body of a top-level method or class
+     * @param className the name of the class - or {@code null} if the body belongs to a method
+     * @param outerScope the variables of the script
+     * @return a method info that contains the inner methods and the variables of the body
+     */
+    BshMethodInfo visitBody(SimpleNode block, String className, Collection<String> outerScope) {
+        final BshMethodInfo.Builder builder = new BshMethodInfo.Builder();
+        final Scope scope = new Scope(builder, block, className);
+        final List<BshImportInfo> imports = new LinkedList<BshImportInfo>();
+        for(int i=0; i<block.jjtGetNumChildren(); i++)
+            visit(block.getChild(i), scope, imports);
+        removeDuplicateVariables(builder.variables.iterator());
+        return removeLooselyTypedOuterVariables(builder.build(), outerScope);
+    }
+    
+    /**
+     * @return the number of nodes that have been visited by this ParserConnector
+     */
+    long getVisitedNodes() {
+        return visitedNodes;
+    }
+    
+    /**
+     * A script, method or class whose body is being visited.
+     */
+    private static final class Scope {
+        
+        final BshInfoContainer.Builder container;
+        final SimpleNode node;
+        final String className;
+        boolean returnsValue;
+        boolean returnsThis;
+        DeferredBody deferredBody;
+
+        Scope(BshInfoContainer.Builder container, SimpleNode node) {
+            this(container, node, (node instanceof BSHClassDeclaration) ? ((BSHClassDeclaration) node).name : null);
+        }
+
+        Scope(BshInfoContainer.Builder container, SimpleNode node, String className) {
+            this.container = container;
+            this.node = node;
+            this.className = className;
+        }
         
-        return false;
     }
     
     //----------------------------------------------------------------------------------------------------------------//
@@ -534,24 +1030,37 @@ public class BshParserConnector {
     //----------------------------------------------------------------------------------------------------------------//
     
     /**
-     * @param node a node that declares a method
-     * @return a {@code List} of {@code BshMethodInfo} objects describing the inner methods of the given node
+     * @param modifiers the modifiers of a declaration - may be {@code null}
+     * @return the given modifiers as set of {@code BshModifierInfo} values
      */
-    private List<BshVariableInfo> getFields(SimpleNode node) {
-        final List<BshVariableInfo> result = new LinkedList<BshVariableInfo>();
-        for(int i=0; i<node.jjtGetNumChildren(); i++) 
-            if(node.getChild(i) instanceof BSHBlock) {
-                final SimpleNode block = node.getChild(i);
-                for(int j=0; j<block.jjtGetNumChildren(); j++) {
-                    final SimpleNode child = block.getChild(j);
-                    if(isVariable(child)) 
-                        result.add(buildVariableInfo(child));
-                }
-            }
-        removeDuplicateVariables(result.iterator());
+    private Set<BshModifierInfo> getModifiers(Modifiers modifiers) {
+        final Set<BshModifierInfo> result = EnumSet.noneOf(BshModifierInfo.class);
+        if(null != modifiers)
+            for(BshModifierInfo modifier: BshModifierInfo.values())
+                if(modifiers.hasModifier(modifier.toString()))
+                    result.add(modifier);
         return result;
     }
     
+    /**
+     * Concatenates the tokens of a type node. The text of the whole declaration is not built.
+     * 
+     * @param node a node that describes a type (like {@code java.util.List} or {@code int[]})
+     * @return the name of the type
+     */
+    private String getTypeName(SimpleNode node) {
+        if(node.firstToken == node.lastToken)
+            return node.firstToken.image;
+        
+        final StringBuilder result = new StringBuilder();
+        for(Token token=node.firstToken; null != token; token=token.next) {
+            result.append(token.image);
+            if(token == node.lastToken)
+                break;
+        }
+        return result.toString();
+    }
+    
 //    /**
 //     * Prints the (complete) structure of the given note. The first call should have a prefix of "".
 //     */
@@ -567,16 +1076,6 @@ public class BshParserConnector {
 //        }
 //    }    
     
-    private static interface NodeHandler {
-        public abstract void handleNode(SimpleNode node);
-    }
-    
-    private void traverseNodeTree(SimpleNode node, NodeHandler handler) {
-        handler.handleNode(node);
-        for(int i=0; i<node.jjtGetNumChildren(); i++)
-            traverseNodeTree(node.getChild(i), handler);
-    }
-    
     private Set<String> getVariableNames(Collection<BshVariableInfo> variables) {
         final Set<String> result = new HashSet<String>();
         for(BshVariableInfo varInfo: variables)
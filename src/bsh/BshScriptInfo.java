@@ -15,8 +15,8 @@
  */
 package bsh;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -24,15 +24,111 @@ import java.util.List;
  * @author Thomas Werner
  */
 public class BshScriptInfo extends BshInfoContainer {
+    
+    private static final BshImportInfo[] NO_IMPORTS = new BshImportInfo[0];
+    private static final BshErrorInfo[] NO_ERRORS = new BshErrorInfo[0];
  
-    protected final List<BshImportInfo> imports = new LinkedList<BshImportInfo>();
+    private final BshImportInfo[] imports;
+    private final BshErrorInfo[] errors;
+    private final boolean complete;
+    
+    /**
+     * Creates the info of an empty script.
+     */
+    public BshScriptInfo() {
+        this(new Builder());
+    }
+    
+    private BshScriptInfo(Builder builder) {
+        super(builder);
+        imports = toArray(builder.imports, NO_IMPORTS);
+        errors = toArray(builder.errors, NO_ERRORS);
+        complete = true;
+    }
+    
+    private BshScriptInfo(BshMethodInfo[] methods, BshVariableInfo[] variables, BshImportInfo[] imports, 
+                          BshErrorInfo[] errors, boolean complete, int beginLine, int beginColum, int endLine, 
+                          int endColum) {
+        super(methods, variables, null, beginLine, beginColum, endLine, endColum);
+        this.imports = imports;
+        this.errors = errors;
+        this.complete = complete;
+    }
     
     public List<BshImportInfo> getImports() {
-        return imports;
+        return toList(imports);
     }
-
-    public void addImports(Collection<BshImportInfo> importInfos) {
-        imports.addAll(importInfos);
+    
+    /**
+     * @return the syntax errors of the script
+     */
+    public List<BshErrorInfo> getErrors() {
+        return toList(errors);
+    }
+    
+    /**
+     * @return {@code false} if the parse has been cancelled - the info contains only the statements in front of the 
+     *         point of cancellation
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    /**
+     * @return a script info that shares the data of this script info, but is marked as incomplete
+     */
+    public BshScriptInfo asIncomplete() {
+        return new BshScriptInfo(methods(), variables(), imports, errors, false, beginLine, beginColum, endLine, 
+                                 endColum);
+    }
+    
+    /**
+     * @param lineOffset the number of lines the copy is moved by
+     * @return a moved copy of this script info - or this script info if the offset is 0
+     */
+    BshScriptInfo copy(int lineOffset) {
+        if(0 == lineOffset)
+            return this;
+        
+        final BshImportInfo[] movedImports = imports.clone();
+        for(int i=0; i<movedImports.length; i++)
+            movedImports[i] = imports[i].copy(lineOffset);
+        final BshErrorInfo[] movedErrors = errors.clone();
+        for(int i=0; i<movedErrors.length; i++)
+            movedErrors[i] = errors[i].copy(lineOffset);
+        return new BshScriptInfo(copy(methods(), lineOffset), copy(variables(), lineOffset), movedImports, 
+                                 movedErrors, complete, beginLine +lineOffset, beginColum, endLine +lineOffset, 
+                                 endColum);
+    }
+    
+    /**
+     * @return a script info that shares the data of this script info, but has the given position
+     */
+    BshScriptInfo withBounds(int beginLine, int beginColum, int endLine, int endColum) {
+        return new BshScriptInfo(methods(), variables(), imports, errors, complete, beginLine, beginColum, endLine, 
+                                 endColum);
+    }
+    
+    /**
+     * Collects the data of a script while it is parsed.
+     */
+    public static class Builder extends BshInfoContainer.Builder {
+        
+        final List<BshImportInfo> imports = new ArrayList<BshImportInfo>();
+        final List<BshErrorInfo> errors = new ArrayList<BshErrorInfo>();
+        
+        public void addImports(Collection<BshImportInfo> importInfos) {
+            imports.addAll(importInfos);
+        }
+        
+        public void addErrors(Collection<BshErrorInfo> errorInfos) {
+            errors.addAll(errorInfos);
+        }
+        
+        public BshScriptInfo build() {
+            return new BshScriptInfo(this);
+        }
+        
     }
     
 }
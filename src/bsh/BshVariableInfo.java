@@ -15,8 +15,7 @@
  */
 package bsh;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -37,13 +36,20 @@ public class BshVariableInfo implements BshInfo {
         
     }
     
-    private Set<BshModifierInfo> modifiers;
-    private String name;
-    private String type;
-    private int lineNumber;
+    private final int modifiers;
+    private final String name;
+    private final String type;
+    private final int lineNumber;
 
-    public BshVariableInfo() {
-        modifiers = new HashSet<BshModifierInfo>();
+    public BshVariableInfo(String name, String type, int lineNumber, Collection<BshModifierInfo> modifiers) {
+        this(BshInterner.intern(name), BshInterner.intern(type), lineNumber, BshModifierInfo.toMask(modifiers));
+    }
+    
+    private BshVariableInfo(String name, String type, int lineNumber, int modifiers) {
+        this.name = name;
+        this.type = type;
+        this.lineNumber = lineNumber;
+        this.modifiers = modifiers;
     }
     
     @Override
@@ -51,17 +57,9 @@ public class BshVariableInfo implements BshInfo {
         return lineNumber;
     }
 
-    public void setLineNumber(int lineNumber) {
-        this.lineNumber = lineNumber;
-    }
-
     @Override
     public Set<BshModifierInfo> getModifiers() {
-        return Collections.unmodifiableSet(modifiers);
-    }
-
-    public void addModifier(BshModifierInfo modifier) {
-        modifiers.add(modifier);
+        return BshModifierInfo.fromMask(modifiers);
     }
 
     @Override
@@ -69,20 +67,21 @@ public class BshVariableInfo implements BshInfo {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public String getType() {
         return type;
     }
 
-    public void setType(String type) {
-        this.type = type;
+    /**
+     * @param lineOffset the number of lines the copy is moved by
+     * @return a moved copy of this variable info - or this variable info if the offset is 0
+     */
+    BshVariableInfo copy(int lineOffset) {
+        return (0 == lineOffset) ? this : new BshVariableInfo(name, type, lineNumber +lineOffset, modifiers);
     }
 
     @Override
     public String getIconPath() {
+        final Set<BshModifierInfo> modifiers = getModifiers();
         final boolean isStatic = modifiers.contains(BshModifierInfo.Static);
         if(modifiers.contains(BshModifierInfo.Private)) {
             return PRFX +(isStatic ? "variableStPrivate.png" : "variablePrivate.png");
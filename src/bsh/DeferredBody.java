@@ -0,0 +1,126 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The body of a top-level method or class that has been skipped by an outline parse (see 
+ * {@link BshParserConnector#parseOutline(String)}). The body is parsed when the inner methods or the variables of the 
+ * declaration are requested for the first time. Instances are immutable.
+ * 
+ * @author Thomas Werner
+ */
+final class DeferredBody {
+    
+    private final Source source;
+    private final int beginLine;
+    private final int beginColumn;
+    private final int endLine;
+    private final int endColumn;
+    private final String className;
+    private final int lineOffset;
+    private final Collection<String> outerScope;
+    
+    /**
+     * @param source the parsed text
+     * @param open the opening brace of the body
+     * @param close the closing brace of the body
+     * @param className the name of the class the body belongs to - or {@code null} for the body of a method
+     */
+    DeferredBody(Source source, Token open, Token close, String className) {
+        this(source, open.beginLine, open.beginColumn, close.endLine, close.endColumn, className, 0, 
+             Collections.<String>emptySet());
+    }
+    
+    private DeferredBody(Source source, int beginLine, int beginColumn, int endLine, int endColumn, String className,
+                         int lineOffset, Collection<String> outerScope) {
+        this.source = source;
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endLine = endLine;
+        this.endColumn = endColumn;
+        this.className = className;
+        this.lineOffset = lineOffset;
+        this.outerScope = outerScope;
+    }
+    
+    /**
+     * @param offset the number of lines the body is moved by
+     * @return a copy of this body with moved line numbers
+     */
+    DeferredBody withLineOffset(int offset) {
+        return new DeferredBody(source, beginLine, beginColumn, endLine, endColumn, className, lineOffset +offset, 
+                                outerScope);
+    }
+    
+    /**
+     * @param variables the variables of the script that contains the declaration
+     * @return a copy of this body that hides loosely typed redeclarations of the given variables
+     */
+    DeferredBody withOuterScope(Collection<String> variables) {
+        return new DeferredBody(source, beginLine, beginColumn, endLine, endColumn, className, lineOffset, variables);
+    }
+    
+    /**
+     * Parses the body. The body is parsed on its own, using the line and column numbers of the complete text.
+     * 
+     * @return a method info that contains the inner methods and the variables of the body
+     */
+    BshMethodInfo load() {
+        final int[] lineStarts = source.getLineStarts();
+        final int begin = BshIncrementalParser.getEndOffset(source.text, lineStarts, beginLine, beginColumn) -1;
+        final int end = BshIncrementalParser.getEndOffset(source.text, lineStarts, endLine, endColumn);
+        if((begin < 0) || (end < begin))
+            return new BshMethodInfo.Builder().build();
+        
+        final String region = BshIncrementalParser.buildRegionText(source.text, lineStarts[beginLine -1], begin, end);
+        final Parser parser = new Parser(new StringReader(region));
+        try {
+            if(parser.Line())
+                return new BshMethodInfo.Builder().build();
+            final BshMethodInfo result = new BshParserConnector().visitBody(parser.popNode(), className, outerScope);
+            return result.copy(beginLine -1 +lineOffset);
+        } catch(ParseException ex) {
+            return new BshMethodInfo.Builder().build();
+        } catch(Error err) {                                        // TokenMgrError or the parser's LookaheadSuccess
+            return new BshMethodInfo.Builder().build();
+        }
+    }
+    
+    /**
+     * The text of an outline parse. It is shared by all skipped bodies of the text.
+     */
+    static final class Source {
+        
+        private final String text;
+        private int[] lineStarts;
+        
+        Source(String text) {
+            this.text = text;
+        }
+        
+        synchronized int[] getLineStarts() {
+            if(null == lineStarts)
+                lineStarts = BshIncrementalParser.getLineStarts(text);
+            return lineStarts;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,222 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A token manager that hides the bodies of top-level methods and classes from the parser: the parser only gets the 
+ * braces of such a body. The skipped tokens are scanned for return statements, so the parser connector can still tell 
+ * scripted classes and loosely typed methods apart.
+ * 
+ * <p>A body that contains an import or a lexical error is passed to the parser as usual.</p>
+ * 
+ * @author Thomas Werner
+ */
+final class OutlineTokenManager extends ParserTokenManager {
+    
+    private final DeferredBody.Source source;
+    private final Map<Token, SkippedBody> skippedBodies = new IdentityHashMap<Token, SkippedBody>();
+    private final LinkedList<Token> pending = new LinkedList<Token>();
+    private TokenMgrError pendingError;
+    
+    private int depth;
+    private int parenDepth;
+    private Token previous;
+    private Token beforePrevious;
+    private boolean nameInFront;
+    private boolean methodHeader;
+    private boolean classHeader;
+    
+    OutlineTokenManager(JavaCharStream stream, String text) {
+        super(stream);
+        source = new DeferredBody.Source(text);
+    }
+    
+    @Override
+    public Token getNextToken() {
+        if(!pending.isEmpty())
+            return pending.removeFirst();
+        if(null != pendingError) {
+            final TokenMgrError error = pendingError;
+            pendingError = null;
+            throw error;
+        }
+        
+        final Token token = super.getNextToken();
+        if((ParserConstants.LBRACE == token.kind) && (0 == depth) && (0 == parenDepth) && 
+           (methodHeader || classHeader)) {
+            methodHeader = false;
+            classHeader = false;
+            previous = skipBody(token);
+            beforePrevious = null;
+            return token;
+        }
+        
+        track(token);
+        return token;
+    }
+    
+    /**
+     * @param open the opening brace of a body
+     * @return the body that starts with the given brace - or {@code null} if the body has not been skipped
+     */
+    SkippedBody getSkippedBody(Token open) {
+        return skippedBodies.get(open);
+    }
+    
+    DeferredBody.Source getSource() {
+        return source;
+    }
+    
+    /**
+     * Reads the tokens up to the closing brace of a body. Only the closing brace is passed to the parser - unless the
+     * body has to be parsed as usual.
+     * 
+     * @param open the opening brace of the body
+     * @return the last token that has been read
+     */
+    private Token skipBody(Token open) {
+        final List<Token> tokens = new ArrayList<Token>();
+        final SkippedBody body = new SkippedBody();
+        boolean parse = false;
+        int bodyDepth = 1;
+        int returnState = 0;                                     // 1: "return" has been read, 2: "return this"
+        Token last = open;
+        while(0 < bodyDepth) {
+            final Token token;
+            try {
+                token = super.getNextToken();
+            } catch(TokenMgrError err) {                       // the rest of the body is passed to the parser
+                pendingError = err;
+                depth = bodyDepth;
+                parse = true;
+                break;
+            }
+            
+            tokens.add(token);
+            if((ParserConstants.EOF == token.kind) || (ParserConstants.IMPORT == token.kind)) {
+                parse = true;
+                if(ParserConstants.EOF == token.kind)
+                    break;
+            }
+            
+            if((2 == returnState) && (ParserConstants.SEMICOLON == token.kind))
+                body.returnsThis = true;
+            returnState = ((1 == returnState) && (ParserConstants.IDENTIFIER == token.kind) && 
+                           "this".equals(token.image)) ? 2 : 0;
+            if((1 == bodyDepth) && (ParserConstants.RETURN == token.kind) && isStatementStart(last)) {
+                body.returnsValue = true;
+                returnState = 1;
+            }
+            
+            if(ParserConstants.LBRACE == token.kind)
+                bodyDepth++;
+            else if(ParserConstants.RBRACE == token.kind)
+                bodyDepth--;
+            if(ParserConstants.FORMAL_COMMENT != token.kind)
+                last = token;
+        }
+        
+        if(parse) {
+            pending.addAll(tokens);
+            return last;
+        }
+        
+        body.close = last;
+        skippedBodies.put(open, body);
+        pending.add(last);
+        return last;
+    }
+    
+    /**
+     * @return {@code true} if a statement may start behind the given token
+     */
+    private boolean isStatementStart(Token token) {
+        return (ParserConstants.SEMICOLON == token.kind) || (ParserConstants.LBRACE == token.kind) || 
+               (ParserConstants.RBRACE == token.kind);
+    }
+    
+    /**
+     * Keeps track of the braces and of the header of a method or class declaration on the top level of the script.
+     */
+    private void track(Token token) {
+        if(ParserConstants.FORMAL_COMMENT == token.kind)
+            return;
+        
+        if(ParserConstants.LBRACE == token.kind) {
+            depth++;
+        } else if((ParserConstants.RBRACE == token.kind) && (depth > 0)) {
+            depth--;
+        } else if(0 == depth) {
+            trackHeader(token);
+        }
+        
+        if(0 != depth) {
+            methodHeader = false;
+            classHeader = false;
+        }
+        beforePrevious = previous;
+        previous = token;
+    }
+    
+    private void trackHeader(Token token) {
+        switch(token.kind) {
+            case ParserConstants.LPAREN:
+                if(0 == parenDepth++)
+                    nameInFront = (null != previous) && (ParserConstants.IDENTIFIER == previous.kind) && 
+                                  ((null == beforePrevious) || ((ParserConstants.DOT != beforePrevious.kind) && 
+                                                                (ParserConstants.NEW != beforePrevious.kind)));
+                methodHeader = false;
+                return;
+            case ParserConstants.RPAREN:
+                if((parenDepth > 0) && (0 == --parenDepth))
+                    methodHeader = nameInFront;
+                return;
+            case ParserConstants.CLASS:
+            case ParserConstants.INTERFACE:
+                classHeader = (0 == parenDepth) && ((null == previous) || (ParserConstants.DOT != previous.kind));
+                methodHeader = false;
+                return;
+            case ParserConstants.IDENTIFIER:                              // names of a throws or an extends clause
+            case ParserConstants.DOT:
+            case ParserConstants.COMMA:
+            case ParserConstants.THROWS:
+            case ParserConstants.EXTENDS:
+            case ParserConstants.IMPLEMENTS:
+                return;
+            default:
+                methodHeader = false;
+                classHeader = false;
+        }
+    }
+    
+    /**
+     * A body whose tokens have not been passed to the parser.
+     */
+    static final class SkippedBody {
+        
+        Token close;
+        boolean returnsValue;
+        boolean returnsThis;
+        
+    }
+    
+}
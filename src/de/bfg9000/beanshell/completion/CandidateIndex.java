@@ -0,0 +1,360 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshVariableInfo;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Matches the candidates of a code completion against the text in front of the caret. The candidates are sorted by 
+ * their lower case names, so the candidates that start with the text are found by a binary search. Further 
+ * candidates are matched by their camel case humps ({@code fNa} matches {@code fileName}) and - for longer texts - by
+ * a prefix that differs in a single character (two characters for texts of {@value #LONG_FILTER} or more).
+ * 
+ * <p>The matches come out ranked: first the prefix matches, then the camel case matches, then the fuzzy ones - each 
+ * rank sorted by name. Matches can be refined when the text grows: only the previous matches are checked again.</p>
+ * 
+ * @author Thomas Werner
+ */
+final class CandidateIndex {
+    
+    static final int PREFIX = 0;
+    static final int CAMEL_CASE = 1;
+    static final int FUZZY = 2;
+    private static final int NO_MATCH = -1;
+    
+    private static final int SHORT_FILTER = 3;
+    private static final int LONG_FILTER = 7;
+    
+    private static final Comparator<BshVariableInfo> NAME_ORDER = new Comparator<BshVariableInfo>() {
+        @Override
+        public int compare(BshVariableInfo o1, BshVariableInfo o2) {
+            final int result = o1.getName().compareToIgnoreCase(o2.getName());
+            return (0 != result) ? result : o1.getName().compareTo(o2.getName());
+        }
+    };
+    
+    private final BshVariableInfo[] candidates;
+    private final char[][] lowerNames;
+    private final int[][] humps;
+    private final int maxLength;
+    
+    /**
+     * @param variables the candidates - in any order
+     */
+    CandidateIndex(List<BshVariableInfo> variables) {
+        candidates = variables.toArray(new BshVariableInfo[variables.size()]);
+        Arrays.sort(candidates, NAME_ORDER);
+        lowerNames = new char[candidates.length][];
+        humps = new int[candidates.length][];
+        int max = 0;
+        for(int i=0; i<candidates.length; i++) {
+            final String name = candidates[i].getName();
+            lowerNames[i] = name.toLowerCase().toCharArray();
+            humps[i] = findHumps(name);
+            max = Math.max(max, lowerNames[i].length);
+        }
+        maxLength = max;
+    }
+    
+    int size() {
+        return candidates.length;
+    }
+    
+    BshVariableInfo get(int position) {
+        return candidates[position];
+    }
+    
+    /**
+     * @param filter the text in front of the caret
+     * @return the ranked matches
+     */
+    Matches find(String filter) {
+        final Matches result = new Matches(filter, candidates.length);
+        if(filter.isEmpty()) {
+            for(int i=0; i<candidates.length; i++)
+                result.add(i, PREFIX);
+            return result;
+        }
+        
+        final Matcher matcher = new Matcher(filter);
+        final int prefixBegin = lowerBound(matcher.lowerFilter, matcher.lowerFilter.length);
+        final int prefixEnd = upperBound(matcher.lowerFilter, matcher.lowerFilter.length);
+        for(int i=prefixBegin; i<prefixEnd; i++)
+            result.add(i, PREFIX);
+        
+        // Camel case matches begin with the first character of the filter
+        if(matcher.camelCase) {
+            final int end = upperBound(matcher.lowerFilter, 1);
+            for(int i=lowerBound(matcher.lowerFilter, 1); i<end; i++)
+                if(((i < prefixBegin) || (i >= prefixEnd)) && matcher.matchesHumps(i))
+                    result.add(i, CAMEL_CASE);
+        }
+        
+        if(matcher.maxDistance > 0)
+            for(int i=0; i<candidates.length; i++)
+                if(((i < prefixBegin) || (i >= prefixEnd)) && !(matcher.camelCase && matcher.matchesHumps(i)) && 
+                   matcher.matchesFuzzy(i))
+                    result.add(i, FUZZY);
+        return result;
+    }
+    
+    /**
+     * Matches the given filter against the previous matches - if the filter extends the previous filter. Otherwise all
+     * candidates are matched.
+     * 
+     * @param previous the matches of a previous filter
+     * @param filter the text in front of the caret
+     * @return the ranked matches
+     */
+    Matches refine(Matches previous, String filter) {
+        final Matcher matcher = new Matcher(filter);
+        if(!filter.startsWith(previous.filter) || (matcher.maxDistance != getMaxDistance(previous.filter.length())))
+            return find(filter);
+        
+        final int[] ranks = new int[previous.size];
+        for(int i=0; i<previous.size; i++)
+            ranks[i] = matcher.rank(previous.positions[i]);
+        
+        final Matches result = new Matches(filter, previous.size);
+        for(int rank=PREFIX; rank<=FUZZY; rank++)
+            for(int i=0; i<previous.size; i++)
+                if(rank == ranks[i])
+                    result.add(previous.positions[i], rank);
+        return result;
+    }
+    
+    /**
+     * @return the first candidate whose name is not less than the first characters of the given filter
+     */
+    private int lowerBound(char[] filter, int length) {
+        int low = 0;
+        int high = candidates.length;
+        while(low < high) {
+            final int middle = (low +high) >>> 1;
+            if(compare(lowerNames[middle], filter, length) < 0)
+                low = middle +1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+    
+    /**
+     * @return the first candidate whose name is greater than the first characters of the given filter and does not 
+     *         start with them
+     */
+    private int upperBound(char[] filter, int length) {
+        int low = 0;
+        int high = candidates.length;
+        while(low < high) {
+            final int middle = (low +high) >>> 1;
+            if(compare(lowerNames[middle], filter, length) <= 0)
+                low = middle +1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+    
+    /**
+     * Compares a name with the first characters of a filter - a name that starts with those characters is equal.
+     */
+    private static int compare(char[] name, char[] filter, int length) {
+        final int common = Math.min(name.length, length);
+        for(int i=0; i<common; i++)
+            if(name[i] != filter[i])
+                return name[i] -filter[i];
+        return (name.length >= length) ? 0 : -1;
+    }
+    
+    /**
+     * A hump begins at the first character, at each upper case character, behind an underscore and at the first 
+     * digit of a number.
+     */
+    private static int[] findHumps(String name) {
+        int count = 0;
+        for(int i=0; i<name.length(); i++)
+            if(isHump(name, i))
+                count++;
+        
+        final int[] result = new int[count];
+        count = 0;
+        for(int i=0; i<name.length(); i++)
+            if(isHump(name, i))
+                result[count++] = i;
+        return result;
+    }
+    
+    private static boolean isHump(String name, int index) {
+        if(0 == index)
+            return true;
+        
+        final char c = name.charAt(index);
+        final char previous = name.charAt(index -1);
+        return ('_' != c) && (Character.isUpperCase(c) || ('_' == previous) || 
+                              (Character.isDigit(c) && !Character.isDigit(previous)));
+    }
+    
+    private static int getMaxDistance(int filterLength) {
+        return (filterLength >= LONG_FILTER) ? 2 : ((filterLength >= SHORT_FILTER) ? 1 : 0);
+    }
+    
+    /**
+     * The matching of a single filter. The buffers of the fuzzy matching are allocated once per filter.
+     */
+    private final class Matcher {
+        
+        private final char[] lowerFilter;
+        private final int[] hump;
+        private final int maxDistance;
+        private final boolean camelCase;
+        private int[] previousRow;
+        private int[] currentRow;
+        
+        Matcher(String filter) {
+            lowerFilter = filter.toLowerCase().toCharArray();
+            hump = findHumps(filter);
+            maxDistance = getMaxDistance(lowerFilter.length);
+            camelCase = hump.length > 1;
+        }
+        
+        int rank(int position) {
+            if(0 == compare(lowerNames[position], lowerFilter, lowerFilter.length))
+                return PREFIX;
+            if(camelCase && matchesHumps(position))
+                return CAMEL_CASE;
+            if((maxDistance > 0) && matchesFuzzy(position))
+                return FUZZY;
+            return NO_MATCH;
+        }
+        
+        /**
+         * Each hump of the filter has to match the beginning of a hump of the name, in order. Humps of the name may be
+         * skipped.
+         */
+        boolean matchesHumps(int position) {
+            final char[] name = lowerNames[position];
+            final int[] nameHumps = humps[position];
+            int next = 0;
+            for(int h=0; h<hump.length; h++) {
+                final int begin = hump[h];
+                final int end = (h +1 < hump.length) ? hump[h +1] : lowerFilter.length;
+                while((next < nameHumps.length) && !regionMatches(name, nameHumps[next], begin, end))
+                    next++;
+                if((next >= nameHumps.length) || ((0 == h) && (0 != next)))
+                    return false;
+                
+                final int consumed = nameHumps[next] +end -begin;
+                while((next < nameHumps.length) && (nameHumps[next] < consumed))
+                    next++;
+            }
+            return true;
+        }
+        
+        private boolean regionMatches(char[] name, int offset, int begin, int end) {
+            if(offset +end -begin > name.length)
+                return false;
+            for(int i=begin; i<end; i++)
+                if(name[offset +i -begin] != lowerFilter[i])
+                    return false;
+            return true;
+        }
+        
+        /**
+         * The edit distance between the filter and the closest prefix of the name must not exceed the maximum 
+         * distance. The rows of the distance matrix are computed until all values exceed the maximum.
+         */
+        boolean matchesFuzzy(int position) {
+            final char[] name = lowerNames[position];
+            if(null == previousRow) {
+                previousRow = new int[maxLength +1];
+                currentRow = new int[maxLength +1];
+            }
+            
+            for(int j=0; j<=name.length; j++)
+                previousRow[j] = j;
+            for(int i=1; i<=lowerFilter.length; i++) {
+                currentRow[0] = i;
+                int rowMinimum = i;
+                for(int j=1; j<=name.length; j++) {
+                    final int substitution = previousRow[j -1] +((lowerFilter[i -1] == name[j -1]) ? 0 : 1);
+                    currentRow[j] = Math.min(substitution, Math.min(previousRow[j], currentRow[j -1]) +1);
+                    rowMinimum = Math.min(rowMinimum, currentRow[j]);
+                }
+                if(rowMinimum > maxDistance)
+                    return false;
+                
+                final int[] swap = previousRow;
+                previousRow = currentRow;
+                currentRow = swap;
+            }
+            
+            for(int j=0; j<=name.length; j++)
+                if(previousRow[j] <= maxDistance)
+                    return true;
+            return false;
+        }
+        
+    }
+    
+    /**
+     * The positions of the matching candidates, together with their ranks.
+     */
+    static final class Matches {
+        
+        private final String filter;
+        private final int[] positions;
+        private final int[] ranks;
+        private int size;
+        
+        Matches(String filter, int capacity) {
+            this.filter = filter;
+            positions = new int[capacity];
+            ranks = new int[capacity];
+        }
+        
+        private void add(int position, int rank) {
+            positions[size] = position;
+            ranks[size] = rank;
+            size++;
+        }
+        
+        String getFilter() {
+            return filter;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        /**
+         * @param index the index of a match
+         * @return the position of the candidate within the index
+         */
+        int getPosition(int index) {
+            return positions[index];
+        }
+        
+        int getRank(int index) {
+            return ranks[index];
+        }
+        
+    }
+    
+}
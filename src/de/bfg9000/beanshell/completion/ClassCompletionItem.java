@@ -0,0 +1,131 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.StyledDocument;
+import org.netbeans.api.editor.completion.Completion;
+import org.netbeans.spi.editor.completion.CompletionItem;
+import org.netbeans.spi.editor.completion.CompletionTask;
+import org.netbeans.spi.editor.completion.support.CompletionUtilities;
+
+/**
+ * A class or a package. Classes are shown in front of packages.
+ *
+ * @author Thomas Werner
+ */
+class ClassCompletionItem implements CompletionItem {
+
+    private static final Color classColor = Color.decode("0x000000");
+    private static final ImageIcon classIcon = loadIcon("/de/bfg9000/beanshell/icons/class.png");
+    
+    private final String name;
+    private final String text;
+    private final String packageName;
+    private final boolean clazz;
+    private final int caretOffset;
+    private final int dotOffset;
+
+    /**
+     * @param name the simple name of the class or the last segment of the package
+     * @param text the text that replaces the text between dot and caret
+     * @param packageName the package of the class - or {@code null}
+     * @param clazz {@code true} for a class, {@code false} for a package
+     * @param dotOffset the begin of the text that is replaced
+     * @param caretOffset the end of the text that is replaced
+     */
+    public ClassCompletionItem(String name, String text, String packageName, boolean clazz, int dotOffset, 
+                               int caretOffset) {
+        this.name = name;
+        this.text = text;
+        this.packageName = packageName;
+        this.clazz = clazz;
+        this.dotOffset = dotOffset;
+        this.caretOffset = caretOffset;
+    }
+    
+    private static ImageIcon loadIcon(String path) {
+        Image image = null;
+        try {
+            image = ImageIO.read(ClassCompletionItem.class.getResource(path));
+        } catch (IOException ex) { }
+        return (null == image) ? null : new ImageIcon(image);
+    }
+    
+    @Override
+    public void defaultAction(JTextComponent component) { 
+        try {
+            final StyledDocument doc = (StyledDocument) component.getDocument();
+            doc.remove(dotOffset, caretOffset-dotOffset);
+            doc.insertString(dotOffset, text, null);            
+            Completion.get().hideAll();
+        } catch(Exception ex) { }
+    }
+
+    @Override
+    public void processKeyEvent(KeyEvent evt) { }
+
+    @Override
+    public int getPreferredWidth(Graphics g, Font defaultFont) {
+        return CompletionUtilities.getPreferredWidth(name, packageName, g, defaultFont);
+    }
+
+    @Override
+    public void render(Graphics g, Font defaultFont, Color defaultColor, Color backgroundColor, int width, int height, 
+                       boolean selected) {
+        CompletionUtilities.renderHtml(clazz ? classIcon : null, clazz ? name : "<b>" +name +"</b>", packageName, g, 
+                                       defaultFont, (selected ? Color.white : classColor), width, height, selected);
+    }
+
+    @Override
+    public CompletionTask createDocumentationTask() {
+        return null;
+    }
+
+    @Override
+    public CompletionTask createToolTipTask() {
+        return null;
+    }
+
+    @Override
+    public boolean instantSubstitution(JTextComponent component) {
+        return false;
+    }
+
+    @Override
+    public int getSortPriority() {
+        return clazz ? 10 : 20;
+    }
+
+    @Override
+    public CharSequence getSortText() {
+        return name;
+    }
+
+    @Override
+    public CharSequence getInsertPrefix() {
+        return text;
+    }
+    
+}
@@ -15,8 +15,10 @@
  */
 package de.bfg9000.beanshell.completion;
 
-import bsh.BshParserConnector;
+import bsh.BshCancellation;
 import bsh.BshScriptInfo;
+import de.bfg9000.beanshell.instrumentation.Probe;
+import de.bfg9000.beanshell.parser.ParseService;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
@@ -24,6 +26,7 @@ import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
 import javax.swing.text.StyledDocument;
 import org.netbeans.spi.editor.completion.CompletionResultSet;
 import org.netbeans.spi.editor.completion.support.AsyncCompletionQuery;
@@ -32,21 +35,38 @@ import org.netbeans.spi.editor.completion.support.AsyncCompletionQuery;
  * Performs various preparation tasks and then calls the {@code CompletionQueryItemProvider}s to get the available code 
  * completion items for the current script.
  * 
+ * <p>While the popup is open, the items are filtered in place as long as the caret stays within the identifier that 
+ * has been completed - the script is not parsed again.</p>
+ * 
  * @author Thomas Werner
  */
 class CompletionQuery extends AsyncCompletionQuery {
     
     private static final Logger logger = Logger.getLogger(CompletionQuery.class.getName());
     
+    /** The parse of a large script is stopped after this time - the items are taken from the partial result */
+    private static final long PARSE_TIMEOUT = 1000;
+    
     private final List<CompletionQueryItemProvider> itemProviders;
     
+    // The state of the last query - written by the query, read by the filtering in the event dispatch thread
+    private volatile Document queryDocument;
+    private volatile int queryStartOffset;
+    private volatile String queryFilter;
+    private String filterText;
+    private int filterCaretOffset;
+    
     public CompletionQuery() {
         itemProviders = new LinkedList<CompletionQueryItemProvider>();
         itemProviders.add(new VariableItemProvider());
+        itemProviders.add(new PackageItemProvider());
+        itemProviders.add(new MemberItemProvider());
     }
     
     @Override
     protected void query(CompletionResultSet resultSet, Document doc, int caretOffset) {
+        final long start = Probe.start();
+        queryDocument = null;
         String filter = null;
         int startOffset = caretOffset - 1;
         int lineNumber = 0;
@@ -65,19 +85,81 @@ class CompletionQuery extends AsyncCompletionQuery {
         }
 
         try {
-            // Remove current line from script as it's almost always an incorrect statement, yet. This its kind of a 
-            // hack and doesn't work in all situations - but still better than nothing
-            final String script = removeLine(doc.getText(0, doc.getLength()), lineNumber -1);
-            final BshScriptInfo scriptInfo = new BshParserConnector().parse(script);
-            for(CompletionQueryItemProvider provider: itemProviders)
-                resultSet.addAllItems(provider.getItems(scriptInfo, startOffset, caretOffset, filter, lineNumber, 
-                                      colNumber));
+            // The current line is almost always an incorrect statement, yet. It is left out of the parse, so it does
+            // not hide the surrounding declarations. The parse stops as soon as the query is cancelled (the user keeps
+            // typing or closes the popup).
+            final BshCancellation cancellation = new BshCancellation() {
+                @Override
+                public boolean isCancelled() {
+                    return isTaskCancelled();
+                }
+            };
+            final BshScriptInfo scriptInfo = ParseService.getDefault().getCompletionInfo(doc, lineNumber, 
+                                                                             cancellation.withDeadline(PARSE_TIMEOUT));
+            if(!isTaskCancelled()) {
+                for(CompletionQueryItemProvider provider: itemProviders)
+                    resultSet.addAllItems(provider.getItems(scriptInfo, startOffset, caretOffset, filter, lineNumber, 
+                                          colNumber));
+                queryStartOffset = startOffset;
+                queryFilter = filter;
+                queryDocument = doc;
+            }
         } catch(Exception ex) {
         } finally {
             resultSet.finish();
+            Probe.COMPLETION.record(start);
+        }
+    }
+
+    /**
+     * The items can be filtered if the text between the begin of the completed identifier and the caret is still an 
+     * identifier - or a qualified name with the same qualifier as the query. A new qualifier (a dot has been typed or
+     * removed) needs other items, e.g. the members of a class that are read from its class file: a new query is run in
+     * the background then, so the event dispatch thread does no I/O.
+     */
+    @Override
+    protected boolean canFilter(JTextComponent component) {
+        final Document doc = queryDocument;
+        final int startOffset = queryStartOffset;
+        final int caretOffset = component.getCaretPosition();
+        if((null == doc) || (doc != component.getDocument()) || (caretOffset < startOffset))
+            return false;
+        
+        try {
+            final String text = doc.getText(startOffset, caretOffset -startOffset);
+            for(int i=0; i<text.length(); i++)
+                if(!Character.isJavaIdentifierPart(text.charAt(i)) && ('.' != text.charAt(i)))
+                    return false;
+            if(!getQualifier(text).equals(getQualifier(queryFilter)))
+                return false;
+            
+            filterText = text;
+            filterCaretOffset = caretOffset;
+            return true;
+        } catch(BadLocationException ex) {
+            return false;
+        }
+    }
+    
+    @Override
+    protected void filter(CompletionResultSet resultSet) {
+        final long start = Probe.start();
+        try {
+            for(CompletionQueryItemProvider provider: itemProviders)
+                resultSet.addAllItems(provider.filterItems(filterText, queryStartOffset, filterCaretOffset));
+        } finally {
+            resultSet.finish();
+            Probe.COMPLETION.record(start);
         }
     }
 
+    /**
+     * @return the part of the name up to and including the last dot - the empty string for a simple name
+     */
+    static String getQualifier(String name) {
+        return (null == name) ? "" : name.substring(0, name.lastIndexOf('.') +1);
+    }
+
     private int getRowFirstNonWhite(StyledDocument doc, int offset) throws BadLocationException {
         Element lineElement = doc.getParagraphElement(offset);
         int start = lineElement.getStartOffset();
@@ -105,13 +187,5 @@ class CompletionQuery extends AsyncCompletionQuery {
         }
         return -1;
     }
-
-    private String removeLine(String input, int lineToRemove) {
-        final String lines[] = input.split("\\r?\\n");
-        final StringBuilder result = new StringBuilder();
-        for(int i=0; i<lines.length; i++)
-            result.append(i != lineToRemove ? lines[i] : "").append("\n");
-        return result.toString();
-    }
     
 }
@@ -29,4 +29,15 @@ interface CompletionQueryItemProvider {
     public List<? extends CompletionItem> getItems(BshScriptInfo scriptInfo, int startOffset, int caretOffset, 
                                           String filter, int line, int column);    
     
+    /**
+     * Narrows the items of the last call of {@link #getItems} down to a new filter, without looking at the script 
+     * again. Usually the new filter extends the filter of the last call.
+     * 
+     * @param filter the text between the begin of the completed identifier and the caret
+     * @param startOffset the begin of the completed identifier
+     * @param caretOffset the position of the caret
+     * @return the items that match the new filter
+     */
+    public List<? extends CompletionItem> filterItems(String filter, int startOffset, int caretOffset);
+    
 }
@@ -0,0 +1,133 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import de.bfg9000.beanshell.index.ClassFile;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.StyledDocument;
+import org.netbeans.api.editor.completion.Completion;
+import org.netbeans.spi.editor.completion.CompletionItem;
+import org.netbeans.spi.editor.completion.CompletionTask;
+import org.netbeans.spi.editor.completion.support.CompletionUtilities;
+
+/**
+ * A public method or field of a class.
+ *
+ * @author Thomas Werner
+ */
+class MemberCompletionItem implements CompletionItem {
+
+    private static final Color memberColor = Color.decode("0x0000B2");
+    private static final String PRFX = "/de/bfg9000/beanshell/icons/";
+    private static final ImageIcon methodIcon = loadIcon(PRFX +"methodPublic.png");
+    private static final ImageIcon staticMethodIcon = loadIcon(PRFX +"methodStPublic.png");
+    private static final ImageIcon fieldIcon = loadIcon(PRFX +"variablePublic.png");
+    private static final ImageIcon staticFieldIcon = loadIcon(PRFX +"variableStPublic.png");
+    
+    private final ClassFile.Member member;
+    private final String memberString;
+    private final String text;
+    private final int caretOffset;
+    private final int dotOffset;
+
+    /**
+     * @param member the member
+     * @param text the text that replaces the text between dot and caret
+     * @param dotOffset the begin of the text that is replaced
+     * @param caretOffset the end of the text that is replaced
+     */
+    public MemberCompletionItem(ClassFile.Member member, String text, int dotOffset, int caretOffset) {
+        this.member = member;
+        this.text = text;
+        this.dotOffset = dotOffset;
+        this.caretOffset = caretOffset;
+        memberString = member.toString();
+    }
+    
+    private static ImageIcon loadIcon(String path) {
+        Image image = null;
+        try {
+            image = ImageIO.read(MemberCompletionItem.class.getResource(path));
+        } catch (IOException ex) { }
+        return (null == image) ? null : new ImageIcon(image);
+    }
+    
+    @Override
+    public void defaultAction(JTextComponent component) { 
+        try {
+            final StyledDocument doc = (StyledDocument) component.getDocument();
+            doc.remove(dotOffset, caretOffset-dotOffset);
+            doc.insertString(dotOffset, text, null);            
+            Completion.get().hideAll();
+        } catch(Exception ex) { }
+    }
+
+    @Override
+    public void processKeyEvent(KeyEvent evt) { }
+
+    @Override
+    public int getPreferredWidth(Graphics g, Font defaultFont) {
+        return CompletionUtilities.getPreferredWidth(memberString, null, g, defaultFont);
+    }
+
+    @Override
+    public void render(Graphics g, Font defaultFont, Color defaultColor, Color backgroundColor, int width, int height, 
+                       boolean selected) {
+        final ImageIcon icon = member.isMethod() ? (member.isStatic() ? staticMethodIcon : methodIcon) 
+                                                 : (member.isStatic() ? staticFieldIcon : fieldIcon);
+        CompletionUtilities.renderHtml(icon, memberString, null, g, defaultFont,
+                                       (selected ? Color.white : memberColor), width, height, selected);
+    }
+
+    @Override
+    public CompletionTask createDocumentationTask() {
+        return null;
+    }
+
+    @Override
+    public CompletionTask createToolTipTask() {
+        return null;
+    }
+
+    @Override
+    public boolean instantSubstitution(JTextComponent component) {
+        return false;
+    }
+
+    @Override
+    public int getSortPriority() {
+        return member.isMethod() ? 6 : 5;
+    }
+
+    @Override
+    public CharSequence getSortText() {
+        return member.getName();
+    }
+
+    @Override
+    public CharSequence getInsertPrefix() {
+        return text;
+    }
+    
+}
@@ -0,0 +1,152 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshImportInfo;
+import bsh.BshModifierInfo;
+import bsh.BshScriptInfo;
+import bsh.BshVariableInfo;
+import de.bfg9000.beanshell.index.ClassFile;
+import de.bfg9000.beanshell.index.ClassFileCache;
+import de.bfg9000.beanshell.index.ClassPathIndex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.netbeans.spi.editor.completion.CompletionItem;
+
+/**
+ * Provides {@code CompletionItem}s for the members of a class after a dot:
+ * <ul>
+ * <li>{@code list.a} shows the public methods and fields of the declared type of the variable {@code list} that start
+ * with {@code a}</li>
+ * <li>{@code Math.a} shows the public static methods and fields of the class {@code Math}</li>
+ * </ul>
+ * Types are resolved against the imports of the script (including the default imports of BeanShell). The members are
+ * read from the class files (see {@link ClassFileCache}) - the classes are not loaded. Filtering the items of the last
+ * query reuses its members, it does not read any class file.
+ * 
+ * @author Thomas Werner
+ */
+class MemberItemProvider implements CompletionQueryItemProvider {
+
+    private final ClassPathIndex index;
+    private final ClassFileCache cache;
+    private BshScriptInfo scriptInfo;
+    private int line;
+    private int column;
+    private String receiver;
+    private List<ClassFile.Member> members = Collections.emptyList();
+    
+    public MemberItemProvider() {
+        this(ClassPathIndex.getDefault(), ClassFileCache.getDefault());
+    }
+    
+    MemberItemProvider(ClassPathIndex index, ClassFileCache cache) {
+        this.index = index;
+        this.cache = cache;
+    }
+
+    @Override
+    public synchronized List<? extends CompletionItem> getItems(BshScriptInfo scriptInfo, int startOffset, 
+                                                                int caretOffset, String filter, int line, int column) {
+        this.scriptInfo = scriptInfo;
+        this.line = line;
+        this.column = column;
+        lookupMembers(filter);
+        return createItems(filter, startOffset, caretOffset);
+    }
+    
+    @Override
+    public synchronized List<? extends CompletionItem> filterItems(String filter, int startOffset, int caretOffset) {
+        return createItems(filter, startOffset, caretOffset);
+    }
+    
+    private void lookupMembers(String filter) {
+        receiver = null;
+        members = new ArrayList<ClassFile.Member>();
+        final int dot = filter.lastIndexOf('.');
+        if(dot <= 0)
+            return;
+        
+        receiver = filter.substring(0, dot);
+        final BshVariableInfo variable = findVariable(receiver);
+        final String className = resolve((null != variable) ? variable.getType() : receiver);
+        if(null == className)
+            return;
+        
+        for(ClassFile.Member member: cache.getMembers(className))
+            if((null != variable) || member.isStatic())
+                members.add(member);
+    }
+    
+    /**
+     * @return the items of the members of the last query that match the filter - no items if the filter has another 
+     *         receiver
+     */
+    private List<MemberCompletionItem> createItems(String filter, int startOffset, int caretOffset) {
+        final List<MemberCompletionItem> result = new ArrayList<MemberCompletionItem>();
+        final int dot = filter.lastIndexOf('.');
+        if((dot <= 0) || !filter.substring(0, dot).equals(receiver))
+            return result;
+        
+        final String prefix = filter.substring(dot +1);
+        for(ClassFile.Member member: members)
+            if(member.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+                result.add(new MemberCompletionItem(member, receiver +'.' +member.getName(), startOffset, 
+                                                    caretOffset));
+        return result;
+    }
+    
+    private BshVariableInfo findVariable(String name) {
+        for(BshVariableInfo variable: ScopeIndex.forScript(scriptInfo).getVisibleVariables(line, column))
+            if(variable.getName().equals(name))
+                return variable;
+        return null;
+    }
+    
+    /**
+     * Resolves a type like the compiler does: a qualified name as it is, a simple name by the imports of single 
+     * classes first and by the imported packages afterwards.
+     * 
+     * @param type the declared type of a variable or the name of a class
+     * @return the fully qualified name of the class - or {@code null} if the type can not be resolved
+     */
+    String resolve(String type) {
+        final int generics = type.indexOf('<');
+        final String name = ((generics < 0) ? type : type.substring(0, generics)).trim();
+        if(name.isEmpty() || name.endsWith("]"))
+            return null;
+        if(name.indexOf('.') >= 0)
+            return index.contains(name) ? name : null;
+        
+        final List<BshImportInfo> imports = scriptInfo.getImports();
+        for(BshImportInfo importInfo: imports)
+            if(isTypeImport(importInfo, false) && importInfo.getName().endsWith('.' +name))
+                return importInfo.getName();
+        for(BshImportInfo importInfo: imports)
+            if(isTypeImport(importInfo, true) && index.contains(importInfo.getName() +'.' +name))
+                return importInfo.getName() +'.' +name;
+        return null;
+    }
+    
+    private static boolean isTypeImport(BshImportInfo importInfo, boolean packageImport) {
+        final Set<BshModifierInfo> modifiers = importInfo.getModifiers();
+        return !modifiers.contains(BshModifierInfo.Static) && !modifiers.contains(BshModifierInfo.Super) && 
+               (packageImport == modifiers.contains(BshModifierInfo.Package));
+    }
+    
+}
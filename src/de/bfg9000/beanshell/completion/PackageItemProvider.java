@@ -15,30 +15,100 @@
  */
 package de.bfg9000.beanshell.completion;
 
+import bsh.BshImportInfo;
+import bsh.BshModifierInfo;
 import bsh.BshScriptInfo;
-import java.util.LinkedList;
+import de.bfg9000.beanshell.index.ClassPathIndex;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import org.netbeans.spi.editor.completion.CompletionItem;
 
 /**
- * Provides {@code CompletionItem}s for packages / fully qualified class names.
+ * Provides {@code CompletionItem}s for packages / fully qualified class names. The names are looked up in the 
+ * {@link ClassPathIndex}:
+ * <ul>
+ * <li>{@code j} shows the top-level packages {@code java}, {@code javax}, ... and the classes of the imported packages
+ * (including the default imports of BeanShell) that start with {@code j}</li>
+ * <li>{@code java.u} shows the classes of the package {@code java} that start with {@code u}, followed by the nested
+ * packages {@code java.util}, ...</li>
+ * </ul>
  * 
  * @author Thomas Werner
  */
 public class PackageItemProvider implements CompletionQueryItemProvider {
 
+    private final ClassPathIndex index;
+    private List<BshImportInfo> imports = Collections.emptyList();
+    
+    public PackageItemProvider() {
+        this(ClassPathIndex.getDefault());
+    }
+    
+    PackageItemProvider(ClassPathIndex index) {
+        this.index = index;
+    }
+
     @Override
-    public List<? extends CompletionItem> getItems(BshScriptInfo scriptInfo, int startOffset, int caretOffset, 
-                                          String filter, int line, int column) {
-        final List<CompletionItem> result = new LinkedList<CompletionItem>();
-        if(!filter.isEmpty()) {
-            
-            
+    public synchronized List<? extends CompletionItem> getItems(BshScriptInfo scriptInfo, int startOffset, 
+                                                                int caretOffset, String filter, int line, int column) {
+        imports = scriptInfo.getImports();
+        return createItems(filter, startOffset, caretOffset);
+    }
+    
+    @Override
+    public synchronized List<? extends CompletionItem> filterItems(String filter, int startOffset, int caretOffset) {
+        return createItems(filter, startOffset, caretOffset);
+    }
+    
+    private List<ClassCompletionItem> createItems(String filter, int startOffset, int caretOffset) {
+        final List<ClassCompletionItem> result = new ArrayList<ClassCompletionItem>();
+        if(filter.isEmpty())
+            return result;
+        
+        final SortedSet<String> packages = new TreeSet<String>();
+        final SortedSet<String> classes = new TreeSet<String>();
+        final int dot = filter.lastIndexOf('.');
+        if(dot >= 0) {
+            final String packageName = filter.substring(0, dot);
+            index.find(packageName, filter.substring(dot +1), packages, classes);
+            for(String name: classes)
+                result.add(new ClassCompletionItem(name, packageName +'.' +name, packageName, true, startOffset, 
+                                                   caretOffset));
+            for(String name: packages)
+                result.add(new ClassCompletionItem(name, packageName +'.' +name, null, false, startOffset, 
+                                                   caretOffset));
+            return result;
+        }
+        
+        final Set<String> ignored = new TreeSet<String>();
+        index.find("", filter, packages, ignored);
+        for(BshImportInfo importInfo: imports) {
+            final Set<BshModifierInfo> modifiers = importInfo.getModifiers();
+            if(modifiers.contains(BshModifierInfo.Static) || modifiers.contains(BshModifierInfo.Super))
+                continue;
             
-            // - tries to find packages that start with the given filter
-            // - only the root package will be shown - j shows java - not java.io....
-            // - if a package contains classes then these classes will be shown before nested packages
+            final String name = importInfo.getName();
+            if(modifiers.contains(BshModifierInfo.Package)) {
+                final SortedSet<String> imported = new TreeSet<String>();
+                index.find(name, filter, ignored, imported);
+                for(String className: imported)
+                    if(classes.add(className))
+                        result.add(new ClassCompletionItem(className, className, name, true, startOffset, 
+                                                           caretOffset));
+            } else {
+                final String className = name.substring(name.lastIndexOf('.') +1);
+                if(className.startsWith(filter) && classes.add(className))
+                    result.add(new ClassCompletionItem(className, className, 
+                                                       name.substring(0, Math.max(0, name.lastIndexOf('.'))), true, 
+                                                       startOffset, caretOffset));
+            }
         }
+        for(String name: packages)
+            result.add(new ClassCompletionItem(name, name, null, false, startOffset, caretOffset));
         return result;
     }
     
@@ -0,0 +1,192 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshInfoContainer;
+import bsh.BshMethodInfo;
+import bsh.BshScriptInfo;
+import bsh.BshVariableInfo;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds the variables that are visible at a position of a script. The containers of a script (methods and classes) 
+ * span nested regions: the children of a container are sorted by their begin, so the innermost container at a 
+ * position is found by a binary search on each level. The variables that are visible within a container are gathered
+ * when they are requested for the first time - the declarations of inner containers hide the outer ones.
+ * 
+ * <p>The index of the last parse result is kept, so the item providers of a completion query share it - the index of
+ * a previous parse result is dropped together with it. Method bodies that are gathered on demand are only gathered 
+ * for the containers along the path to the requested position.</p>
+ * 
+ * @author Thomas Werner
+ */
+final class ScopeIndex {
+    
+    private static ScopeIndex last;
+    private static final Scope[] NO_SCOPES = new Scope[0];
+    private static final CandidateIndex EMPTY_CANDIDATES = 
+            new CandidateIndex(Collections.<BshVariableInfo>emptyList());
+    
+    private final BshScriptInfo scriptInfo;
+    private final Scope root;
+    
+    private ScopeIndex(BshScriptInfo scriptInfo) {
+        this.scriptInfo = scriptInfo;
+        root = new Scope(scriptInfo, null);
+    }
+    
+    /**
+     * @param scriptInfo the result of a parse
+     * @return the index of the given parse result
+     */
+    static synchronized ScopeIndex forScript(BshScriptInfo scriptInfo) {
+        if((null == last) || (last.scriptInfo != scriptInfo))
+            last = new ScopeIndex(scriptInfo);
+        return last;
+    }
+    
+    /**
+     * @param line the line number (1-based)
+     * @param column the column number
+     * @return the variables that are visible at the given position, sorted by name
+     */
+    synchronized List<BshVariableInfo> getVisibleVariables(int line, int column) {
+        final Scope scope = findScope(line, column);
+        return (null == scope) ? Collections.<BshVariableInfo>emptyList() 
+                               : Collections.unmodifiableList(Arrays.asList(scope.getVisibleVariables()));
+    }
+    
+    /**
+     * @param line the line number (1-based)
+     * @param column the column number
+     * @return the completion candidates for the variables that are visible at the given position
+     */
+    synchronized CandidateIndex getCandidates(int line, int column) {
+        final Scope scope = findScope(line, column);
+        return (null == scope) ? EMPTY_CANDIDATES : scope.getCandidates();
+    }
+    
+    /**
+     * @return the innermost scope that contains the given position - or {@code null}
+     */
+    private Scope findScope(int line, int column) {
+        final long position = toPosition(line, column);
+        if(!root.contains(position))
+            return null;
+        
+        Scope scope = root;
+        for(Scope child = scope.findChild(position); null != child; child = scope.findChild(position))
+            scope = child;
+        return scope;
+    }
+    
+    /**
+     * @return a number that orders positions like the line and column numbers do
+     */
+    private static long toPosition(int line, int column) {
+        return ((long) line << 32) +column;
+    }
+    
+    /**
+     * A container together with its position in the tree of containers.
+     */
+    private static final class Scope {
+        
+        private static final Comparator<Scope> BEGIN_ORDER = new Comparator<Scope>() {
+            @Override
+            public int compare(Scope o1, Scope o2) {
+                return (o1.begin < o2.begin) ? -1 : ((o1.begin == o2.begin) ? 0 : 1);
+            }
+        };
+        
+        private final BshInfoContainer container;
+        private final Scope parent;
+        private final long begin;
+        private final long end;
+        private Scope[] children;
+        private BshVariableInfo[] visibleVariables;
+        private CandidateIndex candidates;
+        
+        Scope(BshInfoContainer container, Scope parent) {
+            this.container = container;
+            this.parent = parent;
+            begin = toPosition(container.getBeginLine(), container.getBeginColum());
+            end = toPosition(container.getEndLine(), container.getEndColum());
+        }
+        
+        boolean contains(long position) {
+            return (begin <= position) && (position <= end);
+        }
+        
+        /**
+         * @return the child that contains the given position - or {@code null}
+         */
+        Scope findChild(long position) {
+            final Scope[] scopes = getChildren();
+            int low = 0;
+            int high = scopes.length -1;
+            while(low <= high) {
+                final int middle = (low +high) >>> 1;
+                if(scopes[middle].begin <= position)
+                    low = middle +1;
+                else
+                    high = middle -1;
+            }
+            return ((high >= 0) && scopes[high].contains(position)) ? scopes[high] : null;
+        }
+        
+        private Scope[] getChildren() {
+            if(null == children) {
+                final List<BshMethodInfo> methods = container.getMethods();
+                if(methods.isEmpty()) {
+                    children = NO_SCOPES;
+                } else {
+                    children = new Scope[methods.size()];
+                    for(int i=0; i<children.length; i++)
+                        children[i] = new Scope(methods.get(i), this);
+                    Arrays.sort(children, BEGIN_ORDER);
+                }
+            }
+            return children;
+        }
+        
+        BshVariableInfo[] getVisibleVariables() {
+            if(null == visibleVariables) {
+                final Map<String, BshVariableInfo> byName = new TreeMap<String, BshVariableInfo>();
+                if(null != parent)
+                    for(BshVariableInfo variable: parent.getVisibleVariables())
+                        byName.put(variable.getName(), variable);
+                for(BshVariableInfo variable: container.getVariables())
+                    byName.put(variable.getName(), variable);
+                visibleVariables = byName.values().toArray(new BshVariableInfo[byName.size()]);
+            }
+            return visibleVariables;
+        }
+        
+        CandidateIndex getCandidates() {
+            if(null == candidates)
+                candidates = new CandidateIndex(Arrays.asList(getVisibleVariables()));
+            return candidates;
+        }
+        
+    }
+    
+}
@@ -22,6 +22,8 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.event.KeyEvent;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.text.JTextComponent;
@@ -39,21 +41,39 @@ class VariableCompletionItem implements CompletionItem {
 
     private static final Color fieldColor = Color.decode("0x0000B2");
     
+    private static final Map<String, ImageIcon> icons = new ConcurrentHashMap<String, ImageIcon>();
+    
     private final BshVariableInfo variable;
+    private final int rank;
     private final int caretOffset;
     private final int dotOffset;
     private final ImageIcon variableIcon;
 
-    public VariableCompletionItem(BshVariableInfo variable, int dotOffset, int caretOffset) {
+    /**
+     * @param variable the variable
+     * @param rank the rank of the match (see {@link CandidateIndex}) - better matches are shown first
+     * @param dotOffset the begin of the text that is replaced
+     * @param caretOffset the end of the text that is replaced
+     */
+    public VariableCompletionItem(BshVariableInfo variable, int rank, int dotOffset, int caretOffset) {
         this.variable = variable;
+        this.rank = rank;
         this.dotOffset = dotOffset;
         this.caretOffset = caretOffset;
-
-        Image image = null;
-        try {
-            image = ImageIO.read(getClass().getResource(variable.getIconPath()));
-        } catch (IOException ex) { }
-        variableIcon = new ImageIcon(image);
+        variableIcon = getIcon(variable.getIconPath());
+    }
+    
+    private static ImageIcon getIcon(String path) {
+        ImageIcon result = icons.get(path);
+        if(null == result) {
+            Image image = null;
+            try {
+                image = ImageIO.read(VariableCompletionItem.class.getResource(path));
+            } catch (IOException ex) { }
+            result = new ImageIcon(image);
+            icons.put(path, result);
+        }
+        return result;
     }
     
     @Override
@@ -98,7 +118,7 @@ class VariableCompletionItem implements CompletionItem {
 
     @Override
     public int getSortPriority() {
-        return 0;
+        return rank;
     }
 
     @Override
@@ -15,11 +15,10 @@
  */
 package de.bfg9000.beanshell.completion;
 
-import bsh.BshInfoContainer;
-import bsh.BshMethodInfo;
 import bsh.BshScriptInfo;
-import bsh.BshVariableInfo;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.netbeans.spi.editor.completion.CompletionItem;
 
 /**
@@ -29,41 +28,35 @@ import org.netbeans.spi.editor.completion.CompletionItem;
  */
 class VariableItemProvider implements CompletionQueryItemProvider {
 
+    private CandidateIndex candidates;
+    private CandidateIndex.Matches matches;
+    
     @Override
-    public List<? extends CompletionItem> getItems(BshScriptInfo scriptInfo, int startOffset, int caretOffset, 
-                                          String filter, int line, int column) {
-
-        final List<BshVariableInfo> varInfoList = new LinkedList<BshVariableInfo>();
-        handleInfoContainer(varInfoList, scriptInfo, line, column);
-        Collections.sort(varInfoList, new BshVariableInfo.Comparator());
-        
-        final String lowerCaseFilter = filter.toLowerCase();
-        final List<VariableCompletionItem> result = new ArrayList<VariableCompletionItem>(varInfoList.size());
-        for(BshVariableInfo varInfo: varInfoList)
-            if(filter.isEmpty() || varInfo.getName().toLowerCase().startsWith(lowerCaseFilter))
-                result.add(new VariableCompletionItem(varInfo, startOffset, caretOffset));
+    public synchronized List<? extends CompletionItem> getItems(BshScriptInfo scriptInfo, int startOffset, 
+                                                                int caretOffset, String filter, int line, int column) {
+        candidates = ScopeIndex.forScript(scriptInfo).getCandidates(line, column);
+        matches = candidates.find(filter);
+        return createItems(startOffset, caretOffset);
+    }
+    
+    @Override
+    public synchronized List<? extends CompletionItem> filterItems(String filter, int startOffset, int caretOffset) {
+        if(null == matches)
+            return Collections.<CompletionItem>emptyList();
         
-        return result;
+        matches = candidates.refine(matches, filter);
+        return createItems(startOffset, caretOffset);
     }
     
-    private void handleInfoContainer(List<BshVariableInfo> list, BshInfoContainer container, int line, int col) {
-        final boolean afterStart= (container.getBeginLine() < line) || 
-                                  ((container.getBeginLine() == line) && (container.getBeginColum() <= col));
-        final boolean beforeEnd = (container.getEndLine() > line) || 
-                                  ((container.getEndLine() == line) && (container.getEndColum() >= col));
+    private List<VariableCompletionItem> createItems(int startOffset, int caretOffset) {
+        final List<VariableCompletionItem> result = new ArrayList<VariableCompletionItem>(matches.size());
+        if(matches.getFilter().indexOf('.') >= 0)
+            return result;                                      // qualified names are left to the other providers
         
-        if(afterStart && beforeEnd) {
-            for(BshVariableInfo varInfo: container.getVariables()) {
-                // Deeper nested variable declarations override earlier once
-                final Iterator<BshVariableInfo> iterator = list.iterator();
-                while(iterator.hasNext()) 
-                    if(iterator.next().getName().equals(varInfo.getName()))
-                        iterator.remove();
-                list.add(varInfo);
-            }
-            for(BshMethodInfo method: container.getMethods())
-                handleInfoContainer(list, method, line, col);
-        }
+        for(int i=0; i<matches.size(); i++)
+            result.add(new VariableCompletionItem(candidates.get(matches.getPosition(i)), matches.getRank(i), 
+                                                  startOffset, caretOffset));
+        return result;
     }
     
 }
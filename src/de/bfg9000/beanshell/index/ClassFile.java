@@ -0,0 +1,260 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The public members of a class, read from its class file. Only the constant pool, the fields and the methods are 
+ * read - attributes are skipped and the class is not loaded, so no static initializer is run.
+ *
+ * @author Thomas Werner
+ */
+public final class ClassFile {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_BRIDGE = 0x0040;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private final String name;
+    private final String superName;
+    private final List<String> interfaces;
+    private final List<Member> members;
+
+    private ClassFile(String name, String superName, List<String> interfaces, List<Member> members) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.members = members;
+    }
+
+    /**
+     * @return the fully qualified name of the class
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the fully qualified name of the super class - or {@code null} for {@code java.lang.Object}
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * @return the public fields and methods declared by the class (no constructors)
+     */
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    /**
+     * @param stream the content of a class file - the stream is not closed
+     * @return the public members of the class
+     * @throws IOException if the stream can not be read or does not contain a class file
+     */
+    static ClassFile read(InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        if(MAGIC != in.readInt())
+            throw new IOException("Not a class file");
+        in.readUnsignedShort();                                                                        // minor version
+        in.readUnsignedShort();                                                                        // major version
+
+        final int poolSize = in.readUnsignedShort();
+        final String[] utf8 = new String[poolSize];
+        final int[] classNames = new int[poolSize];
+        for(int i=1; i<poolSize; i++) {
+            final int tag = in.readUnsignedByte();
+            switch(tag) {
+                case 1:                                                                                         // Utf8
+                    utf8[i] = in.readUTF();
+                    break;
+                case 7:                                                                                        // Class
+                    classNames[i] = in.readUnsignedShort();
+                    break;
+                case 8: case 16: case 19: case 20:                         // String, MethodType, Module, Package
+                    in.skipBytes(2);
+                    break;
+                case 15:                                                                                // MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                    in.skipBytes(4);
+                    break;
+                case 5: case 6:                                                        // Long and Double take two slots
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " +tag);
+            }
+        }
+
+        in.readUnsignedShort();                                                                        // access flags
+        final String name = getClassName(utf8, classNames, in.readUnsignedShort());
+        final int superIndex = in.readUnsignedShort();
+        final String superName = (0 == superIndex) ? null : getClassName(utf8, classNames, superIndex);
+        final int interfaceCount = in.readUnsignedShort();
+        final List<String> interfaces = new ArrayList<String>(interfaceCount);
+        for(int i=0; i<interfaceCount; i++)
+            interfaces.add(getClassName(utf8, classNames, in.readUnsignedShort()));
+
+        final List<Member> members = new ArrayList<Member>();
+        readMembers(in, utf8, false, members);
+        readMembers(in, utf8, true, members);
+        return new ClassFile(name, superName, Collections.unmodifiableList(interfaces), 
+                             Collections.unmodifiableList(members));
+    }
+
+    private static void readMembers(DataInputStream in, String[] utf8, boolean methods, List<Member> members) 
+            throws IOException {
+        final int count = in.readUnsignedShort();
+        for(int i=0; i<count; i++) {
+            final int flags = in.readUnsignedShort();
+            final String memberName = utf8[in.readUnsignedShort()];
+            final String descriptor = utf8[in.readUnsignedShort()];
+            final int attributeCount = in.readUnsignedShort();
+            for(int j=0; j<attributeCount; j++) {
+                in.skipBytes(2);
+                final int length = in.readInt();
+                if(in.skipBytes(length) != length)
+                    throw new IOException("Truncated class file");
+            }
+
+            final boolean visible = (0 != (flags & ACC_PUBLIC)) && (0 == (flags & (ACC_SYNTHETIC | ACC_BRIDGE)));
+            if(visible && !memberName.startsWith("<"))
+                members.add(new Member(memberName, descriptor, methods, 0 != (flags & ACC_STATIC)));
+        }
+    }
+
+    private static String getClassName(String[] utf8, int[] classNames, int index) {
+        return utf8[classNames[index]].replace('/', '.');
+    }
+
+    /**
+     * A public field or method.
+     */
+    public static final class Member {
+
+        private final String name;
+        private final String descriptor;
+        private final boolean method;
+        private final boolean statik;
+
+        Member(String name, String descriptor, boolean method, boolean statik) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.method = method;
+            this.statik = statik;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the type descriptor as found in the class file - like {@code (ILjava/lang/String;)V}
+         */
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public boolean isMethod() {
+            return method;
+        }
+
+        public boolean isStatic() {
+            return statik;
+        }
+
+        /**
+         * @return the simple name of the type of a field - or the return type of a method
+         */
+        public String getType() {
+            return toTypeName(descriptor, descriptor.indexOf(')') +1);
+        }
+
+        /**
+         * @return the simple names of the parameter types of a method
+         */
+        public List<String> getParameterTypes() {
+            if(!method)
+                return Collections.emptyList();
+
+            final List<String> result = new ArrayList<String>();
+            int i = 1;
+            while(')' != descriptor.charAt(i)) {
+                result.add(toTypeName(descriptor, i));
+                while('[' == descriptor.charAt(i))
+                    i++;
+                i = ('L' == descriptor.charAt(i)) ? descriptor.indexOf(';', i) +1 : i +1;
+            }
+            return result;
+        }
+
+        private static String toTypeName(String descriptor, int index) {
+            int dimensions = 0;
+            while('[' == descriptor.charAt(index +dimensions))
+                dimensions++;
+
+            final int begin = index +dimensions;
+            final StringBuilder result = new StringBuilder();
+            switch(descriptor.charAt(begin)) {
+                case 'B': result.append("byte"); break;
+                case 'C': result.append("char"); break;
+                case 'D': result.append("double"); break;
+                case 'F': result.append("float"); break;
+                case 'I': result.append("int"); break;
+                case 'J': result.append("long"); break;
+                case 'S': result.append("short"); break;
+                case 'Z': result.append("boolean"); break;
+                case 'V': result.append("void"); break;
+                default:
+                    final int end = descriptor.indexOf(';', begin);
+                    result.append(descriptor, Math.max(descriptor.lastIndexOf('/', end), begin) +1, end);
+            }
+            for(int i=0; i<dimensions; i++)
+                result.append("[]");
+            return result.toString();
+        }
+
+        @Override
+        public String toString() {
+            if(!method)
+                return name +" : " +getType();
+
+            final StringBuilder result = new StringBuilder(name).append('(');
+            final List<String> parameterTypes = getParameterTypes();
+            for(int i=0; i<parameterTypes.size(); i++)
+                result.append((i > 0) ? ", " : "").append(parameterTypes.get(i));
+            return result.append(") : ").append(getType()).toString();
+        }
+
+    }
+
+}
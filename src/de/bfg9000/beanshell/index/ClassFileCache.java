@@ -0,0 +1,131 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link ClassFile}s of the classes that have been looked up recently. The number of classes is limited - 
+ * the least recently used class is dropped first - and the garbage collector may drop classes when memory runs short.
+ * The class files are read from the jars of the {@link ClassPathIndex}.
+ *
+ * @author Thomas Werner
+ */
+public final class ClassFileCache {
+
+    private static final Logger logger = Logger.getLogger(ClassFileCache.class.getName());
+    private static final int MAX_CLASSES = 512;
+    private static ClassFileCache instance;
+
+    private static final Comparator<ClassFile.Member> NAME_ORDER = new Comparator<ClassFile.Member>() {
+        @Override
+        public int compare(ClassFile.Member o1, ClassFile.Member o2) {
+            final int result = o1.getName().compareTo(o2.getName());
+            return (0 != result) ? result : o1.getDescriptor().compareTo(o2.getDescriptor());
+        }
+    };
+
+    private final ClassPathIndex index;
+    private final Map<String, SoftReference<ClassFile>> classes = 
+            new LinkedHashMap<String, SoftReference<ClassFile>>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SoftReference<ClassFile>> eldest) {
+            return size() > MAX_CLASSES;
+        }
+
+    };
+
+    /**
+     * @param index looks up the jars that contain the classes
+     */
+    public ClassFileCache(ClassPathIndex index) {
+        this.index = index;
+    }
+
+    public static synchronized ClassFileCache getDefault() {
+        if(null == instance)
+            instance = new ClassFileCache(ClassPathIndex.getDefault());
+        return instance;
+    }
+
+    /**
+     * @param className a fully qualified class name
+     * @return the class file of the given class - or {@code null} if the class is not indexed
+     */
+    public ClassFile get(String className) {
+        synchronized(classes) {
+            final SoftReference<ClassFile> reference = classes.get(className);
+            final ClassFile cached = (null == reference) ? null : reference.get();
+            if(null != cached)
+                return cached;
+        }
+
+        ClassFile result = null;
+        try {
+            result = index.readClassFile(className);
+        } catch(IOException ex) {
+            logger.log(Level.INFO, "Can not read class " +className, ex);
+        }
+        if(null != result)
+            synchronized(classes) {
+                classes.put(className, new SoftReference<ClassFile>(result));
+            }
+        return result;
+    }
+
+    /**
+     * @param className a fully qualified class name
+     * @return the public members of the given class, including the inherited ones, sorted by name - an overridden
+     *         member is returned once
+     */
+    public List<ClassFile.Member> getMembers(String className) {
+        final List<ClassFile.Member> result = new ArrayList<ClassFile.Member>();
+        final Set<String> signatures = new HashSet<String>();
+        final Set<String> visited = new HashSet<String>();
+        final List<String> pending = new ArrayList<String>();
+        pending.add(className);
+        while(!pending.isEmpty()) {
+            final String name = pending.remove(0);
+            final ClassFile classFile = visited.add(name) ? get(name) : null;
+            if(null == classFile)
+                continue;
+
+            for(ClassFile.Member member: classFile.getMembers())
+                if(signatures.add(member.getName() +member.getDescriptor()))
+                    result.add(member);
+            if(null != classFile.getSuperName())
+                pending.add(classFile.getSuperName());
+            pending.addAll(classFile.getInterfaces());
+        }
+        Collections.sort(result, NAME_ORDER);
+        return result;
+    }
+
+}
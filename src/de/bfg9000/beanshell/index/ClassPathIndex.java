@@ -0,0 +1,363 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.netbeans.api.java.classpath.ClassPath;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.project.ProjectUtils;
+import org.netbeans.api.project.SourceGroup;
+import org.openide.filesystems.FileUtil;
+import org.openide.modules.Places;
+import org.openide.util.RequestProcessor;
+
+/**
+ * An index of the class names of the Java platform and of the libraries of the open projects. The names are read from
+ * the central directory of each jar (or jmod, or the {@link RuntimeImage} of a platform without jmods) - no class is
+ * loaded. Each jar gets a {@link ClassTable}, which is stored in the cache directory of the IDE and reused as long as
+ * the jar is not modified.
+ *
+ * <p>The jars are indexed in the background. Queries are answered from the jars that have been indexed so far. Nested
+ * classes, {@code package-info} and {@code module-info} are not indexed.</p>
+ *
+ * <p>File format of a stored table: magic, version, path, time of last modification and size of the jar, followed by
+ * the table.</p>
+ *
+ * @author Thomas Werner
+ */
+public final class ClassPathIndex {
+
+    private static final Logger logger = Logger.getLogger(ClassPathIndex.class.getName());
+    private static final int MAGIC = 0x42534843;                                                      // "BSHC"
+    private static final int VERSION = 1;
+    private static final String CACHE_FOLDER = "beanshell/classes";
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String JMOD_CLASSES = "classes/";
+    private static final String SOURCES_TYPE_JAVA = "java";                        // see JavaProjectConstants
+    private static final RequestProcessor indexProcessor = new RequestProcessor("BeanShell Class Indexer", 1);
+    private static ClassPathIndex instance;
+
+    private final File cacheFolder;
+    private final Map<File, ClassTable> tables = new LinkedHashMap<File, ClassTable>();
+    private final Set<File> pending = new HashSet<File>();
+
+    /**
+     * @param cacheFolder receives the stored tables
+     */
+    public ClassPathIndex(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    /**
+     * @return the index - the indexing of the Java platform is started by the first call
+     */
+    public static synchronized ClassPathIndex getDefault() {
+        if(null == instance) {
+            instance = new ClassPathIndex(Places.getCacheSubdirectory(CACHE_FOLDER));
+            instance.addRoots(getPlatformRoots());
+        }
+        return instance;
+    }
+
+    /**
+     * Indexes the given jars in the background. Jars that are indexed already are skipped.
+     *
+     * @param jars jar or jmod files
+     */
+    public void addRoots(Collection<File> jars) {
+        final List<File> added = new ArrayList<File>();
+        synchronized(this) {
+            for(File jar: jars)
+                if(!tables.containsKey(jar) && pending.add(jar))
+                    added.add(jar);
+        }
+        if(added.isEmpty())
+            return;
+
+        indexProcessor.post(new Runnable() {
+            @Override
+            public void run() {
+                for(File jar: added)
+                    index(jar);
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} if some jars have not been indexed yet
+     */
+    public synchronized boolean isIndexing() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Looks up the content of a package.
+     *
+     * @param packageName a package - or the empty string for the top-level packages
+     * @param prefix the beginning of the names that are looked up
+     * @param packages receives the simple names of the nested packages that start with the prefix
+     * @param classes receives the simple names of the classes that start with the prefix
+     */
+    public void find(String packageName, String prefix, Collection<String> packages, Collection<String> classes) {
+        final String parent = packageName.isEmpty() ? "" : packageName +'.';
+        final String base = parent +prefix;
+        for(ClassTable table: getTables()) {
+            final int end = table.upperBound(base);
+            int i = table.lowerBound(base);
+            while(i < end) {
+                final String name = table.get(i);
+                final int dot = name.indexOf('.', parent.length());
+                if(dot < 0) {
+                    classes.add(name.substring(parent.length()));
+                    i++;
+                } else {
+                    packages.add(name.substring(parent.length(), dot));
+                    i = table.upperBound(name.substring(0, dot +1));
+                }
+            }
+        }
+    }
+
+    private synchronized List<ClassTable> getTables() {
+        return new ArrayList<ClassTable>(tables.values());
+    }
+
+    /**
+     * @param className a fully qualified class name
+     * @return {@code true} if one of the indexed jars contains the given class
+     */
+    public boolean contains(String className) {
+        return null != findJar(className);
+    }
+
+    private synchronized File findJar(String className) {
+        for(Map.Entry<File, ClassTable> entry: tables.entrySet())
+            if(entry.getValue().contains(className))
+                return entry.getKey();
+        return null;
+    }
+
+    /**
+     * Reads the class file of the given class from the jar that contains it.
+     *
+     * @param className a fully qualified class name
+     * @return the public members of the class - or {@code null} if the class is not indexed
+     * @throws IOException if the class file can not be read
+     */
+    ClassFile readClassFile(String className) throws IOException {
+        final File jar = findJar(className);
+        if(null == jar)
+            return null;
+
+        final String path = className.replace('.', '/') +CLASS_EXTENSION;
+        if(RuntimeImage.isRuntimeImage(jar)) {
+            final InputStream in = RuntimeImage.open(path);
+            return (null == in) ? null : read(in);
+        }
+
+        final ZipFile zip = new ZipFile(jar);
+        try {
+            ZipEntry entry = zip.getEntry(path);
+            if(null == entry)
+                entry = zip.getEntry(JMOD_CLASSES +path);
+            return (null == entry) ? null : read(zip.getInputStream(entry));
+        } finally {
+            zip.close();
+        }
+    }
+
+    private static ClassFile read(InputStream stream) throws IOException {
+        final InputStream in = new BufferedInputStream(stream);
+        try {
+            return ClassFile.read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Indexes the given jar in the calling thread - or loads its stored table.
+     */
+    void index(File jar) {
+        ClassTable table = null;
+        try {
+            final File store = getStoreFile(jar);
+            table = load(store, jar);
+            if(null == table) {
+                table = ClassTable.create(readClassNames(jar));
+                save(store, jar, table);
+            }
+        } catch(IOException ex) {
+            logger.log(Level.INFO, "Can not index " +jar, ex);
+        } catch(RuntimeException ex) {
+            logger.log(Level.INFO, "Can not index " +jar, ex);
+        } finally {
+            synchronized(this) {
+                pending.remove(jar);
+                if(null != table)
+                    tables.put(jar, table);
+            }
+        }
+    }
+
+    /**
+     * @param jar a jar or jmod file - or the runtime image of the platform
+     * @return the names of the top-level classes within the given jar
+     * @throws IOException if the jar can not be read
+     */
+    static List<String> readClassNames(File jar) throws IOException {
+        final List<String> result = new ArrayList<String>();
+        if(RuntimeImage.isRuntimeImage(jar)) {
+            for(String name: RuntimeImage.readEntryNames())
+                addClassName(name, result);
+            return result;
+        }
+
+        final ZipFile zip = new ZipFile(jar);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while(entries.hasMoreElements())
+                addClassName(entries.nextElement().getName(), result);
+        } finally {
+            zip.close();
+        }
+        return result;
+    }
+
+    private static void addClassName(String entryName, List<String> classNames) {
+        final String name = entryName.startsWith(JMOD_CLASSES) ? entryName.substring(JMOD_CLASSES.length()) 
+                                                               : entryName;
+        if(!name.endsWith(CLASS_EXTENSION) || (name.indexOf('$') >= 0) || name.startsWith("META-INF/") ||
+           name.endsWith("package-info.class") || name.endsWith("module-info.class"))
+            return;
+        classNames.add(name.substring(0, name.length() -CLASS_EXTENSION.length()).replace('/', '.'));
+    }
+
+    private File getStoreFile(File jar) {
+        final CRC32 crc = new CRC32();
+        crc.update(jar.getAbsolutePath().getBytes());
+        return new File(cacheFolder, jar.getName() +'-' +Long.toHexString(crc.getValue()) +".idx");
+    }
+
+    /**
+     * @return the stored table of the given jar - or {@code null} if there is none, if the jar has been modified or if
+     *         the stored table is corrupt (it is replaced then)
+     */
+    private static ClassTable load(File store, File jar) throws IOException {
+        if(!store.isFile())
+            return null;
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(store)));
+        try {
+            if((MAGIC != in.readInt()) || (VERSION != in.readInt()) || !jar.getAbsolutePath().equals(in.readUTF()) ||
+               (jar.lastModified() != in.readLong()) || (jar.length() != in.readLong()))
+                return null;
+            return ClassTable.read(in, store.length());
+        } catch(IOException ex) {
+            logger.log(Level.FINE, "Corrupt class table " +store, ex);
+        } catch(RuntimeException ex) {
+            logger.log(Level.FINE, "Corrupt class table " +store, ex);
+        } finally {
+            in.close();
+        }
+        return null;
+    }
+
+    private static void save(File store, File jar, ClassTable table) throws IOException {
+        final File tmp = new File(store.getPath() +".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(jar.getAbsolutePath());
+            out.writeLong(jar.lastModified());
+            out.writeLong(jar.length());
+            table.write(out);
+        } finally {
+            out.close();
+        }
+
+        if(!tmp.renameTo(store) && (!store.delete() || !tmp.renameTo(store)))
+            throw new IOException("Can not replace " +store);
+    }
+
+    /**
+     * @return the jars of the boot class path - or the jmods of a modular Java platform, or its runtime image if it
+     *         comes without jmods
+     */
+    static List<File> getPlatformRoots() {
+        final List<File> result = new ArrayList<File>();
+        final String bootClassPath = System.getProperty("sun.boot.class.path");
+        if(null != bootClassPath)
+            for(String entry: bootClassPath.split(File.pathSeparator))
+                if(new File(entry).isFile())
+                    result.add(new File(entry));
+
+        if(result.isEmpty()) {
+            final File[] jmods = new File(System.getProperty("java.home"), "jmods").listFiles();
+            if(null != jmods)
+                for(File jmod: jmods)
+                    if(jmod.getName().endsWith(".jmod"))
+                        result.add(jmod);
+        }
+        if(result.isEmpty() && (null != RuntimeImage.find()))
+            result.add(RuntimeImage.find());
+        return result;
+    }
+
+    /**
+     * @param project a Java project
+     * @return the jars of the compile class path of the project's source roots
+     */
+    static List<File> findJars(Project project) {
+        final Set<File> result = new LinkedHashSet<File>();
+        for(SourceGroup group: ProjectUtils.getSources(project).getSourceGroups(SOURCES_TYPE_JAVA)) {
+            final ClassPath classPath = ClassPath.getClassPath(group.getRootFolder(), ClassPath.COMPILE);
+            if(null == classPath)
+                continue;
+
+            for(ClassPath.Entry entry: classPath.entries()) {
+                final File file = FileUtil.archiveOrDirForURL(entry.getURL());
+                if((null != file) && file.isFile())
+                    result.add(file);
+            }
+        }
+        return new ArrayList<File>(result);
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * A sorted table of fully qualified class names. All names are kept in a single string, so the table costs little 
+ * more than a char per character and an int per name. The names that start with a prefix form a range, which is 
+ * found by two binary searches.
+ *
+ * <p>Stored format: the number of names, followed by one record per name: the length of the prefix it shares with the
+ * previous name and the remaining characters.</p>
+ *
+ * @author Thomas Werner
+ */
+final class ClassTable {
+
+    private final String data;
+    private final int[] offsets;
+
+    private ClassTable(String data, int[] offsets) {
+        this.data = data;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @param names class names - in any order, duplicates are dropped
+     * @return the table of the given names
+     */
+    static ClassTable create(Collection<String> names) {
+        final TreeSet<String> sorted = new TreeSet<String>(names);
+        final StringBuilder builder = new StringBuilder();
+        final int[] offsets = new int[sorted.size() +1];
+        int i = 0;
+        for(String name: sorted) {
+            offsets[i++] = builder.length();
+            builder.append(name);
+        }
+        offsets[i] = builder.length();
+        return new ClassTable(builder.toString(), offsets);
+    }
+
+    int size() {
+        return offsets.length -1;
+    }
+
+    String get(int index) {
+        return data.substring(offsets[index], offsets[index +1]);
+    }
+
+    /**
+     * @param name a fully qualified class name
+     * @return {@code true} if the table contains the given name
+     */
+    boolean contains(String name) {
+        final int index = lowerBound(name);
+        return (index < size()) && (offsets[index +1] -offsets[index] == name.length()) && (0 == compare(index, name));
+    }
+
+    /**
+     * @return the first name that is not less than the given prefix
+     */
+    int lowerBound(String prefix) {
+        int low = 0;
+        int high = size();
+        while(low < high) {
+            final int middle = (low +high) >>> 1;
+            if(compare(middle, prefix) < 0)
+                low = middle +1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return the first name that is greater than the given prefix and does not start with it
+     */
+    int upperBound(String prefix) {
+        int low = 0;
+        int high = size();
+        while(low < high) {
+            final int middle = (low +high) >>> 1;
+            if(compare(middle, prefix) <= 0)
+                low = middle +1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Compares a name with a prefix - a name that starts with the prefix is equal.
+     */
+    private int compare(int index, String prefix) {
+        final int begin = offsets[index];
+        final int length = offsets[index +1] -begin;
+        final int common = Math.min(length, prefix.length());
+        for(int i=0; i<common; i++) {
+            final char c = data.charAt(begin +i);
+            if(c != prefix.charAt(i))
+                return c -prefix.charAt(i);
+        }
+        return (length >= prefix.length()) ? 0 : -1;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(size());
+        int previous = 0;
+        for(int i=0; i<size(); i++) {
+            final int begin = offsets[i];
+            final int length = offsets[i +1] -begin;
+            int shared = 0;
+            final int maxShared = Math.min(Math.min(length, begin -previous), Character.MAX_VALUE);
+            while((shared < maxShared) && (data.charAt(previous +shared) == data.charAt(begin +shared)))
+                shared++;
+            out.writeChar(shared);
+            out.writeUTF(data.substring(begin +shared, begin +length));
+            previous = begin;
+        }
+    }
+
+    /**
+     * @param in the stored table
+     * @param maxCount the highest number of names that is accepted - the stored table is corrupt if it has more
+     * @return the table
+     * @throws IOException if the table can not be read or if it is corrupt
+     */
+    static ClassTable read(DataInput in, long maxCount) throws IOException {
+        final int count = in.readInt();
+        if((count < 0) || (count > maxCount))
+            throw new IOException("Invalid number of names: " +count);
+
+        final StringBuilder builder = new StringBuilder();
+        final int[] offsets = new int[count +1];
+        int previous = 0;
+        for(int i=0; i<count; i++) {
+            final int shared = in.readChar();
+            if(shared > builder.length() -previous)
+                throw new IOException("Invalid shared prefix: " +shared);
+            offsets[i] = builder.length();
+            builder.append(builder, previous, previous +shared).append(in.readUTF());
+            previous = offsets[i];
+        }
+        offsets[count] = builder.length();
+        return new ClassTable(builder.toString(), offsets);
+    }
+
+}
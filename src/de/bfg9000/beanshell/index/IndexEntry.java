@@ -0,0 +1,62 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import org.openide.filesystems.FileObject;
+
+/**
+ * A top-level declaration (or import) of an indexed BeanShell script.
+ *
+ * @author Thomas Werner
+ */
+public final class IndexEntry {
+
+    public static enum Kind { Class, Method, Variable, Import }
+
+    private final Kind kind;
+    private final String name;
+    private final FileObject file;
+    private final int lineNumber;
+
+    IndexEntry(Kind kind, String name, FileObject file, int lineNumber) {
+        this.kind = kind;
+        this.name = name;
+        this.file = file;
+        this.lineNumber = lineNumber;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FileObject getFile() {
+        return file;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public String toString() {
+        return kind +" " +name +" (" +file.getNameExt() +":" +lineNumber +")";
+    }
+
+}
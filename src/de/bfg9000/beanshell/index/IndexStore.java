@@ -0,0 +1,203 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.openide.filesystems.FileObject;
+import org.openide.modules.Places;
+
+/**
+ * Stores the index of a project in a binary file in the cache directory of the IDE. The structure of each script is
+ * kept encoded - it is decoded when it is requested for the first time.
+ *
+ * <p>File format: magic, version, number of scripts, followed by one record per script: relative path, time of last
+ * modification, size, CRC32 of the content, index entries (kind, name, line) and the encoded script info.</p>
+ *
+ * @author Thomas Werner
+ */
+final class IndexStore {
+
+    private static final Logger logger = Logger.getLogger(IndexStore.class.getName());
+    private static final int MAGIC = 0x42534849;                                                      // "BSHI"
+    private static final int VERSION = 2;
+    private static final String CACHE_FOLDER = "beanshell/index";
+
+    private final File file;
+
+    IndexStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param root the folder of a project
+     * @return the store for the index of the given project
+     */
+    static IndexStore forProject(FileObject root) {
+        final CRC32 crc = new CRC32();
+        crc.update(root.getPath().getBytes());
+        final File folder = Places.getCacheSubdirectory(CACHE_FOLDER);
+        return new IndexStore(new File(folder, Long.toHexString(crc.getValue()) +".idx"));
+    }
+
+    /**
+     * Reads the stored records. A store that is truncated or corrupt is deleted, so it is rebuilt by the next
+     * {@link #save(Collection)}.
+     *
+     * @return the stored records - or an empty list if there is no valid store
+     * @throws IOException if the store can not be opened
+     */
+    List<Record> load() throws IOException {
+        if(!file.isFile())
+            return new ArrayList<Record>();
+
+        final long length = file.length();
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if((MAGIC != in.readInt()) || (VERSION != in.readInt()))
+                return new ArrayList<Record>();
+            return readRecords(in, length);
+        } catch(IOException ex) {
+            logger.log(Level.INFO, "Deleting corrupt BeanShell index " +file, ex);
+        } catch(RuntimeException ex) {
+            logger.log(Level.INFO, "Deleting corrupt BeanShell index " +file, ex);
+        } finally {
+            in.close();
+        }
+
+        if(!file.delete())
+            throw new IOException("Can not delete corrupt index " +file);
+        return new ArrayList<Record>();
+    }
+
+    /**
+     * @param length the length of the file - no count or size within the file may exceed it
+     */
+    private List<Record> readRecords(DataInputStream in, long length) throws IOException {
+        final IndexEntry.Kind[] kinds = IndexEntry.Kind.values();
+        final int count = readCount(in, length);
+        final List<Record> result = new ArrayList<Record>(count);
+        for(int i=0; i<count; i++) {
+            final Record record = new Record(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+            final int entryCount = readCount(in, length);
+            for(int j=0; j<entryCount; j++) {
+                final int kind = in.readUnsignedByte();
+                if(kind >= kinds.length)
+                    throw new IOException("Unknown kind of index entry: " +kind);
+                record.entries.add(new StoredEntry(kinds[kind], in.readUTF(), in.readInt()));
+            }
+            record.data = new byte[readCount(in, length)];
+            in.readFully(record.data);
+            result.add(record);
+        }
+        return result;
+    }
+
+    private static int readCount(DataInputStream in, long length) throws IOException {
+        final int result = in.readInt();
+        if((result < 0) || (result > length))
+            throw new IOException("Invalid count: " +result);
+        return result;
+    }
+
+    /**
+     * Replaces the stored records. The records are written to a temporary file first, which then replaces the store, so
+     * a crash during the write does not corrupt the store. Where a rename can not replace an existing file (Windows),
+     * the old store is deleted before the rename - a crash in between loses the store, which is then rebuilt.
+     *
+     * @param records the records to be stored
+     * @throws IOException if the store can not be written
+     */
+    void save(Collection<Record> records) throws IOException {
+        final File tmp = new File(file.getPath() +".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(records.size());
+            for(Record record: records) {
+                out.writeUTF(record.path);
+                out.writeLong(record.lastModified);
+                out.writeLong(record.size);
+                out.writeLong(record.crc);
+                out.writeInt(record.entries.size());
+                for(StoredEntry entry: record.entries) {
+                    out.writeByte(entry.kind.ordinal());
+                    out.writeUTF(entry.name);
+                    out.writeInt(entry.lineNumber);
+                }
+                out.writeInt(record.data.length);
+                out.write(record.data);
+            }
+        } finally {
+            out.close();
+        }
+
+        if(!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file)))
+            throw new IOException("Can not replace " +file);
+    }
+
+    /**
+     * The stored index data of a single script.
+     */
+    static final class Record {
+
+        final String path;
+        final long lastModified;
+        final long size;
+        final long crc;
+        final List<StoredEntry> entries = new ArrayList<StoredEntry>();
+        byte[] data;
+
+        Record(String path, long lastModified, long size, long crc) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.crc = crc;
+        }
+
+    }
+
+    /**
+     * An {@code IndexEntry} without its file.
+     */
+    static final class StoredEntry {
+
+        final IndexEntry.Kind kind;
+        final String name;
+        final int lineNumber;
+
+        StoredEntry(IndexEntry.Kind kind, String name, int lineNumber) {
+            this.kind = kind;
+            this.name = name;
+            this.lineNumber = lineNumber;
+        }
+
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the classes of the runtime image ({@code lib/modules}) of a modular Java platform that comes without jmods.
+ * The image is read through the {@code jrt:/} file system of the running platform, which lists the classes below
+ * {@code /modules/<module>/} and the modules of a package below {@code /packages/<package>/}.
+ *
+ * <p>The module is compiled for Java 6, which has no {@code java.nio.file} - the file system is used by reflection. A 
+ * runtime image only exists on Java 9 and later, so the reflection does not fail where it is used.</p>
+ *
+ * @author Thomas Werner
+ */
+final class RuntimeImage {
+
+    private static final String MODULES = "modules";
+
+    private RuntimeImage() { }
+
+    /**
+     * @return the runtime image of the running platform - or {@code null} if it has none
+     */
+    static File find() {
+        final File image = new File(new File(System.getProperty("java.home"), "lib"), MODULES);
+        return image.isFile() ? image : null;
+    }
+
+    /**
+     * @param file a root of the {@link ClassPathIndex}
+     * @return {@code true} if the given file is the runtime image of the running platform
+     */
+    static boolean isRuntimeImage(File file) {
+        return file.equals(find());
+    }
+
+    /**
+     * @return the paths of all class files of the image, like {@code java/util/List.class}
+     * @throws IOException if the image can not be read
+     */
+    static List<String> readEntryNames() throws IOException {
+        final NioFiles files = new NioFiles();
+        final List<String> result = new ArrayList<String>();
+        for(Object module: files.list(files.getPath("/" +MODULES)))
+            collectEntryNames(files, module, "", result);
+        return result;
+    }
+
+    private static void collectEntryNames(NioFiles files, Object folder, String parent, List<String> names) 
+            throws IOException {
+        for(Object child: files.list(folder)) {
+            final String name = files.getFileName(child);
+            if(files.isDirectory(child))
+                collectEntryNames(files, child, parent +name +'/', names);
+            else
+                names.add(parent +name);
+        }
+    }
+
+    /**
+     * @param path the path of a class file, like {@code java/util/List.class}
+     * @return the content of the class file - or {@code null} if the image does not contain it
+     * @throws IOException if the image can not be read
+     */
+    static InputStream open(String path) throws IOException {
+        final int slash = path.lastIndexOf('/');
+        if(slash < 0)
+            return null;
+
+        final NioFiles files = new NioFiles();
+        final Object modules = files.getPath("/packages/" +path.substring(0, slash).replace('/', '.'));
+        if(!files.isDirectory(modules))
+            return null;
+
+        for(Object module: files.list(modules)) {
+            final Object file = files.getPath("/" +MODULES +'/' +files.getFileName(module) +'/' +path);
+            if(files.isRegularFile(file))
+                return files.newInputStream(file);
+        }
+        return null;
+    }
+
+    /**
+     * The few methods of {@code java.nio.file.Files} that are needed to read the {@code jrt:/} file system. The paths
+     * are passed as {@code Object}s.
+     */
+    private static final class NioFiles {
+
+        private final Object fileSystem;
+        private final Method getPath;
+        private final Method getFileName;
+        private final Method isDirectory;
+        private final Method isRegularFile;
+        private final Method newDirectoryStream;
+        private final Method newInputStream;
+        private final Object noLinkOptions;
+        private final Object noOpenOptions;
+
+        NioFiles() throws IOException {
+            try {
+                final Class<?> fileSystems = Class.forName("java.nio.file.FileSystems");
+                final Class<?> fileSystemClass = Class.forName("java.nio.file.FileSystem");
+                final Class<?> pathClass = Class.forName("java.nio.file.Path");
+                final Class<?> filesClass = Class.forName("java.nio.file.Files");
+                final Class<?> linkOption = Class.forName("java.nio.file.LinkOption");
+                final Class<?> openOption = Class.forName("java.nio.file.OpenOption");
+                noLinkOptions = Array.newInstance(linkOption, 0);
+                noOpenOptions = Array.newInstance(openOption, 0);
+                fileSystem = fileSystems.getMethod("getFileSystem", URI.class).invoke(null, URI.create("jrt:/"));
+                getPath = fileSystemClass.getMethod("getPath", String.class, String[].class);
+                getFileName = pathClass.getMethod("getFileName");
+                isDirectory = filesClass.getMethod("isDirectory", pathClass, noLinkOptions.getClass());
+                isRegularFile = filesClass.getMethod("isRegularFile", pathClass, noLinkOptions.getClass());
+                newDirectoryStream = filesClass.getMethod("newDirectoryStream", pathClass);
+                newInputStream = filesClass.getMethod("newInputStream", pathClass, noOpenOptions.getClass());
+            } catch(ClassNotFoundException ex) {
+                throw new IOException("No jrt file system", ex);
+            } catch(NoSuchMethodException ex) {
+                throw new IOException("No jrt file system", ex);
+            } catch(RuntimeException ex) {
+                throw new IOException("No jrt file system", ex);
+            } catch(IllegalAccessException ex) {
+                throw new IOException("No jrt file system", ex);
+            } catch(InvocationTargetException ex) {
+                throw new IOException("No jrt file system", ex.getCause());
+            }
+        }
+
+        Object getPath(String path) throws IOException {
+            return invoke(getPath, fileSystem, path, new String[0]);
+        }
+
+        String getFileName(Object path) throws IOException {
+            final String name = invoke(getFileName, path).toString();
+            return name.endsWith("/") ? name.substring(0, name.length() -1) : name;
+        }
+
+        boolean isDirectory(Object path) throws IOException {
+            return (Boolean) invoke(isDirectory, null, path, noLinkOptions);
+        }
+
+        boolean isRegularFile(Object path) throws IOException {
+            return (Boolean) invoke(isRegularFile, null, path, noLinkOptions);
+        }
+
+        InputStream newInputStream(Object path) throws IOException {
+            return (InputStream) invoke(newInputStream, null, path, noOpenOptions);
+        }
+
+        /**
+         * @return the entries of the given folder
+         */
+        List<Object> list(Object folder) throws IOException {
+            final Object stream = invoke(newDirectoryStream, null, folder);
+            try {
+                final List<Object> result = new ArrayList<Object>();
+                for(Object entry: (Iterable<?>) stream)
+                    result.add(entry);
+                return result;
+            } finally {
+                ((Closeable) stream).close();
+            }
+        }
+
+        private static Object invoke(Method method, Object target, Object... args) throws IOException {
+            try {
+                return method.invoke(target, args);
+            } catch(IllegalAccessException ex) {
+                throw new IOException("Can not read the runtime image", ex);
+            } catch(InvocationTargetException ex) {
+                if(ex.getCause() instanceof IOException)
+                    throw (IOException) ex.getCause();
+                throw new IOException("Can not read the runtime image", ex.getCause());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,527 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import bsh.BshImportInfo;
+import bsh.BshMethodInfo;
+import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import bsh.BshVariableInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import org.netbeans.api.project.Project;
+import org.netbeans.spi.project.ui.ProjectOpenedHook;
+import org.openide.filesystems.FileAttributeEvent;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.RequestProcessor;
+
+/**
+ * An in-memory index of the BeanShell scripts of a project. The declarations of all scripts can be looked up by name.
+ *
+ * <p>The scripts are parsed in parallel. The number of parser threads equals the number of available processors.
+ * Each thread takes the next script that has not been parsed yet, so the load is balanced even if the scripts differ
+ * in size.</p>
+ *
+ * <p>The index is stored in the cache directory when the project is closed (see {@link IndexStore}). When the project
+ * is opened again, only the scripts whose time of modification and content hash have changed are parsed again.</p>
+ *
+ * @author Thomas Werner
+ */
+public final class ScriptIndex {
+
+    private static final Logger logger = Logger.getLogger(ScriptIndex.class.getName());
+    private static final String EXTENSION = "bsh";
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final RequestProcessor parserProcessor = new RequestProcessor("BeanShell Indexer", THREADS);
+    private static final RequestProcessor indexProcessor = new RequestProcessor("BeanShell Index Updater", 1);
+
+    private final Map<FileObject, IndexedScript> scripts = new HashMap<FileObject, IndexedScript>();
+    private final Map<String, List<IndexEntry>> nameEntries = new HashMap<String, List<IndexEntry>>();
+    private final AtomicLong parsedScripts = new AtomicLong();
+
+    /**
+     * Parses the given scripts and adds them to the index. Scripts that are indexed already are only parsed if they
+     * have been modified. This method blocks until all scripts have been processed.
+     *
+     * @param files BeanShell scripts
+     */
+    public void index(final List<FileObject> files) {
+        final AtomicInteger next = new AtomicInteger();
+        final int workers = Math.min(THREADS, files.size());
+        final List<RequestProcessor.Task> tasks = new ArrayList<RequestProcessor.Task>(workers);
+        for(int i=0; i<workers; i++)
+            tasks.add(parserProcessor.post(new Runnable() {
+                @Override
+                public void run() {
+                    final BshParserConnector connector = new BshParserConnector();
+                    for(int j=next.getAndIncrement(); j<files.size(); j=next.getAndIncrement())
+                        refresh(files.get(j), connector);
+                }
+            }));
+
+        for(RequestProcessor.Task task: tasks)
+            task.waitFinished();
+    }
+
+    /**
+     * Parses the given script again (if it has been modified) and replaces its entries.
+     *
+     * @param file a BeanShell script
+     */
+    public void update(FileObject file) {
+        refresh(file, new BshParserConnector());
+    }
+
+    /**
+     * Removes the entries of the given script.
+     *
+     * @param file a BeanShell script
+     */
+    public synchronized void remove(FileObject file) {
+        final IndexedScript script = scripts.remove(file);
+        if(null == script)
+            return;
+
+        for(IndexEntry entry: script.entries) {
+            final List<IndexEntry> named = nameEntries.get(entry.getName());
+            named.remove(entry);
+            if(named.isEmpty())
+                nameEntries.remove(entry.getName());
+        }
+    }
+
+    /**
+     * @param name the name of a class, method, variable or imported package
+     * @return the declarations of all indexed scripts that have the given name
+     */
+    public synchronized List<IndexEntry> find(String name) {
+        final List<IndexEntry> result = nameEntries.get(name);
+        return (null == result) ? Collections.<IndexEntry>emptyList() : new ArrayList<IndexEntry>(result);
+    }
+
+    /**
+     * @param file a BeanShell script
+     * @return the structure of the given script - or {@code null} if the script is not indexed
+     */
+    public BshScriptInfo getScriptInfo(FileObject file) {
+        final IndexedScript script = get(file);
+        return (null == script) ? null : script.getScriptInfo();
+    }
+
+    /**
+     * @return the number of indexed scripts
+     */
+    public synchronized int size() {
+        return scripts.size();
+    }
+
+    /**
+     * Removes all scripts from the index that are not contained in the given collection.
+     *
+     * @param files the scripts to be kept
+     */
+    public synchronized void retain(Collection<FileObject> files) {
+        final Set<FileObject> kept = new HashSet<FileObject>(files);
+        for(FileObject file: new ArrayList<FileObject>(scripts.keySet()))
+            if(!kept.contains(file))
+                remove(file);
+    }
+
+    /**
+     * Adds the stored scripts to the index. The stored scripts are not checked for modifications - this is done by
+     * {@link #index(java.util.List)}.
+     *
+     * @param root the folder the stored paths are relative to
+     * @param store the store to be read
+     * @throws IOException if the store can not be read
+     */
+    void load(FileObject root, IndexStore store) throws IOException {
+        for(IndexStore.Record record: store.load()) {
+            final FileObject file = root.getFileObject(record.path);
+            if((null == file) || !isScript(file))
+                continue;
+
+            final List<IndexEntry> entries = new ArrayList<IndexEntry>(record.entries.size());
+            for(IndexStore.StoredEntry entry: record.entries)
+                entries.add(new IndexEntry(entry.kind, entry.name, file, entry.lineNumber));
+            put(file, new IndexedScript(record.lastModified, record.size, record.crc, entries, null, record.data));
+        }
+    }
+
+    /**
+     * Writes all scripts of the index below the given folder into the given store.
+     *
+     * @param root the folder the stored paths are relative to
+     * @param store the store to be written
+     * @throws IOException if the store can not be written
+     */
+    void save(FileObject root, IndexStore store) throws IOException {
+        final Map<FileObject, IndexedScript> snapshot;
+        synchronized(this) {
+            snapshot = new HashMap<FileObject, IndexedScript>(scripts);
+        }
+
+        final List<IndexStore.Record> records = new ArrayList<IndexStore.Record>(snapshot.size());
+        for(Map.Entry<FileObject, IndexedScript> mapEntry: snapshot.entrySet()) {
+            final String path = FileUtil.getRelativePath(root, mapEntry.getKey());
+            if(null == path)
+                continue;
+
+            final IndexedScript script = mapEntry.getValue();
+            final IndexStore.Record record = new IndexStore.Record(path, script.lastModified, script.size, script.crc);
+            for(IndexEntry entry: script.entries)
+                record.entries.add(new IndexStore.StoredEntry(entry.getKind(), entry.getName(), entry.getLineNumber()));
+            record.data = script.getData();
+            records.add(record);
+        }
+        store.save(records);
+    }
+
+    /**
+     * @return the number of scripts that have been parsed by this index
+     */
+    long getParsedScripts() {
+        return parsedScripts.get();
+    }
+
+    /**
+     * The returned hook indexes all BeanShell scripts below the folder of the given project when the project is
+     * opened. The index is kept up to date until the project is closed.
+     *
+     * @param project a project
+     * @return a {@code ProjectOpenedHook} for the project lookup
+     */
+    public ProjectOpenedHook createProjectOpenedHook(Project project) {
+        final FileObject root = project.getProjectDirectory();
+        return createProjectOpenedHook(root, project, IndexStore.forProject(root));
+    }
+
+    /**
+     * @param root the project folder
+     * @param project the project whose jars are added to the {@link ClassPathIndex} - may be {@code null}
+     * @param store the store the index is read from and written to
+     */
+    IndexingHook createProjectOpenedHook(FileObject root, Project project, IndexStore store) {
+        return new IndexingHook(root, project, store);
+    }
+
+    /**
+     * Blocks until the scripts that have been scheduled for indexing so far have been processed.
+     */
+    void waitFinished() {
+        indexProcessor.post(new Runnable() {
+            @Override
+            public void run() { }
+        }).waitFinished();
+    }
+
+    /**
+     * @param root a folder
+     * @return all BeanShell scripts below the given folder
+     */
+    static List<FileObject> findScripts(FileObject root) {
+        final List<FileObject> result = new ArrayList<FileObject>();
+        final Enumeration<? extends FileObject> children = root.getChildren(true);
+        while(children.hasMoreElements()) {
+            final FileObject child = children.nextElement();
+            if(isScript(child))
+                result.add(child);
+        }
+        return result;
+    }
+
+    private static boolean isScript(FileObject file) {
+        return file.isData() && EXTENSION.equalsIgnoreCase(file.getExt());
+    }
+
+    /**
+     * Parses the given script if it is not indexed yet, or if its time of modification and its content hash have
+     * changed.
+     */
+    private void refresh(FileObject file, BshParserConnector connector) {
+        final IndexedScript current = get(file);
+        final long lastModified = file.lastModified().getTime();
+        final long size = file.getSize();
+        if((null != current) && (current.lastModified == lastModified) && (current.size == size))
+            return;
+
+        try {
+            if((null != current) && (current.crc == computeCrc(file))) {
+                put(file, new IndexedScript(lastModified, size, current.crc, current.entries, current));
+                return;
+            }
+
+            // The content hash is computed while the parser reads the script - it is never held in memory as a whole
+            parsedScripts.incrementAndGet();
+            final CRC32 crc = new CRC32();
+            final InputStream iStream = new CheckedInputStream(file.getInputStream(), crc);
+            final BshScriptInfo scriptInfo;
+            try {
+                scriptInfo = connector.parse(iStream);
+            } finally {
+                iStream.close();
+            }
+            put(file, new IndexedScript(lastModified, size, crc.getValue(), buildEntries(file, scriptInfo), scriptInfo,
+                                        null));
+        } catch(IOException ex) {
+            logger.log(Level.FINE, "Can not index " +file.getPath(), ex);
+            remove(file);
+        } catch(RuntimeException ex) {                       // a single script must not stop the indexing of the rest
+            logger.log(Level.INFO, "Can not index " +file.getPath(), ex);
+            remove(file);
+        } catch(StackOverflowError err) {
+            logger.log(Level.INFO, "Can not index " +file.getPath(), err);
+            remove(file);
+        }
+    }
+
+    private static long computeCrc(FileObject file) throws IOException {
+        final CheckedInputStream iStream = new CheckedInputStream(file.getInputStream(), new CRC32());
+        try {
+            final byte[] buffer = new byte[8192];
+            while(iStream.read(buffer) >= 0) { }
+            return iStream.getChecksum().getValue();
+        } finally {
+            iStream.close();
+        }
+    }
+
+    private synchronized IndexedScript get(FileObject file) {
+        return scripts.get(file);
+    }
+
+    private synchronized void put(FileObject file, IndexedScript script) {
+        remove(file);
+        scripts.put(file, script);
+        for(IndexEntry entry: script.entries) {
+            List<IndexEntry> named = nameEntries.get(entry.getName());
+            if(null == named) {
+                named = new ArrayList<IndexEntry>(1);
+                nameEntries.put(entry.getName(), named);
+            }
+            named.add(entry);
+        }
+    }
+
+    private List<IndexEntry> buildEntries(FileObject file, BshScriptInfo scriptInfo) {
+        final List<IndexEntry> result = new ArrayList<IndexEntry>();
+        for(BshImportInfo importInfo: scriptInfo.getImports())
+            if(importInfo.getLineNumber() > 0)                                          // skip the default imports
+                result.add(new IndexEntry(IndexEntry.Kind.Import, importInfo.getName(), file,
+                                          importInfo.getLineNumber()));
+        for(BshMethodInfo methodInfo: scriptInfo.getMethods())
+            result.add(new IndexEntry(methodInfo.isClass() ? IndexEntry.Kind.Class : IndexEntry.Kind.Method,
+                                      methodInfo.getName(), file, methodInfo.getLineNumber()));
+        for(BshVariableInfo variableInfo: scriptInfo.getVariables())
+            result.add(new IndexEntry(IndexEntry.Kind.Variable, variableInfo.getName(), file,
+                                      variableInfo.getLineNumber()));
+        return result;
+    }
+
+    /**
+     * The index data of a single script. The structure of the script is either kept as object tree, or encoded (as it
+     * has been read from the store). The encoded form is decoded on demand.
+     */
+    private static final class IndexedScript {
+
+        final long lastModified;
+        final long size;
+        final long crc;
+        final List<IndexEntry> entries;
+        private BshScriptInfo scriptInfo;
+        private byte[] data;
+
+        IndexedScript(long lastModified, long size, long crc, List<IndexEntry> entries, BshScriptInfo scriptInfo,
+                      byte[] data) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.crc = crc;
+            this.entries = entries;
+            this.scriptInfo = scriptInfo;
+            this.data = data;
+        }
+
+        /**
+         * Creates an unmodified copy of the given script with a new time of modification.
+         */
+        IndexedScript(long lastModified, long size, long crc, List<IndexEntry> entries, IndexedScript unmodified) {
+            this(lastModified, size, crc, entries, null, null);
+            synchronized(unmodified) {
+                scriptInfo = unmodified.scriptInfo;
+                data = unmodified.data;
+            }
+        }
+
+        synchronized BshScriptInfo getScriptInfo() {
+            if(null == scriptInfo) {
+                try {
+                    scriptInfo = ScriptInfoCodec.decode(data);
+                } catch(IOException ex) {
+                    logger.log(Level.INFO, "Corrupt index data", ex);
+                    scriptInfo = new BshScriptInfo();
+                } catch(RuntimeException ex) {
+                    logger.log(Level.INFO, "Corrupt index data", ex);
+                    scriptInfo = new BshScriptInfo();
+                }
+                data = null;
+            }
+            return scriptInfo;
+        }
+
+        synchronized byte[] getData() throws IOException {
+            return (null != data) ? data : ScriptInfoCodec.encode(scriptInfo);
+        }
+
+    }
+
+    /**
+     * Indexes the scripts of a project when it gets opened and listens for changes of the scripts. The jars of the
+     * project are added to the {@link ClassPathIndex}.
+     */
+    final class IndexingHook extends ProjectOpenedHook {
+
+        private final FileObject root;
+        private final FileChangeListener listener = new FileChangeAdapter() {
+            @Override
+            public void fileDataCreated(FileEvent fe) {
+                scheduleUpdate(fe.getFile());
+            }
+
+            @Override
+            public void fileChanged(FileEvent fe) {
+                scheduleUpdate(fe.getFile());
+            }
+
+            @Override
+            public void fileDeleted(FileEvent fe) {
+                remove(fe.getFile());
+            }
+
+            @Override
+            public void fileRenamed(FileRenameEvent fe) {
+                for(FileObject file: scripts())
+                    if(!file.isValid() || !isScript(file))
+                        remove(file);
+                scheduleUpdate(fe.getFile());
+            }
+
+            @Override
+            public void fileAttributeChanged(FileAttributeEvent fe) { }
+        };
+
+        private final Project project;
+        private final IndexStore store;
+
+        IndexingHook(FileObject root, Project project, IndexStore store) {
+            this.root = root;
+            this.project = project;
+            this.store = store;
+        }
+
+        @Override
+        protected void projectOpened() {
+            if(null != FileUtil.toFile(root))
+                FileUtil.addRecursiveListener(listener, FileUtil.toFile(root));
+            indexProcessor.post(new Runnable() {
+                @Override
+                public void run() {
+                    final long start = System.currentTimeMillis();
+                    final long parsed = getParsedScripts();
+                    try {
+                        load(root, store);
+                    } catch(IOException ex) {
+                        logger.log(Level.INFO, "Can not load BeanShell index of " +root.getPath(), ex);
+                    }
+
+                    if(null != project)
+                        ClassPathIndex.getDefault().addRoots(ClassPathIndex.findJars(project));
+                    final List<FileObject> files = findScripts(root);
+                    retain(files);
+                    index(files);
+                    logger.log(Level.FINE, "Indexed {0} BeanShell scripts of {1} in {2} ms ({3} parsed)",
+                               new Object[] {files.size(), root.getPath(), System.currentTimeMillis() -start,
+                                             getParsedScripts() -parsed});
+                    saveIndex();
+                }
+            });
+        }
+
+        @Override
+        protected void projectClosed() {
+            if(null != FileUtil.toFile(root))
+                FileUtil.removeRecursiveListener(listener, FileUtil.toFile(root));
+            indexProcessor.post(new Runnable() {
+                @Override
+                public void run() {
+                    saveIndex();
+                    synchronized(ScriptIndex.this) {
+                        scripts.clear();
+                        nameEntries.clear();
+                    }
+                }
+            });
+        }
+
+        private void saveIndex() {
+            try {
+                save(root, store);
+            } catch(IOException ex) {
+                logger.log(Level.INFO, "Can not store BeanShell index of " +root.getPath(), ex);
+            }
+        }
+
+        private void scheduleUpdate(final FileObject file) {
+            if(!isScript(file))
+                return;
+
+            indexProcessor.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(file.isValid())
+                        update(file);
+                }
+            });
+        }
+
+        private List<FileObject> scripts() {
+            synchronized(ScriptIndex.this) {
+                return new ArrayList<FileObject>(scripts.keySet());
+            }
+        }
+
+    }
+
+}
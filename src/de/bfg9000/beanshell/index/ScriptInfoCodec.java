@@ -0,0 +1,289 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import bsh.BshErrorInfo;
+import bsh.BshImportInfo;
+import bsh.BshInfoContainer;
+import bsh.BshMethodInfo;
+import bsh.BshModifierInfo;
+import bsh.BshParameterInfo;
+import bsh.BshScriptInfo;
+import bsh.BshVariableInfo;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Binary encoding of a {@code BshScriptInfo}. Each string is written once per script - repeated strings (like type
+ * names) are replaced by the index of their first occurrence. Decoding checks counts and string indices, so corrupt
+ * data results in an {@code IOException}.
+ *
+ * @author Thomas Werner
+ */
+final class ScriptInfoCodec {
+
+    private static final int NULL_STRING = -1;
+    private static final int NEW_STRING = -2;
+
+    private static final int FLAG_CLASS = 1;
+    private static final int FLAG_CONSTRUCTOR = 2;
+    private static final int FLAG_INTERFACE = 4;
+
+    private ScriptInfoCodec() { }
+
+    static byte[] encode(BshScriptInfo scriptInfo) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        new Encoder(new DataOutputStream(bytes)).writeScript(scriptInfo);
+        return bytes.toByteArray();
+    }
+
+    static BshScriptInfo decode(byte[] data) throws IOException {
+        return new Decoder(new DataInputStream(new ByteArrayInputStream(data))).readScript();
+    }
+
+    private static final class Encoder {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+        Encoder(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeScript(BshScriptInfo scriptInfo) throws IOException {
+            out.writeInt(scriptInfo.getImports().size());
+            for(BshImportInfo importInfo: scriptInfo.getImports()) {
+                writeString(importInfo.getName());
+                out.writeInt(importInfo.getLineNumber());
+                writeModifiers(importInfo.getModifiers());
+            }
+            out.writeInt(scriptInfo.getErrors().size());
+            for(BshErrorInfo errorInfo: scriptInfo.getErrors()) {
+                out.writeInt(errorInfo.getLineNumber());
+                out.writeInt(errorInfo.getColumn());
+                writeString(errorInfo.getMessage());
+                out.writeInt(errorInfo.getExpected().size());
+                for(String expected: errorInfo.getExpected())
+                    writeString(expected);
+            }
+            writeContainer(scriptInfo);
+            out.flush();
+        }
+
+        private void writeContainer(BshInfoContainer container) throws IOException {
+            out.writeInt(container.getBeginLine());
+            out.writeInt(container.getBeginColum());
+            out.writeInt(container.getEndLine());
+            out.writeInt(container.getEndColum());
+
+            out.writeInt(container.getVariables().size());
+            for(BshVariableInfo variable: container.getVariables()) {
+                writeString(variable.getName());
+                writeString(variable.getType());
+                out.writeInt(variable.getLineNumber());
+                writeModifiers(variable.getModifiers());
+            }
+
+            out.writeInt(container.getMethods().size());
+            for(BshMethodInfo method: container.getMethods())
+                writeMethod(method);
+        }
+
+        private void writeMethod(BshMethodInfo method) throws IOException {
+            writeString(method.getName());
+            writeString(method.getReturnType());
+            writeString(method.getSuperClass());
+            out.writeInt(method.getLineNumber());
+            out.writeByte((method.isClass() ? FLAG_CLASS : 0) | (method.isConstructor() ? FLAG_CONSTRUCTOR : 0) |
+                          (method.isInterface() ? FLAG_INTERFACE : 0));
+            writeModifiers(method.getModifiers());
+
+            out.writeInt(method.getParameters().size());
+            for(BshParameterInfo parameter: method.getParameters()) {
+                writeString(parameter.getName());
+                writeString(parameter.getType());
+            }
+
+            final List<String> interfaces = method.getInterfaces();
+            out.writeInt(interfaces.size());
+            for(String interfaze: interfaces)
+                writeString(interfaze);
+
+            writeContainer(method);
+        }
+
+        private void writeModifiers(Set<BshModifierInfo> modifiers) throws IOException {
+            int bits = 0;
+            for(BshModifierInfo modifier: modifiers)
+                bits |= 1 << modifier.ordinal();
+            out.writeShort(bits);
+        }
+
+        private void writeString(String value) throws IOException {
+            if(null == value) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+
+            final Integer index = strings.get(value);
+            if(null != index) {
+                out.writeInt(index);
+                return;
+            }
+
+            strings.put(value, strings.size());
+            out.writeInt(NEW_STRING);
+            out.writeUTF(value);
+        }
+
+    }
+
+    private static final class Decoder {
+
+        private static final BshModifierInfo[] MODIFIERS = BshModifierInfo.values();
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>();
+
+        Decoder(DataInputStream in) {
+            this.in = in;
+        }
+
+        BshScriptInfo readScript() throws IOException {
+            final BshScriptInfo.Builder result = new BshScriptInfo.Builder();
+            final int importCount = readCount();
+            final List<BshImportInfo> imports = new ArrayList<BshImportInfo>(importCount);
+            for(int i=0; i<importCount; i++) {
+                final String name = readString();
+                final int lineNumber = in.readInt();
+                imports.add(new BshImportInfo(name, lineNumber, readModifiers()));
+            }
+            result.addImports(imports);
+
+            final int errorCount = readCount();
+            final List<BshErrorInfo> errors = new ArrayList<BshErrorInfo>(errorCount);
+            for(int i=0; i<errorCount; i++) {
+                final int lineNumber = in.readInt();
+                final int column = in.readInt();
+                final String message = readString();
+                final int expectedCount = readCount();
+                final List<String> expected = new ArrayList<String>(expectedCount);
+                for(int j=0; j<expectedCount; j++)
+                    expected.add(readString());
+                errors.add(new BshErrorInfo(lineNumber, column, message, expected));
+            }
+            result.addErrors(errors);
+            readContainer(result);
+            return result.build();
+        }
+
+        private void readContainer(BshInfoContainer.Builder container) throws IOException {
+            container.setBeginLine(in.readInt());
+            container.setBeginColum(in.readInt());
+            container.setEndLine(in.readInt());
+            container.setEndColum(in.readInt());
+
+            final int variableCount = readCount();
+            final List<BshVariableInfo> variables = new ArrayList<BshVariableInfo>(variableCount);
+            for(int i=0; i<variableCount; i++) {
+                final String name = readString();
+                final String type = readString();
+                final int lineNumber = in.readInt();
+                variables.add(new BshVariableInfo(name, type, lineNumber, readModifiers()));
+            }
+            container.addVariables(variables);
+
+            final int methodCount = readCount();
+            final List<BshMethodInfo> methods = new ArrayList<BshMethodInfo>(methodCount);
+            for(int i=0; i<methodCount; i++)
+                methods.add(readMethod());
+            container.addMethods(methods);
+        }
+
+        private BshMethodInfo readMethod() throws IOException {
+            final BshMethodInfo.Builder result = new BshMethodInfo.Builder();
+            result.setName(readString());
+            result.setReturnType(readString());
+            result.setSuperClass(readString());
+            result.setLineNumber(in.readInt());
+            final int flags = in.readByte();
+            result.setClass(0 != (flags & FLAG_CLASS));
+            result.setConstructor(0 != (flags & FLAG_CONSTRUCTOR));
+            result.setInterface(0 != (flags & FLAG_INTERFACE));
+            result.addModifiers(readModifiers());
+
+            final int parameterCount = readCount();
+            final List<BshParameterInfo> parameters = new ArrayList<BshParameterInfo>(parameterCount);
+            for(int i=0; i<parameterCount; i++)
+                parameters.add(new BshParameterInfo(readString(), readString()));
+            result.addParameters(parameters);
+
+            final int interfaceCount = readCount();
+            final List<String> interfaces = new ArrayList<String>(interfaceCount);
+            for(int i=0; i<interfaceCount; i++)
+                interfaces.add(readString());
+            result.addInterfaces(interfaces);
+
+            readContainer(result);
+            return result.build();
+        }
+
+        private Set<BshModifierInfo> readModifiers() throws IOException {
+            final int bits = in.readShort();
+            final Set<BshModifierInfo> result = EnumSet.noneOf(BshModifierInfo.class);
+            for(int i=0; i<MODIFIERS.length; i++)
+                if(0 != (bits & (1 << i)))
+                    result.add(MODIFIERS[i]);
+            return result;
+        }
+
+        /**
+         * @return the number of the following elements - each element takes at least one byte
+         */
+        private int readCount() throws IOException {
+            final int result = in.readInt();
+            if((result < 0) || (result > in.available()))
+                throw new IOException("Invalid count: " +result);
+            return result;
+        }
+
+        private String readString() throws IOException {
+            final int index = in.readInt();
+            if(NULL_STRING == index)
+                return null;
+            if(NEW_STRING != index) {
+                if((index < 0) || (index >= strings.size()))
+                    throw new IOException("Invalid string index: " +index);
+                return strings.get(index);
+            }
+
+            final String result = in.readUTF();
+            strings.add(result);
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.instrumentation;
+
+import java.lang.management.ManagementFactory;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+
+/**
+ * Counts the calls of an editor feature and records their latencies in a histogram. The probes are disabled unless the
+ * IDE is started with {@code -J-Dbeanshell.instrumentation=true}. A disabled probe costs a check of a constant:
+ * <pre>
+ *     final long start = Probe.start();
+ *     ...
+ *     Probe.PARSE.record(start);
+ * </pre>
+ *
+ * <p>Enabled probes are registered as MXBeans ({@code de.bfg9000.beanshell:type=Probe,name=...}) and a summary of the
+ * probes that have been used is logged once a minute. Recording is lock-free.</p>
+ *
+ * @author Thomas Werner
+ */
+public final class Probe implements ProbeMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("beanshell.instrumentation");
+
+    /** {@code BshParserConnector.parse} */
+    public static final Probe PARSE = new Probe("parse");
+
+    /** {@code CompletionQuery.query} */
+    public static final Probe COMPLETION = new Probe("completion");
+
+    /** {@code NodeFactory.createKeys} of the navigator */
+    public static final Probe NAVIGATOR = new Probe("navigator");
+
+    /** The {@code BeanShellLexer.nextToken} calls of a lexer - the time spent within the calls, summed up per lexer */
+    public static final Probe LEXER = new Probe("lexer");
+
+    private static final Logger logger = Logger.getLogger(Probe.class.getName());
+    private static final Probe[] PROBES = { PARSE, COMPLETION, NAVIGATOR, LEXER };
+    private static final long LOG_PERIOD = 60000;
+    private static final int BUCKETS = 64;
+
+    static {
+        if(ENABLED)
+            install();
+    }
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private long loggedCount;
+
+    Probe(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the start time of an operation - or 0 if the probes are disabled
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an operation that has been started at the given time.
+     */
+    public void record(long start) {
+        if(ENABLED)
+            add(System.nanoTime() -start, 1);
+    }
+
+    /**
+     * Records an operation that has been started at the given time and processed the given number of items.
+     */
+    public void record(long start, long itemCount) {
+        if(ENABLED)
+            add(System.nanoTime() -start, itemCount);
+    }
+
+    /**
+     * @return the time since the given start of an operation - or 0 if the probes are disabled
+     */
+    public static long elapsed(long start) {
+        return ENABLED ? System.nanoTime() -start : 0;
+    }
+
+    /**
+     * Records a batch of operations that took the given time in total and processed the given number of items.
+     */
+    public void recordNanos(long nanos, long itemCount) {
+        if(ENABLED)
+            add(nanos, itemCount);
+    }
+
+    void add(long nanos, long itemCount) {
+        final long duration = Math.max(0, nanos);
+        count.incrementAndGet();
+        items.addAndGet(itemCount);
+        totalNanos.addAndGet(duration);
+        buckets.incrementAndGet(BUCKETS -Long.numberOfLeadingZeros(duration));
+        long max = maxNanos.get();
+        while((duration > max) && !maxNanos.compareAndSet(max, duration))
+            max = maxNanos.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getItems() {
+        return items.get();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return totalNanos.get() /1000000.0;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        final long calls = count.get();
+        return (0 == calls) ? 0 : totalNanos.get() /1000.0 /calls;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() /1000.0;
+    }
+
+    @Override
+    public double getMedianMicros() {
+        return getPercentileMicros(0.5);
+    }
+
+    @Override
+    public double getPercentile90Micros() {
+        return getPercentileMicros(0.9);
+    }
+
+    @Override
+    public double getPercentile99Micros() {
+        return getPercentileMicros(0.99);
+    }
+
+    /**
+     * @param fraction a value between 0 and 1
+     * @return the upper bound of the bucket that contains the given percentile - but not more than the maximum
+     */
+    double getPercentileMicros(double fraction) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for(int i=0; i<BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if(0 == total)
+            return 0;
+
+        final long rank = (long) Math.ceil(fraction *total);
+        long seen = 0;
+        for(int i=0; i<BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= rank)
+                return Math.min((i < BUCKETS -1) ? (1L << i) : Long.MAX_VALUE, maxNanos.get()) /1000.0;
+        }
+        return getMaxMicros();
+    }
+
+    @Override
+    public void reset() {
+        count.set(0);
+        items.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for(int i=0; i<BUCKETS; i++)
+            buckets.set(i, 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d calls, %d items, mean %.1f us, p50 %.1f us, p90 %.1f us, p99 %.1f us, " +
+                             "max %.1f us", name, getCount(), getItems(), getMeanMicros(), getMedianMicros(),
+                             getPercentile90Micros(), getPercentile99Micros(), getMaxMicros());
+    }
+
+    private static void install() {
+        for(Probe probe: PROBES)
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(probe,
+                        new ObjectName("de.bfg9000.beanshell:type=Probe,name=" +probe.getName()));
+            } catch(Exception ex) {
+                logger.log(Level.INFO, "Can not register probe " +probe.getName(), ex);
+            }
+
+        new Timer("BeanShell instrumentation", true).schedule(new TimerTask() {
+            @Override
+            public void run() {
+                logSummary();
+            }
+        }, LOG_PERIOD, LOG_PERIOD);
+    }
+
+    /**
+     * Logs the probes that have recorded operations since the last summary.
+     */
+    static synchronized void logSummary() {
+        for(Probe probe: PROBES) {
+            final long calls = probe.getCount();
+            if(calls != probe.loggedCount) {
+                probe.loggedCount = calls;
+                logger.info(probe.toString());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.instrumentation;
+
+/**
+ * The JMX view of a {@link Probe}. The percentiles are upper bounds - the histogram of a probe has a bucket for each
+ * power of two nanoseconds.
+ *
+ * @author Thomas Werner
+ */
+public interface ProbeMXBean {
+
+    String getName();
+
+    /**
+     * @return the number of recorded operations
+     */
+    long getCount();
+
+    /**
+     * @return the number of items (like tokens) that have been processed by the recorded operations
+     */
+    long getItems();
+
+    double getTotalMillis();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    double getMedianMicros();
+
+    double getPercentile90Micros();
+
+    double getPercentile99Micros();
+
+    void reset();
+
+}
@@ -15,13 +15,16 @@
  */
 package de.bfg9000.beanshell.integration;
 
+import de.bfg9000.beanshell.index.ScriptIndex;
+import org.netbeans.api.project.Project;
 import org.netbeans.spi.project.ActionProvider;
 import org.netbeans.spi.project.LookupProvider;
 import org.openide.util.Lookup;
 import org.openide.util.lookup.Lookups;
 
 /**
- * Adds support for the "Run File (Shift-F6)" Action for BeanShell scripts to J2SE projects.
+ * Adds support for the "Run File (Shift-F6)" Action for BeanShell scripts to J2SE projects. The BeanShell scripts of the
+ * project are indexed when the project gets opened (see {@link ScriptIndex}).
  *
  * @author Thomas Werner
  */
@@ -30,11 +33,16 @@ public class ProjectLookupProvider implements LookupProvider {
 
     @Override
     public Lookup createAdditionalLookup(Lookup lookup) {
+        final Project project = lookup.lookup(Project.class);
+        final ScriptIndex scriptIndex = new ScriptIndex();
+        final Object indexingHook = scriptIndex.createProjectOpenedHook(project);
+        
         final ActionProvider actionProvider = lookup.lookup(ActionProvider.class);
         if(null != actionProvider)
-            return Lookups.fixed(new WrappingActionProvider(actionProvider));
+            return Lookups.fixed(new WrappingActionProvider(actionProvider), scriptIndex, indexingHook);
         
-        return Lookups.fixed(new StandaloneRunActionProvider(), new StandaloneCompileActionProvider());
+        return Lookups.fixed(new StandaloneRunActionProvider(), new StandaloneCompileActionProvider(), scriptIndex,
+                             indexingHook);
     }
 
     /**
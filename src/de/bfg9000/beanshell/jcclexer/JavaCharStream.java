@@ -23,6 +23,9 @@ import org.netbeans.spi.lexer.LexerInput;
 
 public class JavaCharStream {
 
+    /** Signals the end of the input - shared, because the end is reached at least once per restart of the lexer */
+    private static final IOException EOF = new EndOfInput();
+
     private LexerInput input;
 
     static boolean staticFlag;
@@ -83,10 +86,30 @@ public class JavaCharStream {
 
     char readChar () throws IOException {
         final int result = input.read();
-        if(result == LexerInput.EOF)
-            throw new IOException("LexerInput EOF");
+        if(result == LexerInput.EOF) {
+            input.backup(1);                                                // reading EOF counts as read character
+            throw EOF;
+        }
 
         return (char) result;
     }
+
+    /**
+     * End of the input. The exception carries no stack trace, so a single instance can be thrown by all streams.
+     */
+    private static final class EndOfInput extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        EndOfInput() {
+            super("LexerInput EOF");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+    }
 }
 
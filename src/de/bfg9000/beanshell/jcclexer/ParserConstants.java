@@ -283,6 +283,8 @@ public interface ParserConstants {
   int RUNSIGNEDSHIFTASSIGN = 128;
   /** RegularExpression Id. */
   int RUNSIGNEDSHIFTASSIGNX = 129;
+  /** RegularExpression Id. */
+  int ERROR = 130;
 
   /** Lexical state. */
   int DEFAULT = 0;
@@ -419,6 +421,7 @@ public interface ParserConstants {
     "\"@right_shift_assign\"",
     "\">>>=\"",
     "\"@right_unsigned_shift_assign\"",
+    "<ERROR>",
   };
 
 }
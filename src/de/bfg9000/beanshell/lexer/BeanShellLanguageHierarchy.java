@@ -26,11 +26,11 @@ import org.netbeans.spi.lexer.*;
  */
 public class BeanShellLanguageHierarchy extends LanguageHierarchy<BeanShellTokenId> {
 
-    private static List<BeanShellTokenId> tokens;
-    private static Map<Integer,BeanShellTokenId> idToToken;
+    private static final List<BeanShellTokenId> tokens = createTokens();
+    private static final BeanShellTokenId[] idToToken = createIdToToken(tokens);
 
-    private static void init() {
-        tokens = Arrays.<BeanShellTokenId> asList (new BeanShellTokenId[] {
+    private static List<BeanShellTokenId> createTokens() {
+        return Collections.unmodifiableList(Arrays.<BeanShellTokenId> asList (new BeanShellTokenId[] {
             new BeanShellTokenId("EOF", "whitespace", EOF),
             new BeanShellTokenId("WHITESPACE", "whitespace", WHITESPACE),
             new BeanShellTokenId("NONPRINTABLE", "whitespace", NONPRINTABLE),
@@ -160,28 +160,36 @@ public class BeanShellLanguageHierarchy extends LanguageHierarchy<BeanShellToken
             new BeanShellTokenId("RSIGNEDSHIFTASSIGN", "operator", RSIGNEDSHIFTASSIGN),
             new BeanShellTokenId("RSIGNEDSHIFTASSIGNX", "operator", RSIGNEDSHIFTASSIGNX),
             new BeanShellTokenId("RUNSIGNEDSHIFTASSIGN", "operator", RUNSIGNEDSHIFTASSIGN),
-            new BeanShellTokenId("RUNSIGNEDSHIFTASSIGNX", "operator", RUNSIGNEDSHIFTASSIGNX)
-        });
-        idToToken = new HashMap<Integer, BeanShellTokenId> ();
+            new BeanShellTokenId("RUNSIGNEDSHIFTASSIGNX", "operator", RUNSIGNEDSHIFTASSIGNX),
+            new BeanShellTokenId("ERROR", "errors", ERROR)
+        }));
+    }
+
+    /**
+     * @return the token ids indexed by their kind - the table is filled once during class initialization and never
+     *         modified afterwards, so it can be read without locking
+     */
+    private static BeanShellTokenId[] createIdToToken(List<BeanShellTokenId> tokens) {
+        int maxId = 0;
+        for(BeanShellTokenId token : tokens)
+            maxId = Math.max(maxId, token.ordinal());
+        final BeanShellTokenId[] result = new BeanShellTokenId[maxId +1];
         for(BeanShellTokenId token : tokens)
-            idToToken.put(token.ordinal(), token);
+            result[token.ordinal()] = token;
+        return result;
     }
 
-    static synchronized BeanShellTokenId getToken (int id) {
-        if(idToToken == null)
-            init();
-        return idToToken.get(id);
+    static BeanShellTokenId getToken (int id) {
+        return ((id >= 0) && (id < idToToken.length)) ? idToToken[id] : null;
     }
 
     @Override
-    protected synchronized Collection<BeanShellTokenId> createTokenIds () {
-        if(tokens == null)
-            init();
+    protected Collection<BeanShellTokenId> createTokenIds () {
         return tokens;
     }
 
     @Override
-    protected synchronized Lexer<BeanShellTokenId> createLexer(LexerRestartInfo<BeanShellTokenId> info) {
+    protected Lexer<BeanShellTokenId> createLexer(LexerRestartInfo<BeanShellTokenId> info) {
         return new BeanShellLexer(info);
     }
 
@@ -15,12 +15,12 @@
  */
 package de.bfg9000.beanshell.lexer;
 
+import de.bfg9000.beanshell.instrumentation.Probe;
 import de.bfg9000.beanshell.jcclexer.JavaCharStream;
 import de.bfg9000.beanshell.jcclexer.ParserTokenManager;
 import de.bfg9000.beanshell.jcclexer.Token;
 import org.netbeans.spi.lexer.Lexer;
 import org.netbeans.spi.lexer.LexerRestartInfo;
-import org.netbeans.spi.lexer.TokenFactory;
 
 /**
  * The BeanShell Script lexer
@@ -31,6 +31,8 @@ public class BeanShellLexer implements Lexer<BeanShellTokenId> {
 
     private LexerRestartInfo<BeanShellTokenId> info;
     private ParserTokenManager bshParserTokenManager;
+    private long nanos;
+    private int tokens;
 
     BeanShellLexer(LexerRestartInfo<BeanShellTokenId> info) {
         this.info = info;
@@ -41,22 +43,26 @@ public class BeanShellLexer implements Lexer<BeanShellTokenId> {
     @Override
     @SuppressWarnings("unchecked")
     public org.netbeans.api.lexer.Token<BeanShellTokenId> nextToken () {
-        try {
-            Token token = bshParserTokenManager.getNextToken();
-            if(info.input().readLength () < 1) return null;
-            return info.tokenFactory().createToken(BeanShellLanguageHierarchy.getToken(token.kind));
-        } catch(Throwable t) {
-            // In case of invalid input: ignore the current token
-            return TokenFactory.SKIP_TOKEN;
-        }
+        final long start = Probe.start();
+        // Malformed input is reported as ERROR token - the token manager does not throw on invalid input
+        final Token token = bshParserTokenManager.getNextToken();
+        final org.netbeans.api.lexer.Token<BeanShellTokenId> result = (info.input().readLength () < 1) ? null :
+            info.tokenFactory().createToken(BeanShellLanguageHierarchy.getToken(token.kind));
+        nanos += Probe.elapsed(start);
+        if(null != result)
+            tokens++;
+        return result;
     }
 
     @Override
     public Object state () {
-        return null;
+        return null;                        // bsh.jj has only the DEFAULT lexical state - comments are single tokens
     }
 
     @Override
-    public void release () { }
+    public void release () {
+        if(tokens > 0)
+            Probe.LEXER.recordNanos(nanos, tokens);
+    }
 
 }
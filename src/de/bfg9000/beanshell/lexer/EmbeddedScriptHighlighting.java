@@ -0,0 +1,167 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Document;
+import org.netbeans.api.editor.mimelookup.MimeLookup;
+import org.netbeans.api.editor.mimelookup.MimePath;
+import org.netbeans.api.editor.settings.FontColorSettings;
+import org.netbeans.api.lexer.Token;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenHierarchyEvent;
+import org.netbeans.api.lexer.TokenHierarchyListener;
+import org.netbeans.api.lexer.TokenSequence;
+import org.netbeans.spi.editor.highlighting.HighlightsSequence;
+import org.netbeans.spi.editor.highlighting.support.AbstractHighlightsContainer;
+import org.netbeans.spi.editor.highlighting.support.OffsetsBag;
+import org.openide.util.WeakListeners;
+
+/**
+ * Highlights BeanShell snippets within Java string literals and within the values of properties files. Only sections
+ * that start with the {@link #MARKER} are highlighted, like {@code "/*bsh*&#47; print(name);"}.
+ *
+ * <p>The snippets are lexed by the {@code BeanShellLexer} when the editor asks for the highlights of the visible part
+ * of a document - so the snippets of a large file are not lexed when the file is opened. Tokens of the host language
+ * without the marker are rejected after comparing a few characters.</p>
+ *
+ * <p>The host languages already embed languages into these tokens (Java strings) or cache the first negative answer
+ * of a {@code LanguageProvider} for a token id, so the snippets are lexed in a {@code TokenHierarchy} of their own
+ * instead of an embedding of the document's hierarchy.</p>
+ *
+ * @author Thomas Werner
+ */
+public class EmbeddedScriptHighlighting extends AbstractHighlightsContainer implements TokenHierarchyListener {
+
+    public static final String MARKER = "/*bsh*/";
+
+    static final String JAVA_MIME_TYPE = "text/x-java";
+    static final String PROPERTIES_MIME_TYPE = "text/x-properties";
+
+    private final Document document;
+    private final String mimeType;
+    private final TokenHierarchy<Document> hierarchy;
+
+    public EmbeddedScriptHighlighting(Document document, String mimeType) {
+        this.document = document;
+        this.mimeType = mimeType;
+        this.hierarchy = TokenHierarchy.get(document);
+        hierarchy.addTokenHierarchyListener(WeakListeners.create(TokenHierarchyListener.class, this, hierarchy));
+    }
+
+    @Override
+    public HighlightsSequence getHighlights(int startOffset, int endOffset) {
+        final TokenSequence<?> sequence = hierarchy.isActive() ? hierarchy.tokenSequence() : null;
+        if(null == sequence)
+            return HighlightsSequence.EMPTY;
+
+        final List<Section> sections = findSections(sequence, mimeType, startOffset, endOffset);
+        final FontColorSettings colors = MimeLookup.getLookup(MimePath.get(BeanShellTokenId.getLanguage().mimeType()))
+                                                   .lookup(FontColorSettings.class);
+        if(sections.isEmpty() || (null == colors))
+            return HighlightsSequence.EMPTY;
+
+        final OffsetsBag result = new OffsetsBag(document);
+        for(Section section: sections) {
+            final TokenSequence<BeanShellTokenId> tokens = section.tokenSequence();
+            while(tokens.moveNext()) {
+                final String category = tokens.token().id().primaryCategory();
+                final AttributeSet attributes = "whitespace".equals(category) ? null
+                                                                              : colors.getTokenFontColors(category);
+                if(null != attributes)
+                    result.addHighlight(section.offset +tokens.offset(),
+                                        section.offset +tokens.offset() +tokens.token().length(), attributes);
+            }
+        }
+        return result.getHighlights(startOffset, endOffset);
+    }
+
+    @Override
+    public void tokenHierarchyChanged(TokenHierarchyEvent evt) {
+        fireHighlightsChange(evt.affectedStartOffset(), evt.affectedEndOffset());
+    }
+
+    /**
+     * @param sequence the top level tokens of a Java source or a properties file
+     * @param mimeType the mime type of the host language
+     * @return the snippets that overlap the given range
+     */
+    static List<Section> findSections(TokenSequence<?> sequence, String mimeType, int startOffset, int endOffset) {
+        final List<Section> result = new ArrayList<Section>();
+        sequence.move(startOffset);
+        while(sequence.moveNext() && (sequence.offset() < endOffset)) {
+            final Token<?> token = sequence.token();
+            final int startSkip = getStartSkip(mimeType, token);
+            if(-1 == startSkip)
+                continue;
+            final CharSequence text = token.text();
+            final int endSkip = (startSkip > 0) && (text.length() > startSkip +MARKER.length()) &&
+                                ('"' == text.charAt(text.length() -1)) ? 1 : 0;
+            result.add(new Section(sequence.offset() +startSkip, text.subSequence(startSkip, text.length() -endSkip)));
+        }
+        return result;
+    }
+
+    /**
+     * @return the offset of the snippet within the given token - or -1 if the token does not contain a snippet
+     */
+    static int getStartSkip(String mimeType, Token<?> token) {
+        final String name = token.id().name();
+        if(JAVA_MIME_TYPE.equals(mimeType) && "STRING_LITERAL".equals(name))
+            return hasMarker(token.text(), 1) ? 1 : -1;
+        if(PROPERTIES_MIME_TYPE.equals(mimeType) && "VALUE".equals(name))
+            return hasMarker(token.text(), 0) ? 0 : -1;
+        return -1;
+    }
+
+    /**
+     * @return {@code true} if the {@link #MARKER} starts at the given index of the text
+     */
+    static boolean hasMarker(CharSequence text, int index) {
+        if((null == text) || (text.length() < index +MARKER.length()))
+            return false;
+        for(int i=0; i<MARKER.length(); i++)
+            if(text.charAt(index +i) != MARKER.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * A BeanShell snippet within a token of the host language.
+     */
+    static final class Section {
+
+        final int offset;
+        final CharSequence text;
+
+        Section(int offset, CharSequence text) {
+            this.offset = offset;
+            this.text = text;
+        }
+
+        /**
+         * @return the BeanShell tokens of the snippet - lexed on each call
+         */
+        TokenSequence<BeanShellTokenId> tokenSequence() {
+            return TokenHierarchy.create(text, BeanShellTokenId.getLanguage())
+                                 .tokenSequence(BeanShellTokenId.getLanguage());
+        }
+
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.lexer;
+
+import org.netbeans.api.editor.mimelookup.MimeRegistration;
+import org.netbeans.api.editor.mimelookup.MimeRegistrations;
+import org.netbeans.spi.editor.highlighting.HighlightsLayer;
+import org.netbeans.spi.editor.highlighting.HighlightsLayerFactory;
+import org.netbeans.spi.editor.highlighting.ZOrder;
+
+/**
+ * Adds the highlighting of embedded BeanShell snippets to the editors of Java sources and properties files.
+ *
+ * @author Thomas Werner
+ */
+@MimeRegistrations({
+    @MimeRegistration(mimeType = EmbeddedScriptHighlighting.JAVA_MIME_TYPE, service = HighlightsLayerFactory.class),
+    @MimeRegistration(mimeType = EmbeddedScriptHighlighting.PROPERTIES_MIME_TYPE,
+                      service = HighlightsLayerFactory.class)
+})
+public class EmbeddedScriptHighlightsLayerFactory implements HighlightsLayerFactory {
+
+    @Override
+    public HighlightsLayer[] createLayers(Context context) {
+        final Object mimeType = context.getDocument().getProperty("mimeType");
+        if(!(mimeType instanceof String))
+            return new HighlightsLayer[0];
+
+        return new HighlightsLayer[] {
+            HighlightsLayer.create(EmbeddedScriptHighlighting.class.getName(), ZOrder.SYNTAX_RACK.forPosition(100),
+                                   true, new EmbeddedScriptHighlighting(context.getDocument(), (String) mimeType))
+        };
+    }
+
+}
@@ -15,7 +15,8 @@
  */
 package de.bfg9000.beanshell.navigator;
 
-import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import de.bfg9000.beanshell.parser.ParseService;
 import java.awt.BorderLayout;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -24,32 +25,43 @@ import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
 import javax.swing.text.JTextComponent;
 import org.netbeans.spi.navigator.NavigatorPanel;
 import org.openide.explorer.ExplorerManager;
 import org.openide.explorer.ExplorerUtils;
 import org.openide.explorer.view.BeanTreeView;
 import org.openide.nodes.AbstractNode;
-import org.openide.nodes.Children;
 import org.openide.util.Lookup;
+import org.openide.util.RequestProcessor;
 
 /**
  * A JPanel based component that can be used as NavigatorPanel (Navigator API). The panel displays the structure of a
  * BeanShell script currently opened in the editor.
  * 
+ * <p>The script is parsed in the background, a moment after the last modification. Then the nodes are updated on the 
+ * event dispatch thread: only the nodes of added or removed infos are changed, so the expansion state is kept. The
+ * methods and classes are collapsed initially - the body of a method is parsed when its node is expanded (see
+ * {@link NodeFactory}).</p>
+ * 
  * @author Thomas Werner
  */
 public class BeanShellNavigatorPanel extends JPanel implements NavigatorPanel, ExplorerManager.Provider {
     
     private static final long serialVersionUID = 1L;
+    private static final int REFRESH_DELAY = 500;
+    private static final RequestProcessor refreshProcessor = new RequestProcessor("BeanShell Navigator", 1);
 
     private final ExplorerManager manager;
     private final BeanTreeView beanTreeView;
     private final DocumentChangeListener documentListener;
     private final Lookup lookup;
+    private final RequestProcessor.Task refreshTask;
     
     private Timer lookupTimer;
-    private JTextComponent connectedTextComponent;
+    private volatile JTextComponent connectedTextComponent;
+    private JTextComponent rootComponent;
+    private NodeFactory rootChildren;
     
     public BeanShellNavigatorPanel() {
         setLayout(new BorderLayout());
@@ -62,6 +74,7 @@ public class BeanShellNavigatorPanel extends JPanel implements NavigatorPanel, E
         add(beanTreeView, BorderLayout.CENTER);
         
         documentListener = new DocumentChangeListener();
+        refreshTask = refreshProcessor.create(new RefreshTask());
     }
     
     @Override
@@ -96,6 +109,7 @@ public class BeanShellNavigatorPanel extends JPanel implements NavigatorPanel, E
     @Override
     public void panelDeactivated() { 
         stopLookupTimer();
+        refreshTask.cancel();
             
         if(null != connectedTextComponent)
             connectedTextComponent.getDocument().removeDocumentListener(documentListener);        
@@ -113,10 +127,27 @@ public class BeanShellNavigatorPanel extends JPanel implements NavigatorPanel, E
     }
     
     private void updateContent() {
-        final String script = null != connectedTextComponent ? connectedTextComponent.getText() : "";        
-        final NodeFactory factory = new NodeFactory(new BshParserConnector().parse(script), connectedTextComponent);
-        manager.setRootContext(new AbstractNode(Children.create(factory, false)));
-        beanTreeView.expandAll();
+        refreshTask.schedule(0);
+    }
+    
+    /**
+     * Shows the structure of a script. The nodes are updated if the script is still shown - they are replaced if the 
+     * navigator has been connected to another editor meanwhile.
+     * 
+     * @param component the editor of the script
+     * @param scriptInfo the structure of the script
+     */
+    private void showContent(JTextComponent component, BshScriptInfo scriptInfo) {
+        if(component != connectedTextComponent)
+            return;
+        
+        if((component == rootComponent) && (null != rootChildren)) {
+            rootChildren.update(scriptInfo);
+        } else {
+            rootComponent = component;
+            rootChildren = new NodeFactory(scriptInfo, component);
+            manager.setRootContext(new AbstractNode(rootChildren));
+        }
     }
     
     private void startLookupTimer() {
@@ -144,14 +175,34 @@ public class BeanShellNavigatorPanel extends JPanel implements NavigatorPanel, E
         }
     }
  
+    /**
+     * Parses the current script and passes the result to the event dispatch thread.
+     */
+    private final class RefreshTask implements Runnable {
+        
+        @Override
+        public void run() {
+            final JTextComponent component = connectedTextComponent;
+            if(null == component)
+                return;
+            
+            final Document document = component.getDocument();
+            final BshScriptInfo scriptInfo = ParseService.getDefault().getScriptInfo(document);
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    showContent(component, scriptInfo);
+                }
+            });
+        }
+        
+    }
+    
     /**
      * Listens for modifications of the current script and updates the nodes of the navigator.
      */
     private final class DocumentChangeListener implements DocumentListener {
         
-        private volatile long lastUpdate = 0;
-        private final Timer delayTimer = new Timer();
-        
         @Override
         public void insertUpdate(DocumentEvent e) {
             modificationHappened();
@@ -167,20 +218,8 @@ public class BeanShellNavigatorPanel extends JPanel implements NavigatorPanel, E
             modificationHappened();
         }
         
-        private void modificationHappened() {            
-            lastUpdate = System.currentTimeMillis();
-            delayTimer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    if(System.currentTimeMillis() -lastUpdate >= 500)
-                        SwingUtilities.invokeLater(new Runnable() {
-                            @Override
-                            public void run() {
-                                updateContent();
-                            }
-                        });
-                }
-            }, 500);
+        private void modificationHappened() {
+            refreshTask.schedule(REFRESH_DELAY);
         }
         
     }
@@ -15,12 +15,14 @@
  */
 package de.bfg9000.beanshell.navigator;
 
+import bsh.BshInfo;
 import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
 import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.text.Element;
 import javax.swing.text.JTextComponent;
 import org.openide.nodes.AbstractNode;
 import org.openide.nodes.Children;
@@ -49,31 +51,24 @@ abstract class BeanShellNode extends AbstractNode {
     public Action getPreferredAction() {
         return new AbstractAction() {
             @Override
-            public void actionPerformed(ActionEvent e) {                
-                final String text = connectedComponent.getText();
-                int cr = 0;
-                int line = 1;
-                int position = 0;
-                while(position < text.length()) {
-                    if(getLineNumber() == line) {
-                        connectedComponent.setCaretPosition(position -cr);
-                        return;
-                    }
-
-                    if(text.charAt(position) == '\n')
-                        line++;
-
-                    if(text.charAt(position) == '\r')
-                        cr++;
-
-                    position++;                                
-                }
+            public void actionPerformed(ActionEvent e) {
+                final Element root = connectedComponent.getDocument().getDefaultRootElement();
+                final int index = getLineNumber() -1;
+                if((index >= 0) && (index < root.getElementCount()))
+                    connectedComponent.setCaretPosition(root.getElement(index).getStartOffset());
             }
         };
     }
     
     public abstract int getLineNumber();
     
+    /**
+     * Replaces the info of this node by the version of a new parse.
+     * 
+     * @param info an info with the same kind and display name
+     */
+    abstract void update(BshInfo info);
+    
     protected Image loadIcon(String path) {
         try {
             return ImageIO.read(getClass().getResource(path));
@@ -15,10 +15,10 @@
  */
 package de.bfg9000.beanshell.navigator;
 
+import bsh.BshInfo;
 import bsh.BshMethodInfo;
 import java.awt.Image;
 import javax.swing.text.JTextComponent;
-import org.openide.nodes.Children;
 
 /**
  * Node that represents a method.
@@ -27,9 +27,9 @@ import org.openide.nodes.Children;
  */
 class MethodNode extends BeanShellNode {    
     
-    private final BshMethodInfo method;
+    private BshMethodInfo method;
 
-    public MethodNode(BshMethodInfo method, Children children, JTextComponent connectedComponent) {
+    public MethodNode(BshMethodInfo method, NodeFactory children, JTextComponent connectedComponent) {
         super(children, connectedComponent);
         this.method = method;
         
@@ -51,6 +51,14 @@ class MethodNode extends BeanShellNode {
         return method.getLineNumber();
     }
     
+    @Override
+    void update(BshInfo info) {
+        method = (BshMethodInfo) info;
+        setDisplayName(buildDisplayName());
+        fireIconChange();
+        ((NodeFactory) getChildren()).update(method);
+    }
+    
     private String buildDisplayName() {
         return method.toString();
     }
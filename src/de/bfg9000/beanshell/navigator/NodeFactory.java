@@ -19,34 +19,102 @@ import bsh.BshInfo;
 import bsh.BshInfoContainer;
 import bsh.BshMethodInfo;
 import bsh.BshVariableInfo;
+import de.bfg9000.beanshell.instrumentation.Probe;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import javax.swing.SwingUtilities;
 import javax.swing.text.JTextComponent;
-import org.openide.nodes.ChildFactory;
 import org.openide.nodes.Children;
 import org.openide.nodes.Node;
+import org.openide.util.RequestProcessor;
 
 /**
+ * The children of a node in the navigator. The content can be replaced by the result of a new parse: the keys are 
+ * compared and only the nodes of added infos are created - the nodes of infos that are still present are kept 
+ * (together with their expansion state) and get the new info.
+ * 
+ * <p>The keys are created when the children are shown, i.e. when the parent node is expanded. The body of a method or
+ * class that has not been parsed yet (see {@link BshInfoContainer#isLoaded}) is parsed in the background first - the
+ * previous keys are shown meanwhile.</p>
  *
  * @author Thomas Werner
  */
-class NodeFactory extends ChildFactory<BshInfo> {
+class NodeFactory extends Children.Keys<NodeFactory.Key> {
+
+    private static final RequestProcessor loadProcessor = new RequestProcessor("BeanShell Navigator Bodies", 1);
 
-    private final BshInfoContainer bshInfoContainer;
     private final JTextComponent connectedComponent;
+    private final java.util.Map<Key, BeanShellNode> nodes = new HashMap<Key, BeanShellNode>();
+    private BshInfoContainer bshInfoContainer;
+    private boolean active;
     
     public NodeFactory(BshInfoContainer bshInfoContainer, JTextComponent connectedComponent) {
         this.bshInfoContainer = bshInfoContainer;
         this.connectedComponent = connectedComponent;
     }
     
+    /**
+     * Shows the content of the given container. Must be called from the event dispatch thread.
+     * 
+     * @param container the new version of the container
+     */
+    void update(BshInfoContainer container) {
+        bshInfoContainer = container;
+        if(active)
+            refreshKeys();
+    }
+    
+    @Override
+    protected void addNotify() {
+        active = true;
+        refreshKeys();
+    }
+    
     @Override
-    protected boolean createKeys(List<BshInfo> toPopulate) {
+    protected void removeNotify() {
+        active = false;
+        setKeys(Collections.<Key>emptyList());
+    }
+    
+    private void refreshKeys() {
+        final BshInfoContainer container = bshInfoContainer;
+        if(!container.isLoaded()) {
+            loadProcessor.post(new Runnable() {
+                @Override
+                public void run() {
+                    container.getMethods();
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(active && (container == bshInfoContainer))
+                                refreshKeys();
+                        }
+                    });
+                }
+            });
+            return;
+        }
+        
+        final List<Key> keys = createKeys(bshInfoContainer);
+        setKeys(keys);
+        for(Key key: keys) {
+            final BeanShellNode node = nodes.get(key);
+            if(null != node)
+                node.update(key.info);
+        }
+    }
+    
+    private static List<Key> createKeys(BshInfoContainer bshInfoContainer) {
+        final long start = Probe.start();
         final List<BshMethodInfo> classes = bshInfoContainer.getClasses();
         final List<BshMethodInfo> methods = bshInfoContainer.getMethods();
-        final List<BshVariableInfo> variables = bshInfoContainer.getVariables();        
+        final List<BshVariableInfo> variables = new LinkedList<BshVariableInfo>(bshInfoContainer.getVariables());
+        final List<BshInfo> infos = new ArrayList<BshInfo>(methods.size() +variables.size());
         
         // Filter methods (to remove classes), then sort and add them
         final List<BshMethodInfo> methodsToAdd = new LinkedList<BshMethodInfo>(methods);
@@ -55,32 +123,92 @@ class NodeFactory extends ChildFactory<BshInfo> {
             if(classes.contains(iterator.next()))
                 iterator.remove();
         Collections.sort(methodsToAdd, new BshMethodInfo.Comparator());
-        toPopulate.addAll(methodsToAdd);
+        infos.addAll(methodsToAdd);
         
         // Sort variables and add them
         if((!(bshInfoContainer instanceof BshMethodInfo)) || ((BshMethodInfo) bshInfoContainer).isClass()) {
             Collections.sort(variables, new BshVariableInfo.Comparator());
-            toPopulate.addAll(variables);
+            infos.addAll(variables);
         }
         
         // Sort classes and add them
         Collections.sort(classes, new BshMethodInfo.Comparator());
-        toPopulate.addAll(classes);
+        infos.addAll(classes);
+        
+        // Infos with the same name are told apart by their order
+        final List<Key> result = new ArrayList<Key>(infos.size());
+        final java.util.Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for(BshInfo info: infos) {
+            final String name = info.toString();
+            final Integer occurrence = occurrences.get(name);
+            final int index = (null == occurrence) ? 0 : occurrence +1;
+            occurrences.put(name, index);
+            result.add(new Key(info, name, index));
+        }
         
-        return true;
+        Probe.NAVIGATOR.record(start, result.size());
+        return result;
     }
     
     @Override
-    protected Node createNodeForKey(BshInfo key) {
-        if(key instanceof BshMethodInfo) {
-            final ChildFactory<BshInfo> factory = new NodeFactory((BshMethodInfo) key, connectedComponent);
-            return new MethodNode((BshMethodInfo) key, Children.create(factory, false), connectedComponent);
-        }
+    protected Node[] createNodes(Key key) {
+        final BeanShellNode node = createNodeForKey(key.info);
+        if(null == node)
+            return null;
         
-        if(key instanceof BshVariableInfo)
-            return new VariableNode((BshVariableInfo) key, connectedComponent);
+        nodes.put(key, node);
+        return new Node[] { node };
+    }
+    
+    @Override
+    protected void destroyNodes(Node[] destroyed) {
+        nodes.values().removeAll(Arrays.asList(destroyed));
+    }
+    
+    private BeanShellNode createNodeForKey(BshInfo info) {
+        if(info instanceof BshMethodInfo)
+            return new MethodNode((BshMethodInfo) info, new NodeFactory((BshMethodInfo) info, connectedComponent), 
+                                  connectedComponent);
+        
+        if(info instanceof BshVariableInfo)
+            return new VariableNode((BshVariableInfo) info, connectedComponent);
         
         return null;
     }
     
+    /**
+     * Identifies the node of an info across parses: by the kind and the display name of the info - but not by its 
+     * position.
+     */
+    static final class Key {
+        
+        private final BshInfo info;
+        private final String name;
+        private final int occurrence;
+        private final boolean clazz;
+        
+        Key(BshInfo info, String name, int occurrence) {
+            this.info = info;
+            this.name = name;
+            this.occurrence = occurrence;
+            this.clazz = (info instanceof BshMethodInfo) && ((BshMethodInfo) info).isClass();
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Key))
+                return false;
+            
+            final Key other = (Key) obj;
+            return (info.getClass() == other.info.getClass()) && (clazz == other.clazz) && 
+                   (occurrence == other.occurrence) && name.equals(other.name);
+        }
+        
+        @Override
+        public int hashCode() {
+            return name.hashCode() *31 +occurrence;
+        }
+        
+    }
+    
 }
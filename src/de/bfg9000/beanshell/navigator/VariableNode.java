@@ -15,6 +15,7 @@
  */
 package de.bfg9000.beanshell.navigator;
 
+import bsh.BshInfo;
 import bsh.BshVariableInfo;
 import java.awt.Image;
 import javax.swing.text.JTextComponent;
@@ -27,7 +28,7 @@ import org.openide.nodes.Children;
  */
 class VariableNode extends BeanShellNode {
     
-    private final BshVariableInfo variable;
+    private BshVariableInfo variable;
 
     public VariableNode(BshVariableInfo variable, JTextComponent connectedComponent) {
         super(Children.LEAF, connectedComponent);
@@ -45,5 +46,12 @@ class VariableNode extends BeanShellNode {
     public int getLineNumber() {
         return variable.getLineNumber();
     }
+    
+    @Override
+    void update(BshInfo info) {
+        variable = (BshVariableInfo) info;
+        setDisplayName(variable.toString());
+        fireIconChange();
+    }
 
 }
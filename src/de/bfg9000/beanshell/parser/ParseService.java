@@ -0,0 +1,387 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.parser;
+
+import bsh.BshCancellation;
+import bsh.BshIncrementalParser;
+import bsh.BshScriptInfo;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * Parses the BeanShell documents that are opened in the editor. The result of a parse is shared by all consumers
+ * (navigator, code completion, ...) as long as the document is not modified. Consumers must not modify the returned
+ * {@code BshScriptInfo}.
+ *
+ * <p>Each document is parsed incrementally, in outline mode: the bodies of top-level methods and classes are parsed
+ * when their content is requested for the first time (by expanding a node in the navigator or by the code completion).
+ * Syntax errors within those bodies are not reported. Concurrent requests for the same version of a document wait for
+ * a single parse. The number of documents that are tracked is limited - the least recently used document is dropped
+ * first. Documents are referenced weakly, so a closed document is dropped as soon as it is collected.</p>
+ *
+ * <p>A parse may be cancelled by the consumer that requested it. The partial result of a cancelled parse is returned
+ * to that consumer only - it is not shared, and the other consumers that waited for it parse the document again. A
+ * consumer that is cancelled while it waits for the parse of another consumer gets the last complete result, marked
+ * as incomplete.</p>
+ *
+ * <p>The code completion uses a parse of its own (see {@link #getCompletionInfo(Document, int, BshCancellation)}): the
+ * line of the caret is left out and the bodies are parsed completely.</p>
+ *
+ * @author Thomas Werner
+ */
+public final class ParseService {
+
+    private static final Logger logger = Logger.getLogger(ParseService.class.getName());
+    private static final int MAX_DOCUMENTS = 8;
+    private static final long WAIT_INTERVAL = 50;
+    private static final ParseService instance = new ParseService();
+
+    private final ReferenceQueue<Document> collected = new ReferenceQueue<Document>();
+    private final Map<DocumentKey, DocumentEntry> entries = 
+            new LinkedHashMap<DocumentKey, DocumentEntry>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DocumentKey, DocumentEntry> eldest) {
+            if(size() <= MAX_DOCUMENTS)
+                return false;
+
+            eldest.getValue().dispose();
+            return true;
+        }
+
+    };
+
+    private ParseService() { }
+
+    public static ParseService getDefault() {
+        return instance;
+    }
+
+    /**
+     * Returns the structure of the given document. The document is only parsed if it has been modified since the last
+     * call.
+     *
+     * @param document a BeanShell document
+     * @return a {@code BshScriptInfo} object describing the current version of the document
+     */
+    public BshScriptInfo getScriptInfo(Document document) {
+        return getScriptInfo(document, BshCancellation.NONE);
+    }
+
+    /**
+     * Returns the structure of the given document, like {@link #getScriptInfo(Document)}. If the parse is cancelled,
+     * the returned {@code BshScriptInfo} is not {@link BshScriptInfo#isComplete() complete}.
+     *
+     * @param document a BeanShell document
+     * @param cancellation tells the parser to stop
+     * @return a {@code BshScriptInfo} object describing the current version of the document
+     */
+    public BshScriptInfo getScriptInfo(Document document, BshCancellation cancellation) {
+        try {
+            return getEntry(document).getScriptInfo(cancellation);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException ex) {
+            logger.log(Level.WARNING, null, ex.getCause());
+        }
+        return new BshScriptInfo();
+    }
+
+    /**
+     * Returns the structure of the given document for the code completion. The line of the caret is almost always an
+     * incomplete statement - it would hide the declarations of the surrounding method or the following statements, so
+     * it is left out. The other lines are parsed incrementally and the result is not shared.
+     *
+     * @param document a BeanShell document
+     * @param line the line of the caret (starting with 1)
+     * @param cancellation tells the parser to stop
+     * @return a {@code BshScriptInfo} object describing the current version of the document without the given line
+     */
+    public BshScriptInfo getCompletionInfo(Document document, int line, BshCancellation cancellation) {
+        try {
+            return getEntry(document).getCompletionInfo(line, cancellation);
+        } catch(BadLocationException ex) {
+            logger.log(Level.WARNING, null, ex);
+        }
+        return new BshScriptInfo();
+    }
+
+    /**
+     * @param text a script
+     * @param line a line of the script (starting with 1)
+     * @return the script with the characters of the given line replaced by blanks - the positions of the other
+     *         characters do not change
+     */
+    static String blankLine(String text, int line) {
+        int begin = 0;
+        for(int i=1; (i < line) && (begin >= 0); i++) {
+            begin = text.indexOf('\n', begin);
+            begin = (begin < 0) ? -1 : begin +1;
+        }
+        if(begin < 0)
+            return text;
+
+        final char[] chars = text.toCharArray();
+        for(int i=begin; (i < chars.length) && ('\n' != chars[i]) && ('\r' != chars[i]); i++)
+            chars[i] = ' ';
+        return new String(chars);
+    }
+
+    private synchronized DocumentEntry getEntry(Document document) {
+        for(Reference<? extends Document> key = collected.poll(); null != key; key = collected.poll())
+            entries.remove((DocumentKey) key);
+
+        DocumentEntry entry = entries.get(new DocumentKey(document, null));
+        if(null == entry) {
+            final DocumentKey key = new DocumentKey(document, collected);
+            entry = new DocumentEntry(key);
+            document.addDocumentListener(entry);
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of documents that are tracked
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * A weak reference to a document that compares the referenced documents by identity.
+     */
+    private static final class DocumentKey extends WeakReference<Document> {
+
+        private final int hash;
+
+        DocumentKey(Document document, ReferenceQueue<Document> queue) {
+            super(document, queue);
+            hash = System.identityHashCode(document);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof DocumentKey))
+                return false;
+
+            final Document document = get();
+            return (null != document) && (document == ((DocumentKey) obj).get());
+        }
+
+    }
+
+    /**
+     * Keeps track of the modifications and the last parse result of a single document. The entry is a listener of the
+     * document, so it must not reference the document strongly.
+     */
+    private static final class DocumentEntry implements DocumentListener {
+
+        private final DocumentKey document;
+        private final BshIncrementalParser parser = new BshIncrementalParser(true);
+        private final BshIncrementalParser completionParser = new BshIncrementalParser();
+
+        private long version;
+        private BshScriptInfo result;
+        private long resultVersion = -1;
+        private FutureTask<BshScriptInfo> pending;
+        private long pendingVersion = -1;
+
+        DocumentEntry(DocumentKey document) {
+            this.document = document;
+        }
+
+        void dispose() {
+            final Document referent = document.get();
+            if(null != referent)
+                referent.removeDocumentListener(this);
+        }
+
+        BshScriptInfo getScriptInfo(BshCancellation cancellation) throws InterruptedException, ExecutionException {
+            while(true) {
+                final FutureTask<BshScriptInfo> task;
+                boolean owner = false;
+                synchronized(this) {
+                    if((null != result) && (resultVersion == version))
+                        return result;
+
+                    if((null == pending) || (pendingVersion != version)) {
+                        pending = new FutureTask<BshScriptInfo>(new ParseTask(cancellation));
+                        pendingVersion = version;
+                        owner = true;
+                    }
+                    task = pending;
+                }
+
+                if(owner)
+                    task.run();
+                final BshScriptInfo scriptInfo;
+                try {
+                    scriptInfo = await(task, cancellation);
+                } catch(ExecutionException ex) {
+                    discard(task);
+                    throw ex;
+                }
+                if(null == scriptInfo)
+                    return getLastResult().asIncomplete();
+                if(!scriptInfo.isComplete())
+                    discard(task);
+                if(scriptInfo.isComplete() || cancellation.isCancelled())
+                    return scriptInfo;
+            }
+        }
+
+        /**
+         * @return the result of the given task - or {@code null} if the cancellation is cancelled before the task is
+         *         done
+         */
+        private BshScriptInfo await(FutureTask<BshScriptInfo> task, BshCancellation cancellation)
+                throws InterruptedException, ExecutionException {
+            while(true)
+                try {
+                    return task.get(WAIT_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch(TimeoutException ex) {
+                    if(cancellation.isCancelled())
+                        return null;
+                }
+        }
+
+        private synchronized BshScriptInfo getLastResult() {
+            return (null == result) ? new BshScriptInfo() : result;
+        }
+
+        BshScriptInfo getCompletionInfo(int line, BshCancellation cancellation) throws BadLocationException {
+            final Document referent = document.get();
+            if(null == referent)
+                return new BshScriptInfo();
+
+            final String[] text = new String[1];
+            final BadLocationException[] failure = new BadLocationException[1];
+            referent.render(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        text[0] = referent.getText(0, referent.getLength());
+                    } catch(BadLocationException ex) {
+                        failure[0] = ex;
+                    }
+                }
+            });
+            if(null != failure[0])
+                throw failure[0];
+            return completionParser.parse(blankLine(text[0], line), cancellation);
+        }
+
+        /**
+         * Drops the given task, if it has been cancelled or failed - the next request parses the document again.
+         */
+        private synchronized void discard(FutureTask<BshScriptInfo> task) {
+            if(pending == task)
+                pending = null;
+        }
+
+        private synchronized long getVersion() {
+            return version;
+        }
+
+        private synchronized void setResult(BshScriptInfo scriptInfo, long scriptVersion) {
+            if(scriptInfo.isComplete() && (scriptVersion >= resultVersion)) {
+                result = scriptInfo;
+                resultVersion = scriptVersion;
+            }
+        }
+
+        private synchronized void modified() {
+            version++;
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            modified();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            modified();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) { }
+
+        /**
+         * Reads the document and parses it. Text and version are read under the document lock, so they match.
+         */
+        private final class ParseTask implements Callable<BshScriptInfo> {
+
+            private final BshCancellation cancellation;
+            private String text;
+            private long textVersion;
+
+            ParseTask(BshCancellation cancellation) {
+                this.cancellation = cancellation;
+            }
+
+            @Override
+            public BshScriptInfo call() throws Exception {
+                final Document referent = document.get();
+                if(null == referent)
+                    return new BshScriptInfo();
+
+                referent.render(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            textVersion = getVersion();
+                            text = referent.getText(0, referent.getLength());
+                        } catch(BadLocationException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                });
+
+                final BshScriptInfo scriptInfo = parser.parse(text, cancellation);
+                setResult(scriptInfo, textVersion);
+                return scriptInfo;
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+/**
+ * Compares the parse time of a script with the parse time of a copy that contains a syntax error in every tenth
+ * scripted class - the parser resynchronizes at the next statement after each error. Run with the test classpath:
+ * {@code java bsh.ErrorRecoveryBenchmark [methods]}
+ *
+ * @author Thomas Werner
+ */
+public class ErrorRecoveryBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        final int methods = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        final String script = ParserConnectorBenchmark.buildScript(methods);
+        final String brokenScript = breakScript(script);
+
+        long time = 0;
+        long brokenTime = 0;
+        int errors = 0;
+        for(int i=0; i<ROUNDS; i++) {
+            long start = System.nanoTime();
+            new BshParserConnector().parse(script);
+            time += System.nanoTime() -start;
+
+            start = System.nanoTime();
+            errors = new BshParserConnector().parse(brokenScript).getErrors().size();
+            brokenTime += System.nanoTime() -start;
+        }
+
+        System.out.println("script:         " +script.length() +" chars, " +methods +" methods");
+        System.out.println("parse time:     " +(time /ROUNDS /1000) +" us");
+        System.out.println("broken script:  " +(brokenTime /ROUNDS /1000) +" us (" +errors +" errors)");
+    }
+
+    /**
+     * @return a copy of the given script with a syntax error in every tenth scripted class
+     */
+    static String breakScript(String script) {
+        final String statement = "    List items = new ArrayList();\n";
+        final StringBuilder result = new StringBuilder(script.length());
+        int index = 0;
+        int count = 0;
+        while(true) {
+            final int found = script.indexOf(statement, index);
+            if(-1 == found)
+                break;
+            result.append(script, index, found);
+            result.append(0 == count++ % 10 ? "    List items = new ArrayList(;\n" : statement);
+            index = found +statement.length();
+        }
+        result.append(script, index, script.length());
+        return result.toString();
+    }
+
+}
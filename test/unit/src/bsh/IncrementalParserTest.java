@@ -0,0 +1,140 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.InputStream;
+import java.util.Scanner;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class IncrementalParserTest {
+
+    /**
+     * Each edit is parsed incrementally and compared with the result of a complete parse of the same text.
+     */
+    @Test
+    public void testEditsMatchCompleteParse() throws Exception {
+        assertEditsParsedLikeComplete(new BshIncrementalParser());
+    }
+
+    /**
+     * The bodies that are skipped in outline mode are gathered on demand - with the same result.
+     */
+    @Test
+    public void testOutlineEditsMatchCompleteParse() throws Exception {
+        assertEditsParsedLikeComplete(new BshIncrementalParser(true));
+    }
+
+    private void assertEditsParsedLikeComplete(BshIncrementalParser iParser) {
+        final String script = readScript("/bsh/scripts/cascadedDeclaration.bsh");
+        assertParsedLikeComplete(iParser, script);
+
+        // insert a new top-level statement
+        String edited = script.replace("int t = 0;\n", "int t = 0;\nString s = \"\";\n");
+        assertParsedLikeComplete(iParser, edited);
+
+        // add lines inside a method - all following line numbers are moved
+        edited = edited.replace("j = j +1;                           //", "j = j +1;\n\n\nk = 3;\n//");
+        assertParsedLikeComplete(iParser, edited);
+
+        // break a statement - and repair it again
+        final String broken = edited.replace("f.test();", "f.test(");
+        assertParsedLikeComplete(iParser, broken);
+        assertParsedLikeComplete(iParser, edited);
+
+        // remove a method
+        edited = edited.replace("    test() {\n        b = BarObject();\n        b.addOne();\n" +
+                                "        b.print();\n    }\n", "");
+        assertParsedLikeComplete(iParser, edited);
+
+        // edit the tail and the head of the script
+        assertParsedLikeComplete(iParser, edited +"\nfoo() { return 1; }");
+        assertParsedLikeComplete(iParser, "import java.util.regex.*;\n\t" +edited);
+    }
+
+    /**
+     * a = 1; b = 2;  (the second statement begins in the middle of a line)
+     */
+    @Test
+    public void testStatementsOnSameLine() throws Exception {
+        final BshIncrementalParser iParser = new BshIncrementalParser();
+        assertParsedLikeComplete(iParser, "a = 1; b = 2;\n\tc = 3;\nfoo() {\n\tint d = 4;\n}");
+        assertParsedLikeComplete(iParser, "a = 1; bb = 2;\n\tc = 3;\nfoo() {\n\tint d = 4;\n}");
+        assertParsedLikeComplete(iParser, "a = 1; bb = 2;\n\tc = 3;\nfoo() {\n\tint d = 4;\n\n}");
+        assertParsedLikeComplete(iParser, "a = 1; bb = 2; x = 0;\n\tc = 3;\nfoo() {\n\tint d = 4;\n\n}");
+    }
+
+    @Test
+    public void testCancelledParseKeepsCache() throws Exception {
+        final BshIncrementalParser iParser = new BshIncrementalParser();
+        assertParsedLikeComplete(iParser, "a = 1;\nb = 2;\nc = 3;");
+
+        final BshScriptInfo cancelled = iParser.parse("x = 0;\nb = 2;\nc = 3;", new BshCancellation() {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        });
+        assertFalse(cancelled.isComplete());
+        assertEquals(0, cancelled.getVariables().size());
+
+        assertParsedLikeComplete(iParser, "a = 1;\nb = 2;\nc = 3;\nd = 4;");
+        assertTrue(iParser.parse("a = 1;\nb = 2;\nc = 3;\nd = 4;").isComplete());
+    }
+
+    private void assertParsedLikeComplete(BshIncrementalParser iParser, String script) {
+        final BshScriptInfo expected = new BshParserConnector().parse(script);
+        final BshScriptInfo actual = iParser.parse(script);
+        assertEquals(dump(expected, ""), dump(actual, ""));
+    }
+
+    private String dump(BshInfoContainer container, String indent) {
+        final StringBuilder result = new StringBuilder();
+        result.append(indent).append(container.getBeginLine()).append(':').append(container.getBeginColum())
+              .append('-').append(container.getEndLine()).append(':').append(container.getEndColum()).append('\n');
+        if(container instanceof BshScriptInfo)
+            for(BshImportInfo importInfo: ((BshScriptInfo) container).getImports())
+                result.append(indent).append("import ").append(importInfo.getName()).append(" @")
+                      .append(importInfo.getLineNumber()).append('\n');
+        for(BshVariableInfo variable: container.getVariables())
+            result.append(indent).append(variable).append(" @").append(variable.getLineNumber())
+                  .append(variable.getModifiers()).append('\n');
+        for(BshMethodInfo method: container.getMethods()) {
+            result.append(indent).append(method).append(" @").append(method.getLineNumber())
+                  .append(method.getModifiers()).append('\n');
+            result.append(dump(method, indent +"  "));
+        }
+        return result.toString();
+    }
+
+    private String readScript(String name) {
+        final InputStream iStream = getClass().getResourceAsStream(name);
+        try {
+            return new Scanner(iStream, "UTF-8").useDelimiter("\\A").next();
+        } finally {
+            try {
+                iStream.close();
+            } catch(Exception ex) { }
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+/**
+ * Compares the time of a complete parse of a script with the time of an outline parse, which leaves the bodies of
+ * top-level methods and classes to be gathered on demand. Run with the test classpath: 
+ * {@code java bsh.OutlineBenchmark [methods]}
+ *
+ * @author Thomas Werner
+ */
+public class OutlineBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        final int methods = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        final String script = ParserConnectorBenchmark.buildScript(methods);
+
+        long time = 0;
+        long outlineTime = 0;
+        for(int i=0; i<ROUNDS; i++) {
+            long start = System.nanoTime();
+            new BshParserConnector().parse(script);
+            time += System.nanoTime() -start;
+
+            start = System.nanoTime();
+            new BshParserConnector().parseOutline(script);
+            outlineTime += System.nanoTime() -start;
+        }
+
+        System.out.println("script:         " +script.length() +" chars, " +methods +" methods");
+        System.out.println("parse time:     " +(time /ROUNDS /1000) +" us");
+        System.out.println("outline time:   " +(outlineTime /ROUNDS /1000) +" us");
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+/**
+ * Measures the number of node visits and the parse time of the {@code BshParserConnector}. Run with the test classpath:
+ * {@code java bsh.ParserConnectorBenchmark [methods]}
+ *
+ * @author Thomas Werner
+ */
+public class ParserConnectorBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        final int methods = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        final String script = buildScript(methods);
+
+        long visits = 0;
+        long time = 0;
+        for(int i=0; i<ROUNDS; i++) {
+            final BshParserConnector connector = new BshParserConnector();
+            final long start = System.nanoTime();
+            connector.parse(script);
+            time += System.nanoTime() -start;
+            visits = connector.getVisitedNodes();
+        }
+
+        System.out.println("script:         " +script.length() +" chars, " +methods +" methods");
+        System.out.println("node visits:    " +visits);
+        System.out.println("parse time:     " +(time /ROUNDS /1000) +" us");
+    }
+
+    /**
+     * @param methods the number of scripted classes within the script
+     * @return a script with nested methods, variables and return statements
+     */
+    static String buildScript(int methods) {
+        final StringBuilder result = new StringBuilder();
+        result.append("import java.util.*;\n");
+        for(int i=0; i<methods; i++) {
+            result.append("int counter").append(i).append(" = ").append(i).append(";\n");
+            result.append("Object").append(i).append("(String name, int count) {\n");
+            result.append("    List items = new ArrayList();\n");
+            result.append("    add(String item) {\n");
+            result.append("        if(item != null && item.length() > count)\n");
+            result.append("            items.add(name + \": \" + item);\n");
+            result.append("        return items.size();\n");
+            result.append("    }\n");
+            result.append("    int size() {\n");
+            result.append("        for(int j=0; j<items.size(); j++)\n");
+            result.append("            print(items.get(j));\n");
+            result.append("        return items.size();\n");
+            result.append("    }\n");
+            result.append("    return this;\n");
+            result.append("}\n");
+        }
+        return result.toString();
+    }
+
+}
@@ -16,6 +16,15 @@
 package bsh;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import org.junit.Test;
 
 /**
@@ -369,4 +378,247 @@ public class ParserConnectorTest {
         assertEquals(1, sInfo.getClasses().get(0).getClasses().get(0).getVariables().size());   // Only j counts        
     }
     
+    /**
+     * foo() {
+     *     if(true)
+     *         return;
+     *     return this;
+     * }
+     */
+    @Test
+    public void testScriptedClassWithEmptyReturn() throws Exception {
+        final BshParserConnector pConnector = new BshParserConnector();
+        final BshScriptInfo sInfo = pConnector.parse("foo() {\nif(true)\nreturn;\nreturn this;\n}");
+        
+        assertEquals(1, sInfo.getClasses().size());
+        assertEquals(BshParserConnector.LOOSE_TYPE, sInfo.getClasses().get(0).getReturnType());
+    }
+    
+    /**
+     * public static java.util.List[] find(String[] names, count) { }
+     * class Foo extends Bar implements Runnable, java.io.Serializable { }
+     */
+    @Test
+    public void testQualifiedAndArrayTypes() throws Exception {
+        final BshParserConnector pConnector = new BshParserConnector();
+        final String script = "public static java.util.List[] find(String[] names, count) { }\n" +
+                              "class Foo extends Bar implements Runnable, java.io.Serializable { }";
+        final BshScriptInfo sInfo = pConnector.parse(script);
+        
+        final BshMethodInfo mInfo = sInfo.getMethods().get(0);
+        assertEquals("java.util.List[]", mInfo.getReturnType());
+        assertEquals(2, mInfo.getModifiers().size());
+        assertEquals(2, mInfo.getParameters().size());
+        assertEquals("names", mInfo.getParameters().get(0).getName());
+        assertEquals("String[]", mInfo.getParameters().get(0).getType());
+        assertEquals("count", mInfo.getParameters().get(1).getName());
+        assertEquals(BshParserConnector.LOOSE_TYPE, mInfo.getParameters().get(1).getType());
+        
+        final BshMethodInfo cInfo = sInfo.getClasses().get(0);
+        assertEquals("Foo", cInfo.getName());
+        assertEquals("Bar", cInfo.getSuperClass());
+        assertEquals(2, cInfo.getInterfaces().size());
+        assertEquals("Runnable", cInfo.getInterfaces().get(0));
+        assertEquals("java.io.Serializable", cInfo.getInterfaces().get(1));
+    }
+    
+    /**
+     * A script that is read as a stream gets the same bounds as a script that is given as String.
+     */
+    @Test
+    public void testStreamedScript() throws Exception {
+        final String script = "int j = 0;\r\nfoo() {\r\n\treturn j;\r\n}\r\n\r\n";
+        final BshParserConnector pConnector = new BshParserConnector();
+        final BshScriptInfo expected = pConnector.parse(script);
+        final BshScriptInfo sInfo = pConnector.parse(new StringReader(script));
+        final BshScriptInfo cInfo = pConnector.parse(Channels.newChannel(new ByteArrayInputStream(
+                                                     script.getBytes("UTF-8"))), Charset.forName("UTF-8"));
+        
+        for(BshScriptInfo info: new BshScriptInfo[] {sInfo, cInfo}) {
+            assertEquals(1, info.getMethods().size());
+            assertEquals(1, info.getVariables().size());
+            assertEquals(expected.getBeginLine(), info.getBeginLine());
+            assertEquals(expected.getBeginColum(), info.getBeginColum());
+            assertEquals(expected.getEndLine(), info.getEndLine());
+            assertEquals(expected.getEndColum(), info.getEndColum());
+        }
+        assertEquals(4, sInfo.getEndLine());
+        assertEquals(1, sInfo.getEndColum());
+    }
+    
+    /**
+     * x = 1;
+     * foo() {
+     *     a = ;
+     *     b = 1;
+     * }
+     * c = 2 # 3;
+     * int d = 4;
+     */
+    @Test
+    public void testSyntaxErrorRecovery() throws Exception {
+        final BshParserConnector pConnector = new BshParserConnector();
+        final String script = "x = 1;\nfoo() {\n    a = ;\n    b = 1;\n}\nc = 2 # 3;\nint d = 4;";
+        final BshScriptInfo sInfo = pConnector.parse(script);
+        
+        assertEquals(2, sInfo.getErrors().size());
+        
+        final BshErrorInfo eInfo = sInfo.getErrors().get(0);
+        assertEquals(3, eInfo.getLineNumber());
+        assertEquals(9, eInfo.getColumn());
+        assertEquals(true, eInfo.getMessage().contains(";"));
+        assertEquals(false, eInfo.getExpected().isEmpty());
+        assertEquals(6, sInfo.getErrors().get(1).getLineNumber());
+        
+        assertEquals(0, sInfo.getMethods().size());                                    // foo is skipped
+        assertEquals(2, sInfo.getVariables().size());                                  // x, d
+        assertEquals("x", sInfo.getVariables().get(0).getName());
+        assertEquals("d", sInfo.getVariables().get(1).getName());
+    }
+    
+    /**
+     * The parser of BeanShell fails with an {@code Error} (instead of a {@code ParseException}) on declarations that 
+     * combine modifiers with generic types. Such a declaration is reported as a syntax error and skipped.
+     */
+    @Test
+    public void testModifiersWithGenerics() throws Exception {
+        final String script = "a = 1;\n" +
+                              "public List<String> f() { return null; }\n" +
+                              "static Map<String,Integer> m = null;\n" +
+                              "final List<String> x = null;\n" +
+                              "b = 2;\n";
+        final BshScriptInfo sInfo = new BshParserConnector().parse(script);
+        assertFalse(sInfo.getErrors().isEmpty());
+        assertEquals(2, sInfo.getErrors().get(0).getLineNumber());
+        assertEquals("a", sInfo.getVariables().get(0).getName());
+        assertEquals("b", sInfo.getVariables().get(sInfo.getVariables().size() -1).getName());
+        
+        final BshIncrementalParser incremental = new BshIncrementalParser();
+        assertFalse(incremental.parse(script).getErrors().isEmpty());
+        assertFalse(new BshParserConnector().parseOutline(script).getErrors().isEmpty());
+        
+        final String body = "foo() {\n    final List<String> x = null;\n}\n";
+        final BshScriptInfo outline = new BshParserConnector().parseOutline(body);
+        assertEquals(0, outline.getMethods().get(0).getVariables().size());                    // the body is skipped
+    }
+    
+    /**
+     * The bodies of top-level declarations are gathered on demand - with the same result as a complete parse.
+     */
+    @Test
+    public void testOutline() throws Exception {
+        final String script = "import java.io.*;\n" +
+                              "int count = 0;\n" +
+                              "Foo(int a) {\n\tcount = 1;\n\tbar() { int b; }\n\tif(a > 0) return this;\n" +
+                              "\treturn this;\n}\n" +
+                              "loose() {\n    if(true) { int x; }\n    return count;\n}\n" +
+                              "conditional() {\n    if(true) return 1;\n}\n" +
+                              "class Bar implements Runnable {\n    Bar() { }\n    void run() { }\n}\n" +
+                              "withImport() {\n    import java.net.*;\n}\n" +
+                              "r = new Runnable() { run() { } };\n";
+        final BshScriptInfo outline = new BshParserConnector().parseOutline(script);
+        final BshMethodInfo foo = outline.getMethods().get(0);
+        assertTrue(foo.isClass());
+        assertNotNull(foo.getDeferredBody());
+        
+        assertEquals(dump(new BshParserConnector().parse(script), ""), dump(outline, ""));
+        assertNull(foo.getDeferredBody());
+    }
+    
+    /**
+     * Each node of the syntax tree is visited exactly once.
+     * 
+     * @see bsh/scripts/cascadedDeclaration.bsh
+     */
+    @Test
+    public void testEachNodeIsVisitedOnce() throws Exception {
+        final String script = "/bsh/scripts/cascadedDeclaration.bsh";
+        final BshParserConnector pConnector = new BshParserConnector();
+        pConnector.parse(getClass().getResourceAsStream(script));
+        
+        long nodes = 0;
+        final Parser parser = new Parser(getClass().getResourceAsStream(script));
+        while(!parser.Line()) 
+            nodes += countNodes(parser.popNode());
+        assertEquals(nodes, pConnector.getVisitedNodes());
+    }
+    
+    /**
+     * Equal names, modifier sets and empty child lists are shared by the infos of separate parses.
+     */
+    @Test
+    public void testSharedModelData() throws Exception {
+        final String script = "class Foo {\n" +
+                              "    public Foo(String name) { }\n" +
+                              "    public static String format(String name) { }\n" +
+                              "}";
+        final BshScriptInfo first = new BshParserConnector().parse(script);
+        final BshScriptInfo second = new BshParserConnector().parse(script);
+        
+        final BshMethodInfo constructor = first.getClasses().get(0).getMethods().get(0);
+        final BshMethodInfo method = second.getClasses().get(0).getMethods().get(1);
+        assertTrue(constructor.isConstructor());
+        assertFalse(method.isConstructor());
+        assertSame(constructor.getParameters().get(0).getType(), method.getReturnType());
+        assertSame(first.getClasses().get(0).getName(), second.getClasses().get(0).getName());
+        assertSame(first.getImports().get(0), second.getImports().get(0));
+        assertSame(constructor.getModifiers(), second.getClasses().get(0).getMethods().get(0).getModifiers());
+        assertSame(constructor.getMethods(), method.getVariables());
+    }
+    
+    @Test
+    public void testCancellation() throws Exception {
+        final String script = "a0 = 0;\na1 = 1;\na2 = 2;\na3 = 3;\na4 = 4;";
+        final BshParserConnector pConnector = new BshParserConnector();
+        
+        final BshScriptInfo complete = pConnector.parse(script, BshCancellation.NONE);
+        assertTrue(complete.isComplete());
+        assertEquals(dump(pConnector.parse(script), ""), dump(complete, ""));
+        
+        final BshScriptInfo partial = pConnector.parse(script, new BshCancellation() {
+            private int calls;
+            
+            @Override
+            public boolean isCancelled() {
+                return ++calls > 3;
+            }
+        });
+        assertFalse(partial.isComplete());
+        assertEquals(3, partial.getVariables().size());
+        assertEquals("a2", partial.getVariables().get(2).getName());
+        
+        final BshScriptInfo cancelled = pConnector.parse(script, new BshCancellation() {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        });
+        assertFalse(cancelled.isComplete());
+        assertEquals(0, cancelled.getVariables().size());
+        assertTrue(pConnector.parse(script).isComplete());
+    }
+    
+    private String dump(BshInfoContainer container, String indent) {
+        final StringBuilder result = new StringBuilder();
+        result.append(indent).append(container.getBeginLine()).append(':').append(container.getBeginColum())
+              .append('-').append(container.getEndLine()).append(':').append(container.getEndColum()).append('\n');
+        if(container instanceof BshScriptInfo)
+            for(BshImportInfo importInfo: ((BshScriptInfo) container).getImports())
+                result.append(indent).append(importInfo.getName()).append('\n');
+        for(BshVariableInfo variable: container.getVariables())
+            result.append(indent).append(variable).append(" @").append(variable.getLineNumber()).append('\n');
+        for(BshMethodInfo method: container.getMethods())
+            result.append(indent).append(method).append(" @").append(method.getLineNumber())
+                  .append(method.isClass() ? " class" : "").append(method.isConstructor() ? " constructor" : "")
+                  .append('\n').append(dump(method, indent +"  "));
+        return result.toString();
+    }
+    
+    private long countNodes(SimpleNode node) {
+        long result = 1;
+        for(int i=0; i<node.jjtGetNumChildren(); i++)
+            result += countNodes(node.getChild(i));
+        return result;
+    }
+    
 }
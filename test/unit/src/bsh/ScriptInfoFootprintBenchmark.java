@@ -0,0 +1,55 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package bsh;
+
+/**
+ * Measures the heap that is retained by the {@code BshScriptInfo} of a script. Run with the test classpath: 
+ * {@code java bsh.ScriptInfoFootprintBenchmark [methods]}
+ *
+ * @author Thomas Werner
+ */
+public class ScriptInfoFootprintBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int methods = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        final String script = ParserConnectorBenchmark.buildScript(methods);
+
+        final BshScriptInfo[] retained = new BshScriptInfo[ROUNDS];
+        final long heap = getUsedHeap();
+        for(int i=0; i<ROUNDS; i++)
+            retained[i] = new BshParserConnector().parse(script);
+        final long retainedHeap = getUsedHeap() -heap;
+
+        System.out.println("script:         " +script.length() +" chars, " +methods +" methods");
+        System.out.println("retained heap:  " +(retainedHeap /retained.length /1024) +" KB per script info (" +
+                           retained[ROUNDS -1].getMethods().size() +" methods)");
+    }
+
+    /**
+     * @return the used heap after a few runs of the garbage collector
+     */
+    private static long getUsedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for(int i=0; i<5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() -runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.benchmark;
+
+import bsh.BshParserConnector;
+import de.bfg9000.beanshell.lexer.BeanShellTokenId;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+
+/**
+ * Measures the {@code BeanShellLexer} and {@code BshParserConnector.parse} on each shape of the {@link ScriptCorpus}:
+ * the throughput of the lexer in tokens per second, the latency of a parse and the bytes that are allocated per
+ * operation (like the {@code gc.alloc.rate.norm} of JMH). Each operation is warmed up before it is measured, the
+ * allocation is read from the {@code ThreadMXBean} of the running thread. Run with the test classpath:
+ * {@code java de.bfg9000.beanshell.benchmark.CorpusBenchmark [chars] [shape]}
+ *
+ * @author Thomas Werner
+ */
+public class CorpusBenchmark {
+
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int ROUNDS = 20;
+
+    /** Consumes the results of the operations, so they can not be removed by the compiler */
+    private static long sink;
+
+    public static void main(String[] args) {
+        final int size = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        final ScriptCorpus.Shape[] shapes = (args.length > 1) ? new ScriptCorpus.Shape[] {
+                                                                    ScriptCorpus.Shape.valueOf(args[1]) }
+                                                              : ScriptCorpus.Shape.values();
+
+        System.out.println(String.format("%-18s %8s %12s %12s %12s %12s", "shape", "tokens", "lexer tok/s",
+                                         "lexer B/op", "parse us/op", "parse B/op"));
+        for(ScriptCorpus.Shape shape: shapes) {
+            final String script = ScriptCorpus.generate(shape, size);
+            final long tokens = lex(script);
+            final Result lexer = measure(new Operation() {
+                @Override
+                public long run() {
+                    return lex(script);
+                }
+            });
+            final Result parser = measure(new Operation() {
+                @Override
+                public long run() {
+                    return new BshParserConnector().parse(script).getMethods().size();
+                }
+            });
+            System.out.println(String.format("%-18s %8d %12d %12s %12d %12s", shape, tokens,
+                                             tokens *1000000000L /lexer.nanos, format(lexer.bytes),
+                                             parser.nanos /1000, format(parser.bytes)));
+        }
+        System.out.println("(" +sink +")");
+    }
+
+    /**
+     * @return the number of tokens within the given script
+     */
+    static long lex(String script) {
+        final TokenSequence<BeanShellTokenId> sequence =
+                TokenHierarchy.create(script, BeanShellTokenId.getLanguage()).tokenSequence(
+                BeanShellTokenId.getLanguage());
+        long result = 0;
+        while(sequence.moveNext())
+            result++;
+        return result;
+    }
+
+    private static Result measure(Operation operation) {
+        for(int i=0; i<WARMUP_ROUNDS; i++)
+            sink += operation.run();
+
+        final long startBytes = getAllocatedBytes();
+        final long start = System.nanoTime();
+        for(int i=0; i<ROUNDS; i++)
+            sink += operation.run();
+        final long nanos = System.nanoTime() -start;
+        final long bytes = (-1 == startBytes) ? -1 : getAllocatedBytes() -startBytes;
+        return new Result(nanos /ROUNDS, (-1 == bytes) ? -1 : bytes /ROUNDS);
+    }
+
+    /**
+     * @return the bytes that have been allocated by the current thread so far - or -1 if the VM does not count them
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if(!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String format(long bytes) {
+        return (-1 == bytes) ? "n/a" : String.valueOf(bytes);
+    }
+
+    private interface Operation {
+
+        /**
+         * @return any value that depends on the result of the operation
+         */
+        long run();
+
+    }
+
+    private static final class Result {
+
+        final long nanos;
+        final long bytes;
+
+        Result(long nanos, long bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates syntactically valid BeanShell scripts of a given size. Each {@link Shape} stresses another part of the
+ * lexer and the parser. The scripts are generated from a fixed seed, so the same shape and size always result in the
+ * same script.
+ *
+ * @author Thomas Werner
+ */
+public final class ScriptCorpus {
+
+    public enum Shape {
+
+        /** Scripted methods with deeply nested blocks and inner methods */
+        DEEP_NESTING,
+
+        /** Many small typed methods */
+        MANY_METHODS,
+
+        /** Loosely typed assignments at the top level and within methods */
+        LOOSE_ASSIGNMENTS,
+
+        /** Long block, javadoc and line comments */
+        LONG_COMMENTS,
+
+        /** String and character literals with escape sequences */
+        STRING_HEAVY,
+
+        /** All of the above, one unit after the other */
+        MIXED
+
+    }
+
+    private static final long SEED = 4711;
+    private static final int NESTING_DEPTH = 12;
+
+    private ScriptCorpus() { }
+
+    /**
+     * @param shape the kind of code
+     * @param size the minimum number of characters of the script
+     * @return a script of the given shape
+     */
+    public static String generate(Shape shape, int size) {
+        final Random random = new Random(SEED);
+        final StringBuilder result = new StringBuilder(size +1024);
+        result.append("import java.util.*;\nimport java.io.*;\n\n");
+        for(int unit=0; result.length() < size; unit++) {
+            final Shape unitShape = (Shape.MIXED == shape) ? Shape.values()[unit % (Shape.values().length -1)]
+                                                           : shape;
+            appendUnit(result, unitShape, unit, random);
+        }
+        return result.toString();
+    }
+
+    private static void appendUnit(StringBuilder result, Shape shape, int unit, Random random) {
+        switch(shape) {
+            case DEEP_NESTING:
+                appendNesting(result, unit, random);
+                break;
+            case MANY_METHODS:
+                appendMethods(result, unit, random);
+                break;
+            case LOOSE_ASSIGNMENTS:
+                appendAssignments(result, unit, random);
+                break;
+            case LONG_COMMENTS:
+                appendComments(result, unit, random);
+                break;
+            case STRING_HEAVY:
+                appendStrings(result, unit, random);
+                break;
+            default:
+                throw new IllegalArgumentException(shape.name());
+        }
+    }
+
+    private static void appendNesting(StringBuilder result, int unit, Random random) {
+        result.append("Nested").append(unit).append("(int limit) {\n");
+        result.append("    int total = 0;\n");
+        String indent = "    ";
+        for(int depth=0; depth<NESTING_DEPTH; depth++) {
+            switch(random.nextInt(4)) {
+                case 0:
+                    result.append(indent).append("if(limit > ").append(depth).append(") {\n");
+                    break;
+                case 1:
+                    result.append(indent).append("for(int i").append(depth).append("=0; i").append(depth)
+                          .append("<limit; i").append(depth).append("++) {\n");
+                    break;
+                case 2:
+                    result.append(indent).append("while(total < ").append(depth *10).append(") {\n");
+                    break;
+                default:
+                    result.append(indent).append("inner").append(depth).append("(int value) {\n");
+                    break;
+            }
+            indent += "    ";
+            result.append(indent).append("total += ").append(depth).append(";\n");
+        }
+        for(int depth=NESTING_DEPTH -1; depth>=0; depth--) {
+            indent = indent.substring(4);
+            result.append(indent).append("}\n");
+        }
+        result.append("    return this;\n}\n\n");
+    }
+
+    private static void appendMethods(StringBuilder result, int unit, Random random) {
+        final String[] types = { "int", "String", "List", "Object", "boolean", "double[]" };
+        for(int i=0; i<5; i++) {
+            final String type = types[random.nextInt(types.length)];
+            result.append("public ").append(type).append(" method").append(unit).append('_').append(i)
+                  .append("(int a, String b, Map c) {\n");
+            result.append("    ").append(type).append(" value = null;\n");
+            result.append("    if(a > 0)\n        print(b + c.size());\n");
+            result.append("    return value;\n}\n\n");
+        }
+    }
+
+    private static void appendAssignments(StringBuilder result, int unit, Random random) {
+        for(int i=0; i<8; i++)
+            result.append("value").append(unit).append('_').append(i).append(" = ").append(random.nextInt(1000))
+                  .append(" * (counter").append(unit).append(" + ").append(i).append(");\n");
+        result.append("assign").append(unit).append("() {\n");
+        for(int i=0; i<8; i++)
+            result.append("    local").append(i).append(" = value").append(unit).append('_').append(i)
+                  .append(" << 2;\n");
+        result.append("    result = new ArrayList();\n    result.add(local0);\n    return result;\n}\n\n");
+    }
+
+    private static void appendComments(StringBuilder result, int unit, Random random) {
+        result.append("/**\n");
+        for(int i=0; i<20; i++)
+            result.append(" * Line ").append(i).append(" of the documentation of unit ").append(unit)
+                  .append(" - with {@code code}, <b>markup</b> and ").append(random.nextInt()).append(".\n");
+        result.append(" */\n");
+        result.append("documented").append(unit).append("() {\n");
+        for(int i=0; i<5; i++)
+            result.append("    // a line comment that explains the next statement in detail: ").append(i).append('\n')
+                  .append("    x").append(i).append(" = ").append(i).append("; /* trailing block comment */\n");
+        result.append("}\n\n");
+    }
+
+    private static void appendStrings(StringBuilder result, int unit, Random random) {
+        result.append("String text").append(unit).append(" = \"\";\n");
+        for(int i=0; i<6; i++)
+            result.append("text").append(unit).append(" += \"line ").append(i)
+                  .append(" with \\\"quotes\\\", tabs\\t and a unicode escape \\u00e4: \" + ")
+                  .append(random.nextInt(100)).append(" + '\\n' + 'x';\n");
+        result.append("print(\"Unit ").append(unit).append(": \" + text").append(unit)
+              .append(".length() + \" chars\");\n\n");
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.benchmark;
+
+import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class ScriptCorpusTest {
+
+    /**
+     * The benchmarks only measure something meaningful if the generated scripts can be parsed without errors.
+     */
+    @Test
+    public void testScriptsAreValid() {
+        for(ScriptCorpus.Shape shape: ScriptCorpus.Shape.values()) {
+            final String script = ScriptCorpus.generate(shape, 20000);
+            assertTrue(shape.name(), script.length() >= 20000);
+            assertEquals(script, ScriptCorpus.generate(shape, 20000));
+
+            final BshScriptInfo info = new BshParserConnector().parse(script);
+            assertEquals(shape +": " +info.getErrors(), 0, info.getErrors().size());
+            assertTrue(shape.name(), CorpusBenchmark.lex(script) > 0);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshModifierInfo;
+import bsh.BshVariableInfo;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class CandidateIndexTest {
+
+    private final CandidateIndex index = new CandidateIndex(variables("fileName", "file", "Files", "fName", "foo", 
+                                                                      "fileNameMap", "filter", "offset", "x"));
+
+    @Test
+    public void testPrefixMatches() {
+        assertEquals("[file:0, fileName:0, fileNameMap:0, Files:0, filter:0]", dump(index.find("fIL")));
+        assertEquals("[x:0]", dump(index.find("x")));
+        assertEquals(9, index.find("").size());
+        assertEquals("[]", dump(index.find("y")));
+    }
+
+    @Test
+    public void testCamelCaseMatches() {
+        assertEquals("[fName:0, fileName:1, fileNameMap:1]", dump(index.find("fNa")));
+        assertEquals("[fileNameMap:1, fName:2]", dump(index.find("fNM")));
+        assertEquals("[fileNameMap:1]", dump(index.find("fMap")));
+    }
+
+    @Test
+    public void testFuzzyMatches() {
+        assertEquals("[filter:0, file:2, fileName:2, fileNameMap:2, Files:2]", dump(index.find("filt")));
+        assertEquals("[offset:2]", dump(index.find("ofset")));
+        assertEquals("[]", dump(index.find("fx")));
+    }
+
+    @Test
+    public void testRefineMatchesFind() {
+        final String[] filters = { "", "f", "fi", "fil", "file", "fileN", "fileNa", "fileNam", "fileName", 
+                                   "fileNameX" };
+        CandidateIndex.Matches matches = index.find(filters[0]);
+        for(String filter: filters) {
+            matches = index.refine(matches, filter);
+            assertEquals(filter, dump(index.find(filter)), dump(matches));
+        }
+        assertEquals(dump(index.find("of")), dump(index.refine(matches, "of")));
+    }
+
+    private List<BshVariableInfo> variables(String... names) {
+        final List<BshVariableInfo> result = new ArrayList<BshVariableInfo>();
+        for(String name: names)
+            result.add(new BshVariableInfo(name, "int", 1, Collections.<BshModifierInfo>emptySet()));
+        return result;
+    }
+
+    private String dump(CandidateIndex.Matches matches) {
+        final List<String> result = new ArrayList<String>();
+        for(int i=0; i<matches.size(); i++)
+            result.add(index.get(matches.getPosition(i)).getName() +":" +matches.getRank(i));
+        return result.toString();
+    }
+
+}
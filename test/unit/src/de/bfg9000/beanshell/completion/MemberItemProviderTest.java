@@ -0,0 +1,100 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import de.bfg9000.beanshell.index.ClassFileCache;
+import de.bfg9000.beanshell.index.ClassPathIndex;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.netbeans.spi.editor.completion.CompletionItem;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class MemberItemProviderTest {
+
+    /**
+     * Single class imports win over package imports, package imports are looked up in the index.
+     */
+    @Test
+    public void testResolve() throws Exception {
+        final ClassPathIndex index = PackageItemProviderTest.createIndex("java/util/List.class", 
+                                                                         "java/util/Map.class", "java/awt/List.class",
+                                                                         "org/example/Widget.class");
+        final BshScriptInfo scriptInfo = new BshParserConnector().parse("import java.awt.List;\n" +
+                                                                        "import org.example.*;\nx = 1;\n");
+        final MemberItemProvider provider = new MemberItemProvider(index, new ClassFileCache(index));
+        provider.getItems(scriptInfo, 0, 0, "", 2, 0);
+        assertEquals("java.awt.List", provider.resolve("List"));
+        assertEquals("java.util.Map", provider.resolve("Map<String, List>"));
+        assertEquals("org.example.Widget", provider.resolve("Widget"));
+        assertEquals("java.util.List", provider.resolve("java.util.List"));
+        assertNull(provider.resolve("java.util.NoSuchList"));
+        assertNull(provider.resolve("NoSuchList"));
+        assertNull(provider.resolve("Map[]"));
+        assertNull(provider.resolve(""));
+    }
+
+    /**
+     * Filtering narrows down the members of the last query. A filter with another receiver yields no items - the 
+     * members of another class are left to a new query.
+     */
+    @Test
+    public void testFilterItems() throws Exception {
+        final Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        entries.put("java/lang/Math.class", readClassFile("java/lang/Math.class"));
+        final ClassPathIndex index = PackageItemProviderTest.createIndex(entries);
+        final BshScriptInfo scriptInfo = new BshParserConnector().parse("x = 1;\n");
+        final MemberItemProvider provider = new MemberItemProvider(index, new ClassFileCache(index));
+        assertTrue(provider.getItems(scriptInfo, 0, 5, "Math.", 1, 0).size() > 10);
+        assertEquals("[Math.max, Math.max, Math.max, Math.max]", names(provider.filterItems("Math.max", 0, 8)));
+        assertEquals("[]", names(provider.filterItems("Math.max.", 0, 9)));
+        assertEquals("[]", names(provider.filterItems("List.", 0, 5)));
+    }
+
+    private static byte[] readClassFile(String path) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final InputStream in = ClassLoader.getSystemResourceAsStream(path);
+        try {
+            final byte[] buffer = new byte[8192];
+            for(int read = in.read(buffer); read >= 0; read = in.read(buffer))
+                result.write(buffer, 0, read);
+        } finally {
+            in.close();
+        }
+        return result.toByteArray();
+    }
+
+    private String names(List<? extends CompletionItem> items) {
+        final List<String> result = new ArrayList<String>();
+        for(CompletionItem item: items)
+            result.add(item.getInsertPrefix().toString());
+        return result.toString();
+    }
+
+}
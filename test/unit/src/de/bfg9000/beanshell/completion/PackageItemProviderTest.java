@@ -0,0 +1,103 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import de.bfg9000.beanshell.index.ClassPathIndex;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.netbeans.spi.editor.completion.CompletionItem;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class PackageItemProviderTest {
+
+    @Test
+    public void testItems() throws Exception {
+        final ClassPathIndex index = createIndex("java/util/List.class", "java/util/ArrayList.class",
+                                                 "java/util/concurrent/Future.class", "java/awt/List.class",
+                                                 "javax/swing/JButton.class", "org/example/Lister.class");
+        final BshScriptInfo scriptInfo = new BshParserConnector().parse("import org.example.Lister;\nx = 1;\n");
+        final PackageItemProvider provider = new PackageItemProvider(index);
+        assertEquals("[List, Lister]", names(provider.getItems(scriptInfo, 30, 33, "Lis", 1, 0)));
+        assertEquals("[java, javax]", names(provider.getItems(scriptInfo, 30, 32, "ja", 1, 0)));
+        assertEquals("[java.util.ArrayList, java.util.List, java.util.concurrent]",
+                     names(provider.filterItems("java.util.", 30, 40)));
+        assertEquals("[java.util.List]", names(provider.filterItems("java.util.L", 30, 41)));
+        assertEquals("[]", names(provider.filterItems("", 30, 30)));
+    }
+
+    /**
+     * @return an index of a jar with the given (empty) entries
+     */
+    static ClassPathIndex createIndex(String... entries) throws IOException, InterruptedException {
+        final Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+        for(String entry: entries)
+            contents.put(entry, new byte[0]);
+        return createIndex(contents);
+    }
+
+    /**
+     * @param entries the names and contents of the entries of the indexed jar
+     */
+    static ClassPathIndex createIndex(Map<String, byte[]> entries) throws IOException, InterruptedException {
+        final File folder = File.createTempFile("beanshell", "classes");
+        assertTrue(folder.delete() && folder.mkdir());
+        folder.deleteOnExit();
+        final File jar = File.createTempFile("beanshell", ".jar");
+        jar.deleteOnExit();
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for(Map.Entry<String, byte[]> entry: entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+
+        final ClassPathIndex result = new ClassPathIndex(folder);
+        result.addRoots(Collections.singletonList(jar));
+        for(int wait=0; result.isIndexing() && (wait < 100); wait++)
+            Thread.sleep(10);
+        assertFalse(result.isIndexing());
+        return result;
+    }
+
+    private String names(List<? extends CompletionItem> items) {
+        final List<String> result = new ArrayList<String>();
+        for(CompletionItem item: items)
+            result.add(item.getInsertPrefix().toString());
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshInfoContainer;
+import bsh.BshMethodInfo;
+import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import bsh.BshVariableInfo;
+import de.bfg9000.beanshell.benchmark.ScriptCorpus;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class ScopeIndexTest {
+
+    @Test
+    public void testInnerDeclarationsHideOuterOnes() {
+        final String script = "a = 1;\nb = 2;\nfoo(c) {\n\tString a = \"\";\n\n\tbar() {\n\t\tint c = 0;\n" +
+                              "\t\td = 4;\n\t}\n}\ne = 5;\n";
+        final BshScriptInfo scriptInfo = new BshParserConnector().parse(script);
+        final ScopeIndex index = ScopeIndex.forScript(scriptInfo);
+        assertSame(index, ScopeIndex.forScript(scriptInfo));
+
+        assertEquals("[a, b, e]", names(index.getVisibleVariables(2, 0)));
+        assertEquals("String : a", index.getVisibleVariables(5, 0).get(0).toString());
+        assertEquals("[a, b, c, d, e]", names(index.getVisibleVariables(8, 0)));
+        assertEquals("int : c", index.getVisibleVariables(8, 0).get(2).toString());
+    }
+
+    /**
+     * Only the index of the last parse result is kept - a previous parse result can be collected.
+     */
+    @Test
+    public void testPreviousParseResultIsCollected() throws Exception {
+        BshScriptInfo first = new BshParserConnector().parse("a = 1;\n");
+        ScopeIndex.forScript(first).getVisibleVariables(1, 1);
+        final WeakReference<BshScriptInfo> reference = new WeakReference<BshScriptInfo>(first);
+        first = null;
+        
+        final BshScriptInfo second = new BshParserConnector().parse("b = 2;\n");
+        assertEquals("[b]", names(ScopeIndex.forScript(second).getVisibleVariables(1, 1)));
+        for(int i=0; (i<20) && (null != reference.get()); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    /**
+     * The index yields the same variables as a walk over all containers of the script.
+     */
+    @Test
+    public void testIndexMatchesContainerWalk() {
+        final String script = ScriptCorpus.generate(ScriptCorpus.Shape.MIXED, 20000);
+        final BshScriptInfo scriptInfo = new BshParserConnector().parse(script);
+        final ScopeIndex index = ScopeIndex.forScript(scriptInfo);
+        for(int line=0; line<=scriptInfo.getEndLine() +1; line++)
+            for(int column=0; column<40; column+=13) {
+                final List<BshVariableInfo> expected = new ArrayList<BshVariableInfo>();
+                walk(expected, scriptInfo, line, column);
+                Collections.sort(expected, new BshVariableInfo.Comparator());
+                assertEquals(line +":" +column, expected, index.getVisibleVariables(line, column));
+            }
+    }
+
+    private void walk(List<BshVariableInfo> list, BshInfoContainer container, int line, int col) {
+        final boolean afterStart= (container.getBeginLine() < line) ||
+                                  ((container.getBeginLine() == line) && (container.getBeginColum() <= col));
+        final boolean beforeEnd = (container.getEndLine() > line) ||
+                                  ((container.getEndLine() == line) && (container.getEndColum() >= col));
+        if(afterStart && beforeEnd) {
+            for(BshVariableInfo varInfo: container.getVariables()) {
+                final Iterator<BshVariableInfo> iterator = list.iterator();
+                while(iterator.hasNext())
+                    if(iterator.next().getName().equals(varInfo.getName()))
+                        iterator.remove();
+                list.add(varInfo);
+            }
+            for(BshMethodInfo method: container.getMethods())
+                walk(list, method, line, col);
+        }
+    }
+
+    private String names(List<BshVariableInfo> variables) {
+        final List<String> result = new ArrayList<String>();
+        for(BshVariableInfo variable: variables)
+            result.add(variable.getName());
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.completion;
+
+import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.netbeans.spi.editor.completion.CompletionItem;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class VariableItemProviderTest {
+
+    /**
+     * Filtering the items of an open popup yields the items of a new query with the longer filter.
+     */
+    @Test
+    public void testFilterMatchesQuery() {
+        final BshScriptInfo scriptInfo = new BshParserConnector().parse("fileName = \"\";\nfilter = 1;\nfoo = 2;\n" +
+                                                                        "bar = 3;\n");
+        final VariableItemProvider provider = new VariableItemProvider();
+        assertEquals("[fileName, filter, foo]", names(provider.getItems(scriptInfo, 40, 41, "f", 3, 0)));
+        assertEquals("[fileName, filter]", names(provider.filterItems("fil", 40, 43)));
+        assertEquals("[filter, fileName]", names(provider.filterItems("filt", 40, 44)));
+        assertEquals(names(new VariableItemProvider().getItems(scriptInfo, 40, 44, "filt", 3, 0)),
+                     names(provider.filterItems("filt", 40, 44)));
+        assertEquals("[bar]", names(provider.filterItems("b", 40, 41)));
+    }
+
+    private String names(List<? extends CompletionItem> items) {
+        final List<String> result = new ArrayList<String>();
+        for(CompletionItem item: items)
+            result.add(item.getInsertPrefix().toString());
+        return result.toString();
+    }
+
+}
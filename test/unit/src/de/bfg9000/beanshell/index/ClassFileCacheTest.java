@@ -0,0 +1,92 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class ClassFileCacheTest {
+
+    private static ClassPathIndex index;
+
+    @BeforeClass
+    public static void indexPlatform() throws IOException {
+        final File folder = File.createTempFile("beanshell", "classes");
+        assertTrue(folder.delete() && folder.mkdir());
+        folder.deleteOnExit();
+        index = new ClassPathIndex(folder);
+        for(File root: ClassPathIndex.getPlatformRoots())
+            index.index(root);
+    }
+
+    @Test
+    public void testClassFile() {
+        final ClassFileCache cache = new ClassFileCache(index);
+        final ClassFile arrayList = cache.get("java.util.ArrayList");
+        assertEquals("java.util.ArrayList", arrayList.getName());
+        assertEquals("java.util.AbstractList", arrayList.getSuperName());
+        assertTrue(arrayList.getInterfaces().contains("java.util.List"));
+        assertSame(arrayList, cache.get("java.util.ArrayList"));
+        assertNull(cache.get("java.util.NoSuchList"));
+        assertNull(cache.get("java.lang.Object").getSuperName());
+
+        final List<String> names = new ArrayList<String>();
+        for(ClassFile.Member member: arrayList.getMembers()) {
+            names.add(member.getName());
+            if("ensureCapacity".equals(member.getName())) {
+                assertEquals("ensureCapacity(int) : void", member.toString());
+                assertFalse(member.isStatic());
+            }
+        }
+        assertTrue(names.contains("ensureCapacity"));
+        assertFalse(names.contains("<init>"));
+        assertFalse(names.contains("elementData"));                                                     // not public
+    }
+
+    @Test
+    public void testMembers() {
+        final ClassFileCache cache = new ClassFileCache(index);
+        final List<String> names = new ArrayList<String>();
+        for(ClassFile.Member member: cache.getMembers("java.util.ArrayList"))
+            names.add(member.toString());
+        assertTrue(names.contains("add(Object) : boolean"));
+        assertTrue(names.contains("hashCode() : int"));                                       // from AbstractList
+        assertTrue(names.contains("getClass() : Class"));                                         // from Object
+        assertEquals(names.indexOf("hashCode() : int"), names.lastIndexOf("hashCode() : int"));
+
+        boolean staticField = false;
+        for(ClassFile.Member member: cache.getMembers("java.lang.Math"))
+            if("PI".equals(member.getName())) {
+                assertEquals("PI : double", member.toString());
+                staticField = member.isStatic();
+            }
+        assertTrue(staticField);
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class ClassPathIndexTest {
+
+    @Test
+    public void testFind() throws Exception {
+        final File jar = createJar("java/util/List.class", "java/util/ArrayList.class", "java/util/Map$Entry.class",
+                                   "java/util/Map.class", "java/util/concurrent/Future.class", "java/util/regex/",
+                                   "java/util/regex/Pattern.class", "javax/swing/JButton.class", "META-INF/MANIFEST.MF",
+                                   "java/util/package-info.class");
+        assertEquals(6, ClassPathIndex.readClassNames(jar).size());
+
+        final ClassPathIndex index = new ClassPathIndex(createFolder());
+        index.addRoots(Collections.<File>emptyList());
+        assertFalse(index.isIndexing());
+        index.index(jar);
+        assertEquals("[java, javax] []", find(index, "", "ja"));
+        assertEquals("[util] []", find(index, "java", ""));
+        assertEquals("[concurrent, regex] [ArrayList, List, Map]", find(index, "java.util", ""));
+        assertEquals("[] [List]", find(index, "java.util", "L"));
+        assertEquals("[regex] []", find(index, "java.util", "r"));
+        assertEquals("[] []", find(index, "java.utilities", ""));
+    }
+
+    /**
+     * The table of a jar is stored and reused as long as the jar is not modified.
+     */
+    @Test
+    public void testStoredTables() throws Exception {
+        final File folder = createFolder();
+        final File jar = createJar("a/b/C.class", "a/D.class");
+        new ClassPathIndex(folder).index(jar);
+        assertEquals(1, folder.listFiles().length);
+
+        final ClassPathIndex reloaded = new ClassPathIndex(folder);
+        reloaded.index(jar);
+        assertEquals("[b] [D]", find(reloaded, "a", ""));
+
+        writeJar(jar, "a/b/C.class", "a/E.class");
+        assertTrue(jar.setLastModified(jar.lastModified() +2000));
+        final ClassPathIndex modified = new ClassPathIndex(folder);
+        modified.index(jar);
+        assertEquals("[b] [E]", find(modified, "a", ""));
+    }
+
+    /**
+     * A truncated or corrupt stored table is a cache miss - the jar is indexed again and the table is replaced.
+     */
+    @Test
+    public void testCorruptTables() throws Exception {
+        final File folder = createFolder();
+        final File jar = createJar("a/b/C.class", "a/D.class", "a/E.class");
+        new ClassPathIndex(folder).index(jar);
+        final File store = folder.listFiles()[0];
+        final byte[] bytes = readFile(store);
+
+        final Random random = new Random(3);
+        for(int i=0; i<200; i++) {
+            final byte[] corrupt = Arrays.copyOf(bytes, (0 == i % 2) ? random.nextInt(bytes.length) : bytes.length);
+            for(int j=0; (j<2) && (corrupt.length > 0); j++)
+                corrupt[random.nextInt(corrupt.length)] = (byte) random.nextInt();
+            writeFile(store, corrupt);
+
+            final ClassPathIndex index = new ClassPathIndex(folder);
+            index.addRoots(Collections.singletonList(jar));
+            for(int wait=0; index.isIndexing() && (wait < 100); wait++)
+                Thread.sleep(10);
+            assertFalse(index.isIndexing());
+            index.find("a", "", new TreeSet<String>(), new TreeSet<String>());
+        }
+
+        final ClassPathIndex rebuilt = new ClassPathIndex(folder);
+        writeFile(store, Arrays.copyOf(bytes, bytes.length -2));
+        rebuilt.index(jar);
+        assertEquals("[b] [D, E]", find(rebuilt, "a", ""));
+        assertEquals(bytes.length, store.length());
+    }
+
+    @Test
+    public void testPlatformRoots() throws Exception {
+        final List<File> roots = ClassPathIndex.getPlatformRoots();
+        assertFalse(roots.isEmpty());
+
+        final List<String> names = new ArrayList<String>();
+        for(File root: roots)
+            names.addAll(ClassPathIndex.readClassNames(root));
+        assertTrue(names.contains("java.util.ArrayList"));
+    }
+
+    /**
+     * The runtime image is indexed through the {@code jrt:/} file system when the platform has no jmods.
+     */
+    @Test
+    public void testRuntimeImage() throws Exception {
+        final File image = RuntimeImage.find();
+        assumeNotNull(image);
+        final List<String> names = ClassPathIndex.readClassNames(image);
+        assertTrue(names.contains("java.util.ArrayList"));
+        assertFalse(names.contains("java.util.Map$Entry"));
+
+        final ClassPathIndex index = new ClassPathIndex(createFolder());
+        index.index(image);
+        assertEquals("[] [ArrayList]", find(index, "java.util", "ArrayL"));
+        assertEquals("java.util.ArrayList", index.readClassFile("java.util.ArrayList").getName());
+        assertNull(RuntimeImage.open("java/util/NoSuchList.class"));
+    }
+
+    private String find(ClassPathIndex index, String packageName, String prefix) {
+        final SortedSet<String> packages = new TreeSet<String>();
+        final SortedSet<String> classes = new TreeSet<String>();
+        index.find(packageName, prefix, packages, classes);
+        return packages +" " +classes;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final byte[] result = new byte[(int) file.length()];
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(result);
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private File createFolder() throws IOException {
+        final File result = File.createTempFile("beanshell", "classes");
+        assertTrue(result.delete() && result.mkdir());
+        result.deleteOnExit();
+        return result;
+    }
+
+    private File createJar(String... entries) throws IOException {
+        final File result = File.createTempFile("beanshell", ".jar");
+        result.deleteOnExit();
+        writeJar(result, entries);
+        return result;
+    }
+
+    private void writeJar(File jar, String... entries) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for(String entry: Arrays.asList(entries)) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.index;
+
+import bsh.BshImportInfo;
+import bsh.BshInfoContainer;
+import bsh.BshMethodInfo;
+import bsh.BshScriptInfo;
+import bsh.BshVariableInfo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.Test;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class ScriptIndexTest {
+
+    @Test
+    public void testIndexAndFind() throws Exception {
+        final FileObject root = FileUtil.createMemoryFileSystem().getRoot();
+        final FileObject folder = root.createFolder("scripts");
+        for(int i=0; i<50; i++)
+            write(folder.createData("script" +i, "bsh"), "import java.util.regex.*;\nint count" +i +" = 0;\n" +
+                                                         "helper" +i +"() { }\nshared() { return this; }\n");
+        folder.createData("readme", "txt");
+
+        final List<FileObject> files = ScriptIndex.findScripts(root);
+        assertEquals(50, files.size());
+
+        final ScriptIndex index = new ScriptIndex();
+        index.index(files);
+        assertEquals(50, index.size());
+
+        final List<IndexEntry> helper = index.find("helper7");
+        assertEquals(1, helper.size());
+        assertEquals(IndexEntry.Kind.Method, helper.get(0).getKind());
+        assertEquals("script7.bsh", helper.get(0).getFile().getNameExt());
+        assertEquals(3, helper.get(0).getLineNumber());
+
+        assertEquals(50, index.find("shared").size());
+        assertEquals(IndexEntry.Kind.Class, index.find("shared").get(0).getKind());
+        assertEquals(50, index.find("java.util.regex").size());
+        assertEquals(0, index.find("java.lang").size());                          // default imports are not indexed
+        assertEquals(IndexEntry.Kind.Variable, index.find("count3").get(0).getKind());
+
+        final FileObject script7 = folder.getFileObject("script7", "bsh");
+        write(script7, "renamed() { }\n");
+        index.update(script7);
+        assertEquals(0, index.find("helper7").size());
+        assertEquals(49, index.find("shared").size());
+        assertEquals(1, index.find("renamed").size());
+
+        index.remove(script7);
+        assertEquals(0, index.find("renamed").size());
+        assertNull(index.getScriptInfo(script7));
+        assertEquals(49, index.size());
+    }
+
+    @Test
+    public void testStoredIndex() throws Exception {
+        final FileObject root = FileUtil.createMemoryFileSystem().getRoot();
+        for(int i=0; i<10; i++)
+            write(root.createData("script" +i, "bsh"), "import java.util.regex.*;\n" +
+                                                       "public String[] helper" +i +"(int a, b) { return null; }\n" +
+                                                       "Shared() {\n\tstatic int count = 0;\n\treturn this;\n}\n");
+        final File storeFile = File.createTempFile("beanshell", ".idx");
+        storeFile.deleteOnExit();
+        final IndexStore store = new IndexStore(storeFile);
+
+        final ScriptIndex index = new ScriptIndex();
+        index.index(ScriptIndex.findScripts(root));
+        assertEquals(10, index.getParsedScripts());
+        index.save(root, store);
+
+        final ScriptIndex reloaded = new ScriptIndex();
+        reloaded.load(root, store);
+        assertEquals(10, reloaded.size());
+        assertEquals(1, reloaded.find("helper3").size());
+
+        final FileObject script3 = root.getFileObject("script3", "bsh");
+        write(script3, "import java.util.regex.*;\nchanged() { }\n");
+        reloaded.index(ScriptIndex.findScripts(root));
+        assertEquals(1, reloaded.getParsedScripts());
+        assertEquals(0, reloaded.find("helper3").size());
+        assertEquals(1, reloaded.find("changed").size());
+
+        final FileObject script4 = root.getFileObject("script4", "bsh");
+        assertEquals(dump(index.getScriptInfo(script4)), dump(reloaded.getScriptInfo(script4)));
+    }
+
+    @Test
+    public void testProjectOpenedHook() throws Exception {
+        final FileObject root = FileUtil.createMemoryFileSystem().getRoot();
+        for(int i=0; i<10; i++)
+            write(root.createData("script" +i, "bsh"), "helper" +i +"() { }\n");
+        final File storeFile = File.createTempFile("beanshell", ".idx");
+        storeFile.delete();
+        storeFile.deleteOnExit();
+
+        final ScriptIndex index = new ScriptIndex();
+        final IndexStore store = new IndexStore(storeFile);
+        final ScriptIndex.IndexingHook hook = index.createProjectOpenedHook(root, null, store);
+        hook.projectOpened();
+        index.waitFinished();
+        assertEquals(10, index.size());
+        assertEquals("script3.bsh", index.find("helper3").get(0).getFile().getNameExt());
+
+        hook.projectClosed();
+        index.waitFinished();
+        assertEquals(0, index.size());
+        assertTrue(storeFile.exists());
+
+        final ScriptIndex reopened = new ScriptIndex();
+        reopened.createProjectOpenedHook(root, null, store).projectOpened();
+        reopened.waitFinished();
+        assertEquals(10, reopened.size());
+        assertEquals(0, reopened.getParsedScripts());
+        assertEquals(1, reopened.find("helper7").size());
+    }
+
+    /**
+     * A truncated or corrupt store must neither abort the loading nor the decoding of the stored scripts.
+     */
+    @Test
+    public void testCorruptStore() throws Exception {
+        final FileObject root = FileUtil.createMemoryFileSystem().getRoot();
+        for(int i=0; i<5; i++)
+            write(root.createData("script" +i, "bsh"), "import java.util.*;\nint count" +i +" = 0;\n" +
+                                                       "helper" +i +"(String a) { List items; }\n");
+        final File storeFile = File.createTempFile("beanshell", ".idx");
+        storeFile.deleteOnExit();
+        final IndexStore store = new IndexStore(storeFile);
+        final ScriptIndex index = new ScriptIndex();
+        index.index(ScriptIndex.findScripts(root));
+        index.save(root, store);
+        final byte[] bytes = FileUtil.toFileObject(storeFile).asBytes();
+        final Logger logger = Logger.getLogger(ScriptIndex.class.getPackage().getName());
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.OFF);
+        try {
+            loadCorruptStores(root, storeFile, bytes);
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
+    private void loadCorruptStores(FileObject root, File storeFile, byte[] bytes) throws Exception {
+        final IndexStore store = new IndexStore(storeFile);
+        writeFile(storeFile, Arrays.copyOf(bytes, bytes.length -3));
+        final ScriptIndex truncated = new ScriptIndex();
+        truncated.load(root, store);
+        assertEquals(0, truncated.size());
+        assertFalse(storeFile.exists());
+
+        final Random random = new Random(7);
+        for(int i=0; i<500; i++) {
+            final byte[] corrupt = bytes.clone();
+            for(int j=0; j<3; j++)
+                corrupt[8 +random.nextInt(corrupt.length -8)] = (byte) random.nextInt();
+            writeFile(storeFile, corrupt);
+            final ScriptIndex reloaded = new ScriptIndex();
+            reloaded.load(root, store);
+            for(FileObject file: ScriptIndex.findScripts(root))
+                reloaded.getScriptInfo(file);
+        }
+    }
+
+    private void writeFile(File file, byte[] content) throws Exception {
+        final OutputStream oStream = new FileOutputStream(file);
+        try {
+            oStream.write(content);
+        } finally {
+            oStream.close();
+        }
+    }
+
+    private String dump(BshInfoContainer container) {
+        final StringBuilder result = new StringBuilder();
+        result.append(container.getBeginLine()).append(':').append(container.getEndLine()).append(':')
+              .append(container.getEndColum()).append('\n');
+        if(container instanceof BshScriptInfo)
+            for(BshImportInfo importInfo: ((BshScriptInfo) container).getImports())
+                result.append(importInfo.getName()).append(importInfo.getModifiers()).append('\n');
+        for(BshVariableInfo variable: container.getVariables())
+            result.append(variable).append(variable.getModifiers()).append(variable.getLineNumber()).append('\n');
+        for(BshMethodInfo method: container.getMethods())
+            result.append(method).append(method.getModifiers()).append(method.getLineNumber()).append('\n')
+                  .append(dump(method));
+        return result.toString();
+    }
+
+    private void write(FileObject file, String content) throws Exception {
+        final OutputStream oStream = file.getOutputStream();
+        try {
+            oStream.write(content.getBytes());
+        } finally {
+            oStream.close();
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.instrumentation;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class ProbeTest {
+
+    @Test
+    public void testHistogram() {
+        final Probe probe = new Probe("test");
+        for(int i=1; i<=100; i++)
+            probe.add(i *1000, 2);                                                         // 1 us ... 100 us
+
+        assertEquals(100, probe.getCount());
+        assertEquals(200, probe.getItems());
+        assertEquals(50.5, probe.getMeanMicros(), 0.001);
+        assertEquals(100, probe.getMaxMicros(), 0.001);
+        assertEquals(65.536, probe.getMedianMicros(), 0.001);                // 50 us is within [32.768, 65.536)
+        assertEquals(100, probe.getPercentile99Micros(), 0.001);                      // limited by the maximum
+
+        probe.reset();
+        assertEquals(0, probe.getCount());
+        assertEquals(0, probe.getMedianMicros(), 0.001);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertEquals(false, Probe.ENABLED);
+        assertEquals(0, Probe.start());
+        Probe.PARSE.record(Probe.start());
+        assertEquals(0, Probe.PARSE.getCount());
+        assertEquals(0, Probe.elapsed(Probe.start()));
+        Probe.LEXER.recordNanos(1000, 10);
+        assertEquals(0, Probe.LEXER.getCount());
+    }
+
+}
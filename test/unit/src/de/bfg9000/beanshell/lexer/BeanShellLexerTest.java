@@ -0,0 +1,59 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public 
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.lexer;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class BeanShellLexerTest {
+
+    /**
+     * Each malformed character becomes an ERROR token and the lexer continues behind it.
+     */
+    @Test
+    public void testMalformedInput() {
+        assertEquals("[IDENTIFIER a, WHITESPACE  , ERROR #, WHITESPACE \n, ERROR \", IDENTIFIER b]", 
+                     lex("a #\n\"b"));
+        assertEquals("[IDENTIFIER x, WHITESPACE  , ERROR `, INTEGER_LITERAL 1]", lex("x `1"));
+    }
+
+    /**
+     * Tokens that end at the end of the input do not swallow a character.
+     */
+    @Test
+    public void testEndOfInput() {
+        assertEquals("[SLASH /, STAR *, WHITESPACE  , IDENTIFIER open]", lex("/* open"));
+        assertEquals("[IDENTIFIER print, LPAREN (]", lex("print("));
+    }
+
+    private static String lex(String text) {
+        final List<String> result = new ArrayList<String>();
+        final TokenSequence<BeanShellTokenId> tokens = TokenHierarchy.create(text, BeanShellTokenId.getLanguage())
+                                                                     .tokenSequence(BeanShellTokenId.getLanguage());
+        while(tokens.moveNext())
+            result.add(tokens.token().id().name() +" " +tokens.token().text());
+        return result.toString();
+    }
+
+}
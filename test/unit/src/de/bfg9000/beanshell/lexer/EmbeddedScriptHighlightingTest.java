@@ -0,0 +1,130 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.lexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.netbeans.api.lexer.Token;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenId;
+import org.netbeans.api.lexer.TokenSequence;
+import org.netbeans.spi.lexer.LanguageHierarchy;
+import org.netbeans.spi.lexer.Lexer;
+import org.netbeans.spi.lexer.LexerInput;
+import org.netbeans.spi.lexer.LexerRestartInfo;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class EmbeddedScriptHighlightingTest {
+
+    @Test
+    public void testPropertiesValues() {
+        final StringBuilder text = new StringBuilder();
+        for(int i=0; i<1000; i++)
+            text.append("plain").append(i).append("=print(1);\nscript").append(i).append("=/*bsh*/ int count = 2;\n");
+        final TokenSequence<?> sequence = TokenHierarchy.create(text, new PropertiesHierarchy().language())
+                                                        .tokenSequence();
+
+        final int start = text.indexOf("plain10=");
+        final int end = text.indexOf("plain12=");
+        final List<EmbeddedScriptHighlighting.Section> sections =
+                EmbeddedScriptHighlighting.findSections(sequence, "text/x-properties", start, end);
+        assertEquals(2, sections.size());                                         // only the visible snippets
+        assertEquals(text.indexOf("/*bsh*/", start), sections.get(0).offset);
+        assertEquals("/*bsh*/ int count = 2;\n", sections.get(0).text.toString());
+
+        int identifiers = 0;
+        final TokenSequence<BeanShellTokenId> tokens = sections.get(0).tokenSequence();
+        while(tokens.moveNext())
+            if("IDENTIFIER".equals(tokens.token().id().name()))
+                identifiers++;
+        assertEquals(1, identifiers);
+
+        assertEquals(0, EmbeddedScriptHighlighting.findSections(sequence, "text/x-java", start, end).size());
+    }
+
+    @Test
+    public void testMarker() {
+        assertTrue(EmbeddedScriptHighlighting.hasMarker("\"/*bsh*/print(1);\"", 1));
+        assertTrue(EmbeddedScriptHighlighting.hasMarker("/*bsh*/", 0));
+        assertFalse(EmbeddedScriptHighlighting.hasMarker(" /*bsh*/print(1);", 0));
+        assertFalse(EmbeddedScriptHighlighting.hasMarker("\"/*bsh", 1));
+    }
+
+    //----------------------------------------------------------------------------------------------------------------//
+    // A minimal properties language: a key up to '=' followed by the value up to the end of the line                //
+    //----------------------------------------------------------------------------------------------------------------//
+
+    private enum PropertiesTokenId implements TokenId {
+        KEY, VALUE;
+
+        @Override
+        public String primaryCategory() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final class PropertiesHierarchy extends LanguageHierarchy<PropertiesTokenId> {
+
+        @Override
+        protected Collection<PropertiesTokenId> createTokenIds() {
+            return Arrays.asList(PropertiesTokenId.values());
+        }
+
+        @Override
+        protected Lexer<PropertiesTokenId> createLexer(final LexerRestartInfo<PropertiesTokenId> info) {
+            return new Lexer<PropertiesTokenId>() {
+
+                private boolean value;
+
+                @Override
+                public Token<PropertiesTokenId> nextToken() {
+                    final LexerInput input = info.input();
+                    int c = input.read();
+                    while((LexerInput.EOF != c) && (value ? ('\n' != c) : ('=' != c)))
+                        c = input.read();
+                    if((LexerInput.EOF == c) && (0 == input.readLength()))
+                        return null;
+                    value = !value;
+                    return info.tokenFactory().createToken(value ? PropertiesTokenId.KEY : PropertiesTokenId.VALUE);
+                }
+
+                @Override
+                public Object state() {
+                    return null;
+                }
+
+                @Override
+                public void release() { }
+
+            };
+        }
+
+        @Override
+        protected String mimeType() {
+            return "text/x-properties";
+        }
+
+    }
+
+}
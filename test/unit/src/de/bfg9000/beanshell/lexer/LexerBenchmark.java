@@ -0,0 +1,139 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.lexer;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+
+/**
+ * Measures the throughput of the {@code BeanShellLexer} in tokens per second. The lookup of the token ids is compared
+ * with the former implementation, which used a synchronized method and a map with boxed keys. Run with the test
+ * classpath: {@code java de.bfg9000.beanshell.lexer.LexerBenchmark [lines]}
+ *
+ * @author Thomas Werner
+ */
+public class LexerBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 20;
+
+    /** Consumes the results of the lookups, so they can not be removed by the compiler */
+    private static int sink;
+
+    public static void main(String[] args) {
+        final int lines = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        final String script = buildScript(lines);
+
+        long tokens = 0;
+        for(int i=0; i<WARMUP_ROUNDS; i++)
+            tokens = lex(script);
+        long time = 0;
+        for(int i=0; i<ROUNDS; i++) {
+            final long start = System.nanoTime();
+            lex(script);
+            time += System.nanoTime() -start;
+        }
+
+        System.out.println("script:         " +script.length() +" chars, " +tokens +" tokens");
+        System.out.println("lexer:          " +(tokens *ROUNDS *1000000000L /time) +" tokens/s");
+
+        final int[] kinds = new int[(int) tokens];
+        for(int i=0; i<kinds.length; i++)
+            kinds[i] = i % 100;
+        for(int i=0; i<WARMUP_ROUNDS; i++) {
+            lookup(kinds);
+            lookupFormer(kinds);
+        }
+        long lookupTime = 0;
+        long formerTime = 0;
+        for(int i=0; i<ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += lookup(kinds);
+            lookupTime += System.nanoTime() -start;
+            start = System.nanoTime();
+            sink += lookupFormer(kinds);
+            formerTime += System.nanoTime() -start;
+        }
+        System.out.println("lookup:         " +(kinds.length *ROUNDS *1000000000L /lookupTime) +" tokens/s");
+        System.out.println("former lookup:  " +(kinds.length *ROUNDS *1000000000L /formerTime) +" tokens/s (" +sink +
+                           " hits)");
+    }
+
+    /**
+     * @return the number of tokens within the given script
+     */
+    private static long lex(String script) {
+        final TokenSequence<BeanShellTokenId> sequence =
+                TokenHierarchy.create(script, BeanShellTokenId.getLanguage()).tokenSequence(
+                BeanShellTokenId.getLanguage());
+        long result = 0;
+        while(sequence.moveNext())
+            result++;
+        return result;
+    }
+
+    private static int lookup(int[] kinds) {
+        int result = 0;
+        for(int kind: kinds)
+            if(null != BeanShellLanguageHierarchy.getToken(kind))
+                result++;
+        return result;
+    }
+
+    /**
+     * @param lines the number of lines of the script
+     * @return a script with comments, string literals, scripted methods and operators
+     */
+    static String buildScript(int lines) {
+        final StringBuilder result = new StringBuilder();
+        result.append("import java.util.*;\n");
+        for(int i=1; i<lines; i += 8) {
+            result.append("/**\n * Helper number ").append(i).append("\n */\n");
+            result.append("helper").append(i).append("(String name, int count) {\n");
+            result.append("    List items = new ArrayList(); // the items\n");
+            result.append("    for(int j=0; j<count; j++) items.add(name + \": \" + (j * 0x1F >> 2));\n");
+            result.append("    return items.size() >= count ? 'y' : 1.5e3f;\n");
+            result.append("}\n");
+        }
+        return result.toString();
+    }
+
+    //----------------------------------------------------------------------------------------------------------------//
+    // Former implementation                                                                                          //
+    //----------------------------------------------------------------------------------------------------------------//
+
+    private static Map<Integer, BeanShellTokenId> formerIdToToken;
+
+    private static int lookupFormer(int[] kinds) {
+        int result = 0;
+        for(int kind: kinds)
+            if(null != getTokenFormer(kind))
+                result++;
+        return result;
+    }
+
+    private static synchronized BeanShellTokenId getTokenFormer(int id) {
+        if(null == formerIdToToken) {
+            formerIdToToken = new HashMap<Integer, BeanShellTokenId>();
+            for(BeanShellTokenId token: BeanShellTokenId.getLanguage().tokenIds())
+                formerIdToToken.put(token.ordinal(), token);
+        }
+        return formerIdToToken.get(id);
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.navigator;
+
+import bsh.BshMethodInfo;
+import bsh.BshParserConnector;
+import bsh.BshScriptInfo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import org.openide.nodes.Children;
+import org.openide.nodes.Node;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class NodeFactoryTest {
+
+    @Test
+    public void testUpdateKeepsNodes() {
+        final BshParserConnector pConnector = new BshParserConnector();
+        final NodeFactory children = new NodeFactory(pConnector.parse("a = 1;\nfoo() {\n\tbar() { }\n}\nc = 3;"), null);
+        final Node[] before = children.getNodes(true);
+        assertEquals("[foo(), <loose type> : a, <loose type> : c]", displayNames(before));
+        final Node[] fooBefore = before[0].getChildren().getNodes(true);
+
+        children.update(pConnector.parse("x = 0;\n\na = 1;\nfoo() {\n\tbar() { }\n\tbaz() { }\n}"));
+        final Node[] after = children.getNodes(true);
+        assertEquals("[foo(), <loose type> : a, <loose type> : x]", displayNames(after));
+        assertSame(before[0], after[0]);
+        assertSame(before[1], after[1]);
+        assertNotSame(before[2], after[2]);
+        assertEquals(3, ((BeanShellNode) after[1]).getLineNumber());
+        assertEquals(4, ((BeanShellNode) after[0]).getLineNumber());
+
+        final Node[] fooAfter = after[0].getChildren().getNodes(true);
+        assertEquals(fooBefore.length +1, fooAfter.length);
+        assertSame(fooBefore[0], fooAfter[0]);
+    }
+
+    /**
+     * The body of a method is parsed when the children of its node are shown - the other bodies are left alone.
+     */
+    @Test
+    public void testBodiesOfExpandedNodes() throws Exception {
+        final BshScriptInfo scriptInfo = new BshParserConnector().parseOutline("foo() {\n\tbar() { }\n}\n" +
+                                                                               "baz() {\n\tx = 1;\n}\n");
+        final NodeFactory children = new NodeFactory(scriptInfo, null);
+        final Node[] nodes = children.getNodes(true);
+        assertEquals("[baz(), foo()]", displayNames(nodes));
+        for(BshMethodInfo method: scriptInfo.getMethods())
+            assertFalse(method.isLoaded());
+
+        final Children fooChildren = nodes[1].getChildren();
+        for(int wait=0; (0 == fooChildren.getNodes(true).length) && (wait < 100); wait++)
+            Thread.sleep(10);
+        assertEquals("[bar()]", displayNames(fooChildren.getNodes(true)));
+        for(BshMethodInfo method: scriptInfo.getMethods())
+            assertEquals("foo".equals(method.getName()), method.isLoaded());
+    }
+
+    private String displayNames(Node[] nodes) {
+        final StringBuilder result = new StringBuilder("[");
+        for(Node node: nodes)
+            result.append(result.length() > 1 ? ", " : "").append(node.getDisplayName());
+        return result.append(']').toString();
+    }
+
+}
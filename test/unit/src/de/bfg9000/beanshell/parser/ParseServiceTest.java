@@ -0,0 +1,223 @@
+/*
+ * nbBeanShell -- a integration of BeanShell into the NetBeans IDE
+ * Copyright (C) 2012 Thomas Werner
+ *
+ * This library is free software; you can redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with this library; if not, write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+package de.bfg9000.beanshell.parser;
+
+import bsh.BshCancellation;
+import bsh.BshScriptInfo;
+import bsh.BshVariableInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import javax.swing.text.Document;
+import javax.swing.text.PlainDocument;
+import org.junit.Test;
+
+/**
+ *
+ * @author Thomas Werner
+ */
+public class ParseServiceTest {
+
+    @Test
+    public void testResultIsSharedUntilModification() throws Exception {
+        final Document document = new PlainDocument();
+        document.insertString(0, "int j = 0;\nfoo() { }\n", null);
+
+        final BshScriptInfo first = ParseService.getDefault().getScriptInfo(document);
+        assertEquals(1, first.getVariables().size());
+        assertEquals(1, first.getMethods().size());
+        assertSame(first, ParseService.getDefault().getScriptInfo(document));
+
+        document.insertString(document.getLength(), "bar() { }\n", null);
+        final BshScriptInfo second = ParseService.getDefault().getScriptInfo(document);
+        assertNotSame(first, second);
+        assertEquals(2, second.getMethods().size());
+        assertSame(second, ParseService.getDefault().getScriptInfo(document));
+    }
+
+    /**
+     * The incomplete line of the caret must neither drop the method it is part of nor the following statements.
+     */
+    @Test
+    public void testCompletionInfoLeavesOutCaretLine() throws Exception {
+        final Document document = new PlainDocument();
+        document.insertString(0, "int top = 1;\nfoo() {\n    int abc = 1;\n    ab\n}\nbar() { }\n", null);
+        final BshScriptInfo inMethod = ParseService.getDefault().getCompletionInfo(document, 4, BshCancellation.NONE);
+        assertEquals(0, inMethod.getErrors().size());
+        assertEquals("[top]", names(inMethod.getVariables()));
+        assertEquals(2, inMethod.getMethods().size());
+        assertEquals("[abc]", names(inMethod.getMethods().get(0).getVariables()));
+
+        document.remove(0, document.getLength());
+        document.insertString(0, "String s = to\nint other = 2;\n", null);
+        final BshScriptInfo topLevel = ParseService.getDefault().getCompletionInfo(document, 1, BshCancellation.NONE);
+        assertEquals(0, topLevel.getErrors().size());
+        assertEquals("[other]", names(topLevel.getVariables()));
+        assertEquals(2, topLevel.getVariables().get(0).getLineNumber());
+    }
+
+    /**
+     * Concurrent requests for the same version of a document wait for a single parse.
+     */
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        final BlockingDocument document = new BlockingDocument();
+        document.insertString(0, "int j = 0;\n", null);
+        final ParseThread owner = new ParseThread(document);
+        owner.start();
+        document.rendering.await();
+        final ParseThread waiter = new ParseThread(document);
+        waiter.start();
+        Thread.sleep(100);
+
+        document.release.countDown();
+        owner.join();
+        waiter.join();
+        assertEquals(1, document.renders.get());
+        assertSame(owner.result, waiter.result);
+        assertEquals(1, owner.result.getVariables().size());
+    }
+
+    /**
+     * A consumer that waits for the parse of another consumer stops waiting when it is cancelled.
+     */
+    @Test
+    public void testWaiterIsCancelled() throws Exception {
+        final BlockingDocument document = new BlockingDocument();
+        document.insertString(0, "int j = 0;\n", null);
+        final ParseThread owner = new ParseThread(document);
+        owner.start();
+        document.rendering.await();
+
+        final BshScriptInfo cancelled = ParseService.getDefault().getScriptInfo(document, 
+                                                                               BshCancellation.NONE.withDeadline(100));
+        assertFalse(cancelled.isComplete());
+        assertTrue(owner.isAlive());
+        document.release.countDown();
+        owner.join();
+        assertTrue(owner.result.isComplete());
+    }
+
+    /**
+     * A parse that fails is not shared - the next request parses the document again.
+     */
+    @Test
+    public void testFailedParseIsDiscarded() throws Exception {
+        final Document document = new PlainDocument() {
+            private boolean failed;
+            @Override
+            public void render(Runnable r) {
+                if(!failed) {
+                    failed = true;
+                    throw new IllegalStateException("expected by the test");
+                }
+                super.render(r);
+            }
+        };
+        document.insertString(0, "int j = 0;\n", null);
+        final Logger logger = Logger.getLogger(ParseService.class.getName());
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.OFF);
+        try {
+            assertEquals(0, ParseService.getDefault().getScriptInfo(document).getVariables().size());
+        } finally {
+            logger.setLevel(level);
+        }
+        assertEquals(1, ParseService.getDefault().getScriptInfo(document).getVariables().size());
+    }
+
+    /**
+     * The least recently used document is dropped first - and it is not listened to anymore.
+     */
+    @Test
+    public void testLeastRecentlyUsedDocumentIsDropped() throws Exception {
+        final PlainDocument first = new PlainDocument();
+        ParseService.getDefault().getScriptInfo(first);
+        assertEquals(1, first.getDocumentListeners().length);
+
+        final List<Document> others = new ArrayList<Document>();
+        for(int i=0; i<8; i++) {
+            others.add(new PlainDocument());
+            ParseService.getDefault().getScriptInfo(others.get(i));
+        }
+        assertEquals(0, first.getDocumentListeners().length);
+        assertEquals(8, ParseService.getDefault().size());
+    }
+
+    @Test
+    public void testBlankLine() {
+        assertEquals("a\n   \nc", ParseService.blankLine("a\nbbb\nc", 2));
+        assertEquals("a\r\n  \r\n", ParseService.blankLine("a\r\nbb\r\n", 2));
+        assertEquals("a\nb", ParseService.blankLine("a\nb", 3));
+    }
+
+    /**
+     * A document that blocks the first parse until it is released.
+     */
+    private static final class BlockingDocument extends PlainDocument {
+
+        private static final long serialVersionUID = 1L;
+
+        final CountDownLatch rendering = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger renders = new AtomicInteger();
+
+        @Override
+        public void render(Runnable r) {
+            renders.incrementAndGet();
+            rendering.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            super.render(r);
+        }
+
+    }
+
+    private static final class ParseThread extends Thread {
+
+        private final Document document;
+        volatile BshScriptInfo result;
+
+        ParseThread(Document document) {
+            this.document = document;
+        }
+
+        @Override
+        public void run() {
+            result = ParseService.getDefault().getScriptInfo(document);
+        }
+
+    }
+
+    private static String names(List<BshVariableInfo> variables) {
+        final List<String> result = new ArrayList<String>();
+        for(BshVariableInfo variable: variables)
+            result.add(variable.getName());
+        return result.toString();
+    }
+
+}